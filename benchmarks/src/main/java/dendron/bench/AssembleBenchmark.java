@@ -0,0 +1,50 @@
+package dendron.bench;
+
+import dendron.machine.InstructionReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling .denm files into instruction lists.
+ *
+ * @author Nicholas Pembroke
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class AssembleBenchmark {
+
+    @Param( { Corpus.CORPUS, "synthetic-100", "synthetic-1000", "generated-100000" } )
+    public String workload;
+
+    private List< String > files;
+
+    @Setup
+    public void setUp() {
+        files = Corpus.assemblyFiles( workload ).stream().map( Path::toString ).toList();
+    }
+
+    @Benchmark
+    public void assemble( Blackhole bh ) {
+        for ( String file: files ) {
+            bh.consume( InstructionReader.assemble( file ) );
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package dendron.bench;
+
+import dendron.machine.CodeSegment;
+import dendron.machine.ColumnarExecutor;
+import dendron.machine.Machine;
+import dendron.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running the quadratic formula program from DendronTest over many
+ * random bindings of a, b and c, once per row on a Machine and once
+ * over all the rows as columns.
+ *
+ * @author Nicholas Pembroke
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ColumnarBenchmark {
+
+    private static final List< String > QUADRATIC = List.of(
+            ":=", "root", "/", "+", "_", "b", "#", "-", "*",
+                  "b", "b", "*", "*", "4", "a", "c", "*", "2", "a",
+            ":=", "root2", "/", "-", "_", "b", "#", "-", "*",
+                  "b", "b", "*", "*", "4", "a", "c", "*", "2", "a" );
+
+    @Param( { "1000", "1000000" } )
+    public int rows;
+
+    private CodeSegment segment;
+    private ColumnarExecutor executor;
+    private int[] a, b, c;
+    private final Machine machine = new Machine( new PrintStream( OutputStream.nullOutputStream() ) );
+
+    @Setup
+    public void setUp() {
+        segment = CodeSegment.fromInstructions( new ParseTree( QUADRATIC ).compile() );
+        executor = new ColumnarExecutor( segment );
+        Random random = new Random( 2912 );
+        a = new int[ rows ];
+        b = new int[ rows ];
+        c = new int[ rows ];
+        for ( int row = 0; row < rows; ++row ) {
+            a[ row ] = random.nextInt( 11 ) - 5;
+            b[ row ] = random.nextInt( 101 ) - 50;
+            c[ row ] = random.nextInt( 101 ) - 50;
+        }
+    }
+
+    @Benchmark
+    public void perRow( Blackhole bh ) {
+        for ( int row = 0; row < rows; ++row ) {
+            machine.reset();
+            machine.assign( "a", a[ row ] );
+            machine.assign( "b", b[ row ] );
+            machine.assign( "c", c[ row ] );
+            try {
+                machine.run( segment );
+            }
+            catch ( RuntimeException e ) {
+                bh.consume( e );
+            }
+            bh.consume( machine.stackSize() );
+        }
+    }
+
+    @Benchmark
+    public void columnar( Blackhole bh ) {
+        bh.consume( executor.execute( Map.of( "a", a, "b", b, "c", c ), rows ) );
+    }
+}
@@ -0,0 +1,53 @@
+package dendron.bench;
+
+import dendron.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiling the parse trees of the source programs to Machine
+ * instructions.
+ *
+ * @author Nicholas Pembroke
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class CompileBenchmark {
+
+    @Param( { Corpus.CORPUS, "synthetic-100", "synthetic-1000", "generated-100000" } )
+    public String workload;
+
+    private final List< ParseTree > trees = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        for ( List< String > program: Corpus.sourcePrograms( workload ) ) {
+            trees.add( new ParseTree( program ) );
+        }
+    }
+
+    @Benchmark
+    public void compile( Blackhole bh ) {
+        for ( ParseTree tree: trees ) {
+            bh.consume( tree.compile() );
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package dendron.bench;
+
+import dendron.WorkloadGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The inputs the benchmarks run on: the assembly files in dendron/assy,
+ * the source programs in dendron/source, synthetic inputs made by
+ * repeating a whole corpus many times over, and large random programs
+ * from {@link WorkloadGenerator}.
+ *
+ * The dendron directory is found through the dendron.home system
+ * property, or else as dendron or ../dendron relative to the working
+ * directory.
+ *
+ * @author Nicholas Pembroke
+ */
+public final class Corpus {
+
+    /** The workload that is the corpus itself */
+    public static final String CORPUS = "corpus";
+
+    /** The prefix of a workload that repeats the corpus, e.g. synthetic-100 */
+    public static final String SYNTHETIC = "synthetic-";
+
+    /** The prefix of a generated workload, followed by its statement count */
+    public static final String GENERATED = "generated-";
+
+    /** The seed of generated workloads, so every run sees the same program */
+    private static final long SEED = 2912;
+
+    private Corpus() {
+    }
+
+    /**
+     * @return the dendron directory holding assy and source
+     */
+    public static Path home() {
+        String property = System.getProperty( "dendron.home" );
+        List< String > candidates = property != null ? List.of( property )
+                                                     : List.of( "dendron", "../dendron" );
+        for ( String candidate: candidates ) {
+            Path dir = Paths.get( candidate );
+            if ( Files.isDirectory( dir.resolve( "assy" ) ) ) {
+                return dir;
+            }
+        }
+        throw new IllegalStateException(
+                "Cannot find the dendron corpus; set -Ddendron.home" );
+    }
+
+    /**
+     * @param workload {@link #CORPUS}, or {@link #SYNTHETIC} or {@link #GENERATED}
+     *                 followed by a count
+     * @return how many times the workload repeats the corpus, 0 for
+     *         the corpus files as they are, or -1 for a generated workload
+     */
+    public static int copies( String workload ) {
+        if ( workload.equals( CORPUS ) ) {
+            return 0;
+        }
+        if ( workload.startsWith( SYNTHETIC ) ) {
+            return Integer.parseInt( workload.substring( SYNTHETIC.length() ) );
+        }
+        if ( workload.startsWith( GENERATED ) ) {
+            return -1;
+        }
+        throw new IllegalArgumentException( "Unknown workload " + workload );
+    }
+
+    /**
+     * @return the .denm files in dendron/assy, sorted by name
+     */
+    public static List< Path > assemblyFiles() {
+        return list( "assy", ".denm" );
+    }
+
+    /**
+     * @return the token lists of the programs in dendron/source,
+     *         sorted by file name
+     */
+    public static List< List< String > > sourcePrograms() {
+        List< List< String > > programs = new ArrayList<>();
+        for ( Path file: list( "source", ".txt" ) ) {
+            programs.add( tokens( file ) );
+        }
+        return programs;
+    }
+
+    /**
+     * The assembly files for a workload. A synthetic workload is a
+     * single temporary file, deleted on exit, holding the whole
+     * assembly corpus the given number of times. A generated workload
+     * is a single temporary file holding a random program.
+     * @param workload {@link #CORPUS}, or {@link #SYNTHETIC} or {@link #GENERATED}
+     *                 followed by a count
+     * @return the files to assemble
+     */
+    public static List< Path > assemblyFiles( String workload ) {
+        int copies = copies( workload );
+        if ( copies == 0 ) {
+            return assemblyFiles();
+        }
+        if ( copies < 0 ) {
+            return List.of( generate( workload, ".denm" ) );
+        }
+        try {
+            List< String > lines = new ArrayList<>();
+            for ( Path file: assemblyFiles() ) {
+                lines.addAll( Files.readAllLines( file, StandardCharsets.UTF_8 ) );
+            }
+            Path big = Files.createTempFile( "dendron-" + workload, ".denm" );
+            big.toFile().deleteOnExit();
+            Files.write( big, repeat( lines, copies ), StandardCharsets.UTF_8 );
+            return List.of( big );
+        }
+        catch ( IOException ioe ) {
+            throw new UncheckedIOException( ioe );
+        }
+    }
+
+    /**
+     * The source programs for a workload. A synthetic workload is a
+     * single program made of every source program, repeated the given
+     * number of times. A generated workload is a single random program.
+     * @param workload {@link #CORPUS}, or {@link #SYNTHETIC} or {@link #GENERATED}
+     *                 followed by a count
+     * @return the token lists of the programs
+     */
+    public static List< List< String > > sourcePrograms( String workload ) {
+        int copies = copies( workload );
+        if ( copies == 0 ) {
+            return sourcePrograms();
+        }
+        if ( copies < 0 ) {
+            return List.of( tokens( generate( workload, ".txt" ) ) );
+        }
+        List< String > all = new ArrayList<>();
+        for ( List< String > program: sourcePrograms() ) {
+            all.addAll( program );
+        }
+        return List.of( repeat( all, copies ) );
+    }
+
+    /**
+     * Generate the program of a generated workload into temporary
+     * files, deleted on exit.
+     * @return the file with the given extension
+     */
+    private static Path generate( String workload, String extension ) {
+        int statements = Integer.parseInt( workload.substring( GENERATED.length() ) );
+        try {
+            Path dir = Files.createTempDirectory( "dendron-" + workload );
+            Path base = dir.resolve( workload );
+            new WorkloadGenerator().seed( SEED ).statements( statements ).write( base );
+            for ( String made: List.of( ".txt", ".denm", ".out" ) ) {
+                dir.resolve( workload + made ).toFile().deleteOnExit();
+            }
+            dir.toFile().deleteOnExit();
+            return dir.resolve( workload + extension );
+        }
+        catch ( IOException ioe ) {
+            throw new UncheckedIOException( ioe );
+        }
+    }
+
+    private static List< String > repeat( List< String > items, int copies ) {
+        List< String > result = new ArrayList<>( items.size() * copies );
+        for ( int i = 0; i < copies; ++i ) {
+            result.addAll( items );
+        }
+        return result;
+    }
+
+    private static List< String > tokens( Path file ) {
+        try {
+            String text = Files.readString( file, StandardCharsets.UTF_8 ).trim();
+            return text.isEmpty() ? new ArrayList<>()
+                                  : new ArrayList<>( Arrays.asList( text.split( "\\s+" ) ) );
+        }
+        catch ( IOException ioe ) {
+            throw new UncheckedIOException( ioe );
+        }
+    }
+
+    private static List< Path > list( String subdirectory, String suffix ) {
+        try ( Stream< Path > files = Files.list( home().resolve( subdirectory ) ) ) {
+            return files.filter( file -> file.getFileName().toString().endsWith( suffix ) )
+                        .sorted()
+                        .collect( Collectors.toList() );
+        }
+        catch ( IOException ioe ) {
+            throw new UncheckedIOException( ioe );
+        }
+    }
+}
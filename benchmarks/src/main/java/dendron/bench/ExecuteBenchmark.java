@@ -0,0 +1,150 @@
+package dendron.bench;
+
+import dendron.machine.CodeSegment;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.machine.OperandTraffic;
+import dendron.machine.RegisterCompiler;
+import dendron.machine.RegisterProgram;
+import dendron.machine.SuperinstructionRewriter;
+import dendron.tree.ParseTree;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Running Machine programs, namely the assembled .denm files followed
+ * by the compiled source programs, as instruction lists, as lists
+ * rewritten with superinstructions, as encoded code segments and as
+ * register programs. Machine output is discarded.
+ *
+ * Each benchmark also reports, as secondary results, the dispatches
+ * and memory accesses its form of the programs makes, counted by
+ * {@link OperandTraffic}: stack, variable and spill slot accesses,
+ * but not register accesses. They are rates like the primary score,
+ * so a counter divided by the score is the count for one pass over
+ * the programs, which is what to compare between forms.
+ *
+ * @author Nicholas Pembroke
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ExecuteBenchmark {
+
+    @Param( { Corpus.CORPUS, "synthetic-100", "synthetic-1000", "generated-100000" } )
+    public String workload;
+
+    private final List< List< Machine.Instruction > > programs = new ArrayList<>();
+    private final List< List< Machine.Instruction > > fused = new ArrayList<>();
+    private final List< CodeSegment > segments = new ArrayList<>();
+    private final List< RegisterProgram > registerPrograms = new ArrayList<>();
+    private final Machine machine = new Machine( new PrintStream( OutputStream.nullOutputStream() ) );
+
+    /** What one pass over each form of the programs costs */
+    private OperandTraffic listTraffic;
+    private OperandTraffic fusedTraffic;
+    private OperandTraffic registerTraffic;
+
+    /**
+     * The dispatches and memory accesses made, as secondary results.
+     */
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    @State( Scope.Thread )
+    public static class Traffic {
+        public long dispatches;
+        public long memoryAccesses;
+
+        @Setup( Level.Iteration )
+        public void clear() {
+            dispatches = 0;
+            memoryAccesses = 0;
+        }
+
+        void add( OperandTraffic traffic ) {
+            dispatches += traffic.dispatches();
+            memoryAccesses += traffic.memoryAccesses();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        for ( Path file: Corpus.assemblyFiles( workload ) ) {
+            programs.add( InstructionReader.assemble( file.toString() ) );
+        }
+        for ( List< String > program: Corpus.sourcePrograms( workload ) ) {
+            programs.add( new ParseTree( program ).compile() );
+        }
+        SuperinstructionRewriter rewriter = new SuperinstructionRewriter();
+        for ( List< Machine.Instruction > program: programs ) {
+            fused.add( rewriter.rewrite( program ) );
+            segments.add( CodeSegment.fromInstructions( program ) );
+            registerPrograms.add( RegisterCompiler.compile( program ) );
+        }
+        listTraffic = total( programs.stream().map( OperandTraffic::of ) );
+        fusedTraffic = total( fused.stream().map( OperandTraffic::of ) );
+        registerTraffic = total( registerPrograms.stream().map( OperandTraffic::of ) );
+    }
+
+    private static OperandTraffic total( Stream< OperandTraffic > counts ) {
+        return counts.reduce( OperandTraffic::plus ).orElseThrow();
+    }
+
+    @Benchmark
+    public void instructionList( Blackhole bh, Traffic traffic ) {
+        for ( List< Machine.Instruction > program: programs ) {
+            machine.executeProgram( program );
+            bh.consume( machine.stackSize() );
+        }
+        traffic.add( listTraffic );
+    }
+
+    @Benchmark
+    public void superinstructions( Blackhole bh, Traffic traffic ) {
+        for ( List< Machine.Instruction > program: fused ) {
+            machine.executeProgram( program );
+            bh.consume( machine.stackSize() );
+        }
+        traffic.add( fusedTraffic );
+    }
+
+    @Benchmark
+    public void codeSegment( Blackhole bh, Traffic traffic ) {
+        for ( CodeSegment segment: segments ) {
+            machine.executeProgram( segment );
+            bh.consume( machine.stackSize() );
+        }
+        traffic.add( listTraffic );
+    }
+
+    @Benchmark
+    public void registers( Blackhole bh, Traffic traffic ) {
+        for ( RegisterProgram program: registerPrograms ) {
+            machine.executeProgram( program );
+            bh.consume( machine.stackSize() );
+        }
+        traffic.add( registerTraffic );
+    }
+}
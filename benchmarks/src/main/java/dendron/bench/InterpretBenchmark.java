@@ -0,0 +1,82 @@
+package dendron.bench;
+
+import dendron.tree.BoundProgram;
+import dendron.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interpreting the parse trees of the source programs, both by walking
+ * the tree and through its closure form. Print statements write to
+ * standard output, which is discarded while the benchmark runs. Each
+ * form commits one JFR event and flushes its output once per program.
+ *
+ * @author Nicholas Pembroke
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class InterpretBenchmark {
+
+    @Param( { Corpus.CORPUS, "synthetic-100", "synthetic-1000", "generated-100000" } )
+    public String workload;
+
+    private final List< ParseTree > trees = new ArrayList<>();
+    private final List< BoundProgram > closures = new ArrayList<>();
+    private PrintStream stdout;
+
+    @Setup
+    public void setUp() {
+        for ( List< String > program: Corpus.sourcePrograms( workload ) ) {
+            ParseTree tree = new ParseTree( program );
+            trees.add( tree );
+            closures.add( tree.bind() );
+        }
+        stdout = System.out;
+        System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut( stdout );
+    }
+
+    @Benchmark
+    public void treeWalk( Blackhole bh ) {
+        for ( ParseTree tree: trees ) {
+            Map< String, Integer > symTab = new HashMap<>();
+            tree.run( symTab );
+            bh.consume( symTab );
+        }
+    }
+
+    @Benchmark
+    public void closures( Blackhole bh ) {
+        for ( BoundProgram program: closures ) {
+            program.run();
+            bh.consume( program );
+        }
+    }
+}
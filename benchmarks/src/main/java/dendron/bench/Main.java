@@ -0,0 +1,39 @@
+package dendron.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks. Arguments are the usual JMH command line; unless
+ * some profiler is named with -prof, the GC profiler is added so that
+ * every result comes with its allocation rate.
+ * <pre>
+ *     mvn -B package
+ *     java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]
+ * </pre>
+ *
+ * @author Nicholas Pembroke
+ */
+public class Main {
+
+    /**
+     * @param args JMH command line options
+     * @throws Exception if the options are bad or the run fails
+     */
+    public static void main( String[] args ) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions( args );
+        if ( cli.shouldHelp() || cli.shouldList() || cli.shouldListWithParams() ||
+             cli.shouldListProfilers() || cli.shouldListResultFormats() ) {
+            org.openjdk.jmh.Main.main( args );
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent( cli );
+        if ( cli.getProfilers().isEmpty() ) {
+            options.addProfiler( GCProfiler.class );
+        }
+        new Runner( options.build() ).run();
+    }
+}
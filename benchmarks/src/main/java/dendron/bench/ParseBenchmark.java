@@ -0,0 +1,49 @@
+package dendron.bench;
+
+import dendron.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building parse trees from the token lists of the source programs.
+ *
+ * @author Nicholas Pembroke
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ParseBenchmark {
+
+    @Param( { Corpus.CORPUS, "synthetic-100", "synthetic-1000", "generated-100000" } )
+    public String workload;
+
+    private List< List< String > > programs;
+
+    @Setup
+    public void setUp() {
+        programs = Corpus.sourcePrograms( workload );
+    }
+
+    @Benchmark
+    public void parse( Blackhole bh ) {
+        for ( List< String > program: programs ) {
+            bh.consume( new ParseTree( program ) );
+        }
+    }
+}
@@ -1,13 +1,30 @@
+import dendron.CompileCache;
+import dendron.CorpusRunner;
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.machine.Checkpoint;
 import dendron.machine.Machine;
+import dendron.machine.PeepholeOptimizer;
 import dendron.tree.ParseTree;
+import dendron.tree.StatementBuffer;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Run a test of the dendron language system.
@@ -58,6 +75,109 @@ public class DendronTest {
 
     public static int NUM_TESTS = programs.size();
 
+    /** Whether compiled code goes through the peephole optimizer (-O) */
+    private static boolean optimize = false;
+
+    /** Whether the tree is interpreted through its closure form (-B) */
+    private static boolean bound = false;
+
+    /** Whether standard input is run a statement at a time (-S) */
+    private static boolean streaming = false;
+
+    /** Whether a directory of tests is run in parallel and checked (-P) */
+    private static boolean parallel = false;
+
+    /** Where compiled programs are kept between runs, if anywhere */
+    private static final CompileCache cache = CompileCache.fromProperties();
+
+    /**
+     * Read statements from standard input and run each one as soon as
+     * its last token arrives, both by interpreting its tree and by
+     * compiling it and running the code on a Machine. Variables and
+     * the Machine's stack carry over from statement to statement, and
+     * nothing of a statement is kept once it has run. A statement that
+     * fails is reported and the rest still run. If the
+     * dendron.checkpoint system property names a file, the session is
+     * restored from it at the start if it exists, and saved to it
+     * after every statement.
+     * @return the exit status: 0, or {@link Errors#DENDRON_ABORT} if
+     *         any statement failed
+     */
+    private static int stream() {
+        int status = 0;
+        Map< String, Integer > symTab = new HashMap<>();
+        Machine machine = new Machine();
+        String property = System.getProperty( Checkpoint.PROPERTY );
+        Path checkpoint = property == null || property.isEmpty() ? null : Paths.get( property );
+        if ( checkpoint != null && Files.exists( checkpoint ) ) {
+            try {
+                Checkpoint saved = Checkpoint.load( checkpoint );
+                if ( !saved.belongsTo( null ) ) {
+                    throw new IOException( checkpoint + ": saved part way through a program" );
+                }
+                saved.restore( machine );
+                symTab.putAll( saved.treeSymbolTable() );
+            }
+            catch ( IOException ioe ) {
+                System.err.println( "Checkpoint not restored: " + ioe.getMessage() );
+            }
+        }
+        PeepholeOptimizer optimizer = optimize ? new PeepholeOptimizer() : null;
+        StatementBuffer statement = new StatementBuffer();
+        try ( BufferedReader text = new BufferedReader(
+                new InputStreamReader( System.in, StandardCharsets.UTF_8 ) ) ) {
+            System.out.print( "🌳 " );
+            String line;
+            while ( ( line = text.readLine() ) != null ) {
+                if ( line.equals( "." ) ) break; // For IntelliJ console
+                for ( String token: line.trim().split( "\\s+" ) ) {
+                    if ( !token.isEmpty() && statement.add( token ) ) {
+                        try {
+                            ParseTree tree = new ParseTree( statement.tokens() );
+                            if ( optimizer != null ) {
+                                tree.optimize();
+                            }
+                            tree.run( symTab );
+                            List< Machine.Instruction > program = tree.compile();
+                            if ( optimizer != null ) {
+                                program = optimizer.optimize( program );
+                            }
+                            machine.run( program );
+                        }
+                        catch ( DendronException e ) {
+                            Errors.report( e );
+                            System.err.println();
+                            status = Errors.DENDRON_ABORT;
+                        }
+                        statement.clear();
+                        if ( checkpoint != null ) {
+                            try {
+                                Checkpoint.write( checkpoint, machine, 0, symTab );
+                            }
+                            catch ( IOException ioe ) {
+                                System.err.println( "Checkpoint not saved: " + ioe.getMessage() );
+                            }
+                        }
+                    }
+                }
+                System.out.print( "🌳 " );
+            }
+        }
+        catch ( IOException ioe ) {
+            System.err.println( ioe );
+        }
+        System.out.println();
+        if ( !statement.isEmpty() ) {
+            System.err.println( "Incomplete statement discarded: " +
+                                String.join( " ", statement.tokens() ) );
+        }
+        System.out.println( "Interpretation complete.\n" );
+        Errors.dump( symTab );
+        System.out.println();
+        machine.report();
+        return status;
+    }
+
     /**
      * Run a test on the Dendron programming system
      * @param args if numeric and the number is less than the number of
@@ -65,11 +185,67 @@ public class DendronTest {
      *             to that number; if other args, consider them tokens
      *             of a Dendron program and run tests on that program;
      *             if no arguments, read the source program from standard
-     *             input.
+     *             input. A leading -O turns on the tree optimizer and
+     *             the peephole optimizer and prints their reports; a
+     *             leading -B interprets the tree in its closure form;
+     *             a leading -S, with no other arguments, runs each
+     *             statement read from standard input as soon as it
+     *             is complete; a leading -P, with a directory, runs
+     *             its programs in parallel and checks each one's
+     *             output against its golden .out file instead, keeping
+     *             the compiled programs for reuse in the directory
+     *             the dendron.cache system property names, if it is
+     *             set. A program that fails is reported
+     *             on standard error and the JVM exits with
+     *             {@link Errors#DENDRON_ABORT}.
      */
     public static void main( String... args ) {
+        int status;
+        try {
+            status = run( args );
+        }
+        catch ( DendronException e ) {
+            Errors.report( e );
+            status = Errors.DENDRON_ABORT;
+        }
+        if ( status != 0 ) {
+            System.exit( status );
+        }
+    }
+
+    /**
+     * Do what {@link #main(String...)} describes, short of exiting.
+     * In a directory of tests, a test that fails is reported and the
+     * rest still run.
+     * @param args as for main
+     * @return the exit status
+     * @throws DendronException if the one program being run fails
+     */
+    private static int run( String... args ) {
         List< String > tokenList;
 
+        while ( args.length > 0 && ( args[ 0 ].equals( "-O" ) ||
+                args[ 0 ].equals( "-B" ) || args[ 0 ].equals( "-S" ) ||
+                args[ 0 ].equals( "-P" ) ) ) {
+            if ( args[ 0 ].equals( "-O" ) ) {
+                optimize = true;
+            }
+            else if ( args[ 0 ].equals( "-B" ) ) {
+                bound = true;
+            }
+            else if ( args[ 0 ].equals( "-P" ) ) {
+                parallel = true;
+            }
+            else {
+                streaming = true;
+            }
+            args = Arrays.copyOfRange( args, 1, args.length );
+        }
+
+        if ( streaming && args.length == 0 ) {
+            return stream();
+        }
+
         if ( args.length == 0 ) {
             tokenList = new LinkedList<>();
             try ( Scanner text = new Scanner( System.in ) ) {
@@ -92,14 +268,17 @@ public class DendronTest {
                 // Illegal test number.
                 // Assume argument is a directory of tests.
                 //
-                String[] dummy = new String[ 0 ];
+                if ( parallel ) {
+                    return corpus( args[ 0 ] );
+                }
+                int status = 0;
                 File dir = new File( args[ 0 ] );
                 File[] files = dir.listFiles();
                 if ( files == null ) {
                     System.err.println( "Provided directory " +
                                         args[ 0 ] +
                                         " does not exist." );
-                    System.exit( 1 );
+                    return 1;
                 }
                 else {
                     for ( File file: files ) {
@@ -113,17 +292,23 @@ public class DendronTest {
                             System.err.println( fnfe );
                             continue;
                         }
-                        DendronTest.main( tokenList.toArray( dummy ) );
+                        try {
+                            test( tokenList );
+                        }
+                        catch ( DendronException e ) {
+                            Errors.report( e );
+                            status = Errors.DENDRON_ABORT;
+                        }
                         System.out.println( "\n_________________________" +
                                               "_________________________" +
                                               "_________________________" );
                     }
                 }
-                System.exit( 0 );
+                return status;
             }
             if (testNum < 0 || testNum >= NUM_TESTS) {
                 System.err.println("Test number out of range: " + args[0] );
-                System.exit( 2 );
+                return 2;
             }
 
             tokenList = programs.get( testNum );
@@ -132,16 +317,76 @@ public class DendronTest {
             tokenList = new LinkedList<>( Arrays.asList( args ) );
         }
 
+        test( tokenList );
+        return 0;
+    }
+
+    /**
+     * Run every program in a directory in parallel, each on its own
+     * Machine, and print one line per program in file name order
+     * saying whether its output matched its golden file, followed by
+     * a summary.
+     * @param dir the directory of tests
+     * @return the exit status: 0, or {@link Errors#DENDRON_ABORT} if
+     *         any program's output did not match
+     */
+    private static int corpus( String dir ) {
+        long start = System.nanoTime();
+        List< CorpusRunner.Result > results;
+        try {
+            results = new CorpusRunner( ForkJoinPool.commonPool(), cache ).run( Paths.get( dir ) );
+        }
+        catch ( IOException ioe ) {
+            System.err.println( "Provided directory " + dir + " cannot be read: " + ioe );
+            return 1;
+        }
+        long elapsed = System.nanoTime() - start;
+        int status = 0;
+        for ( CorpusRunner.Result result: results ) {
+            System.out.printf( "%-40s %-9s %9.2f ms\n", result.file().getFileName(),
+                               result.status(), result.nanos() / 1e6 );
+            if ( result.status() == CorpusRunner.Status.FAIL ) {
+                System.out.println( "    " + result.difference() );
+                status = Errors.DENDRON_ABORT;
+            }
+        }
+        System.out.println();
+        System.out.print( CorpusRunner.summary( results, elapsed ) );
+        return status;
+    }
+
+    /**
+     * Parse, display, interpret, compile and execute one program.
+     * @param tokenList the program's tokens
+     * @throws DendronException if the program fails
+     */
+    private static void test( List< String > tokenList ) {
         ParseTree tree = new ParseTree( tokenList );
 
+        if ( optimize ) {
+            System.out.print( tree.optimize().report() );
+        }
+
         tree.displayProgram();
 
-        tree.interpret();
+        if ( bound ) {
+            tree.interpretBound();
+        }
+        else {
+            tree.interpret();
+        }
 
         List< Machine.Instruction > program = tree.compile();
 
         Machine.displayInstructions( program );
 
+        if ( optimize ) {
+            PeepholeOptimizer optimizer = new PeepholeOptimizer();
+            program = optimizer.optimize( program );
+            System.out.print( optimizer.report() );
+            Machine.displayInstructions( program );
+        }
+
         Machine.execute( program );
     }
 }
@@ -0,0 +1,328 @@
+package dendron;
+
+import dendron.machine.CodeSegment;
+import dendron.machine.ObjectFile;
+import dendron.tree.ParseTree;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory of compiled programs, so that running the same source
+ * again skips parsing and code generation.
+ *
+ * Each program is stored as a .denb object file named after the
+ * SHA-256 of its tokens and the compiler version, so an entry can
+ * never be stale: a different program, or the same program from a
+ * different compiler, has a different name.
+ *
+ * Several threads and several processes may share one directory.
+ * Entries are written to a temporary file and atomically renamed into
+ * place, so a reader sees a whole entry or none. When the directory
+ * grows past its size bound, the entries used least recently (by
+ * modification time, which a hit refreshes) are deleted until it is
+ * back under nine tenths of the bound, under a lock file so that only
+ * one process evicts at a time. An entry deleted while being read is
+ * only a miss. The directory is only scanned when this process's
+ * running estimate of its size passes the bound.
+ *
+ * @author Nicholas Pembroke
+ */
+public class CompileCache {
+
+    /**
+     * The version of the code ParseTree.compile() generates. Change it
+     * whenever the generated code changes, so old entries are ignored.
+     */
+    public static final int COMPILER_VERSION = 1;
+
+    /** The system property that names the cache directory for the drivers */
+    public static final String DIRECTORY_PROPERTY = "dendron.cache";
+
+    /** The system property that bounds the cache size, in bytes */
+    public static final String SIZE_PROPERTY = "dendron.cache.size";
+
+    /** The size bound used when none is given, in bytes */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final String LOCK_FILE = ".lock";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Temporary files older than this were left by a process that died */
+    private static final long ABANDONED_MILLIS = 60 * 60 * 1000;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** The size of the entries as last scanned plus what was added since, or -1 */
+    private final AtomicLong estimate = new AtomicLong( -1 );
+
+    /**
+     * Open a cache, creating its directory if need be.
+     * @param dir where the entries are kept
+     * @param maxBytes how large the entries may grow in all
+     * @throws IOException if the directory cannot be created
+     */
+    public CompileCache( Path dir, long maxBytes ) throws IOException {
+        this.dir = Files.createDirectories( dir );
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Open the cache named by the dendron.cache system property, with
+     * the size bound given by dendron.cache.size if it is set.
+     * @return the cache, or null if the property is not set or the
+     *         directory cannot be created
+     */
+    public static CompileCache fromProperties() {
+        String dir = System.getProperty( DIRECTORY_PROPERTY );
+        if ( dir == null || dir.isEmpty() ) {
+            return null;
+        }
+        try {
+            return new CompileCache( Paths.get( dir ),
+                    Long.getLong( SIZE_PROPERTY, DEFAULT_MAX_BYTES ) );
+        }
+        catch ( IOException ioe ) {
+            System.err.println( "Compile cache disabled: " + ioe.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Get a program's compiled code, from the cache if it is there,
+     * otherwise by parsing and compiling it and adding it to the cache.
+     * @param tokens the program's tokens
+     * @return the compiled program
+     * @throws SyntaxException if the program cannot be parsed
+     */
+    public CodeSegment compile( List< String > tokens ) {
+        String key = key( tokens );
+        CodeSegment segment = get( key );
+        if ( segment == null ) {
+            segment = CodeSegment.fromInstructions( new ParseTree( tokens ).compile() );
+            put( key, segment );
+        }
+        return segment;
+    }
+
+    /**
+     * Look a program up without compiling it.
+     * @param tokens the program's tokens
+     * @return the compiled program, or null if it is not in the cache
+     */
+    public CodeSegment get( List< String > tokens ) {
+        return get( key( tokens ) );
+    }
+
+    /**
+     * Add a compiled program, replacing any entry it already has.
+     * @param tokens the program's tokens
+     * @param segment the program ParseTree.compile() made from them
+     */
+    public void put( List< String > tokens, CodeSegment segment ) {
+        put( key( tokens ), segment );
+    }
+
+    /**
+     * @return how many lookups found their program
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many lookups did not find their program
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the directory the entries are kept in
+     */
+    public Path directory() {
+        return dir;
+    }
+
+    /**
+     * Name the entry for a program.
+     * @param tokens the program's tokens
+     * @return the hex SHA-256 of the compiler version and the tokens
+     */
+    static String key( List< String > tokens ) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( e );
+        }
+        digest.update( ( COMPILER_VERSION + "/" + ObjectFile.VERSION + "\n" )
+                               .getBytes( StandardCharsets.UTF_8 ) );
+        for ( String token: tokens ) {
+            digest.update( token.getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) '\n' );
+        }
+        return HexFormat.of().formatHex( digest.digest() );
+    }
+
+    private Path entry( String key ) {
+        return dir.resolve( key + ObjectFile.EXTENSION );
+    }
+
+    private CodeSegment get( String key ) {
+        Path file = entry( key );
+        CodeSegment segment = null;
+        try {
+            segment = ObjectFile.load( file );
+        }
+        catch ( NoSuchFileException e ) {
+            // Not cached, or evicted by someone else.
+        }
+        catch ( IOException e ) {
+            // Damaged; drop it and compile again.
+            try {
+                Files.deleteIfExists( file );
+            }
+            catch ( IOException ignored ) {
+                // Someone else may be replacing it.
+            }
+        }
+        if ( segment == null ) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        try {
+            Files.setLastModifiedTime( file, FileTime.fromMillis( System.currentTimeMillis() ) );
+        }
+        catch ( IOException e ) {
+            // Evicted since it was read, which does not matter.
+        }
+        return segment;
+    }
+
+    private void put( String key, CodeSegment segment ) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile( dir, key, TEMP_SUFFIX );
+            ObjectFile.write( segment, temp );
+            long size = Files.size( temp );
+            Files.move( temp, entry( key ), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING );
+            temp = null;
+            if ( estimate.get() < 0 || estimate.addAndGet( size ) > maxBytes ) {
+                evict();
+            }
+        }
+        catch ( IOException e ) {
+            // The cache is only an optimization; carry on without it.
+        }
+        finally {
+            if ( temp != null ) {
+                try {
+                    Files.deleteIfExists( temp );
+                }
+                catch ( IOException ignored ) {
+                    // Eviction will remove it once it is old.
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the least recently used entries until the cache is under
+     * nine tenths of its bound, along with temporary files that were
+     * abandoned.
+     * @throws IOException if the directory cannot be read or locked
+     */
+    private void evict() throws IOException {
+        synchronized ( CompileCache.class ) {
+            try ( FileChannel lockChannel = FileChannel.open( dir.resolve( LOCK_FILE ),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE ) ) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    sweep();
+                }
+                finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Do the work of {@link #evict()}, holding the lock.
+     * @throws IOException if the directory cannot be read
+     */
+    private void sweep() throws IOException {
+        List< Path > entries = new ArrayList<>();
+        List< FileTime > used = new ArrayList<>();
+        List< Long > sizes = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try ( DirectoryStream< Path > listing = Files.newDirectoryStream( dir ) ) {
+            for ( Path file: listing ) {
+                String name = file.getFileName().toString();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes( file, BasicFileAttributes.class );
+                }
+                catch ( NoSuchFileException e ) {
+                    continue;
+                }
+                if ( name.endsWith( TEMP_SUFFIX ) ) {
+                    if ( now - attributes.lastModifiedTime().toMillis() > ABANDONED_MILLIS ) {
+                        Files.deleteIfExists( file );
+                    }
+                }
+                else if ( name.endsWith( ObjectFile.EXTENSION ) ) {
+                    entries.add( file );
+                    used.add( attributes.lastModifiedTime() );
+                    sizes.add( attributes.size() );
+                    total += attributes.size();
+                }
+            }
+        }
+        if ( total <= maxBytes ) {
+            estimate.set( total );
+            return;
+        }
+        long target = maxBytes - maxBytes / 10;
+        Integer[] order = new Integer[ entries.size() ];
+        for ( int i = 0; i < order.length; ++i ) {
+            order[ i ] = i;
+        }
+        Arrays.sort( order, Comparator.comparing( used::get ) );
+        for ( int i: order ) {
+            if ( total <= target ) {
+                break;
+            }
+            Files.deleteIfExists( entries.get( i ) );
+            total -= sizes.get( i );
+        }
+        estimate.set( total );
+    }
+}
@@ -0,0 +1,332 @@
+package dendron;
+
+import dendron.io.MemorySink;
+import dendron.machine.CodeSegment;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.machine.ObjectFile;
+import dendron.tree.ParseTree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Run every program in a directory at the same time and check each
+ * one's output against its golden file.
+ *
+ * A program is a source file (.txt), an assembly file (.denm) or an
+ * object file (.denb). Each is compiled if need be and executed on a
+ * Machine of its own, printing into a buffer of its own, so that what
+ * it prints is exactly what InstructionReader would print for it,
+ * error message included. That output is compared with the file of
+ * the same name ending in .out, if there is one.
+ *
+ * Source files are compiled through a {@link CompileCache} if the
+ * runner is given one.
+ *
+ * Files are handed to the pool largest first, so that a big program
+ * does not start last and hold up the whole run, but the results are
+ * always in file name order.
+ *
+ * @author Nicholas Pembroke
+ */
+public class CorpusRunner {
+
+    /** The extension of the expected output files */
+    public static final String GOLDEN = ".out";
+
+    private static final String SOURCE = ".txt";
+    private static final String ASSEMBLY = ".denm";
+
+    /**
+     * How a program's output compared with its golden file.
+     */
+    public enum Status {
+        PASS, FAIL, NO_GOLDEN
+    }
+
+    /**
+     * The outcome of running one program of a corpus.
+     */
+    public static class Result {
+
+        private final Path file;
+        private final String output;
+        private final String expected;
+        private final Throwable failure;
+        private final long nanos;
+
+        private Result( Path file, String output, String expected,
+                        Throwable failure, long nanos ) {
+            this.file = file;
+            this.output = output;
+            this.expected = expected;
+            this.failure = failure;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return the program file
+         */
+        public Path file() {
+            return file;
+        }
+
+        /**
+         * @return everything the program printed, followed by the
+         *         message of the error that stopped it, if any
+         */
+        public String output() {
+            return output;
+        }
+
+        /**
+         * @return the contents of the golden file, or null if there
+         *         is none
+         */
+        public String expected() {
+            return expected;
+        }
+
+        /**
+         * @return what stopped the program, or null if it ran to the end
+         */
+        public Throwable failure() {
+            return failure;
+        }
+
+        /**
+         * @return how long reading, compiling and running the program took
+         */
+        public long nanos() {
+            return nanos;
+        }
+
+        /**
+         * @return how the output compared with the golden file
+         */
+        public Status status() {
+            if ( expected == null ) {
+                return Status.NO_GOLDEN;
+            }
+            return expected.equals( output ) ? Status.PASS : Status.FAIL;
+        }
+
+        /**
+         * @return where the output first differs from the golden file,
+         *         or null if it does not
+         */
+        public String difference() {
+            if ( status() != Status.FAIL ) {
+                return null;
+            }
+            String[] want = expected.split( "\n", -1 );
+            String[] got = output.split( "\n", -1 );
+            int line = 0;
+            while ( line < want.length && line < got.length && want[ line ].equals( got[ line ] ) ) {
+                ++line;
+            }
+            return "line " + ( line + 1 ) +
+                   ": expected " + ( line < want.length ? "\"" + want[ line ] + "\"" : "end of output" ) +
+                   ", got " + ( line < got.length ? "\"" + got[ line ] + "\"" : "end of output" );
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final CompileCache cache;
+
+    /**
+     * Create a runner that uses the common ForkJoinPool and no cache.
+     */
+    public CorpusRunner() {
+        this( ForkJoinPool.commonPool(), null );
+    }
+
+    /**
+     * Create a runner that runs programs in the given pool, with no cache.
+     * @param pool where the programs are run
+     */
+    public CorpusRunner( ForkJoinPool pool ) {
+        this( pool, null );
+    }
+
+    /**
+     * Create a runner that runs programs in the given pool.
+     * @param pool where the programs are run
+     * @param cache where compiled source files are kept, or null for none
+     */
+    public CorpusRunner( ForkJoinPool pool, CompileCache cache ) {
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    /**
+     * @param file any file
+     * @return true if the runner treats the file as a program
+     */
+    public static boolean isProgram( Path file ) {
+        String name = file.getFileName().toString();
+        return name.endsWith( SOURCE ) || name.endsWith( ASSEMBLY ) ||
+               name.endsWith( ObjectFile.EXTENSION );
+    }
+
+    /**
+     * Run every program in a directory and wait for them to finish.
+     * @param dir the directory; subdirectories are not searched
+     * @return one Result per program, in file name order
+     * @throws IOException if the directory cannot be listed
+     */
+    public List< Result > run( Path dir ) throws IOException {
+        List< Path > files;
+        try ( Stream< Path > listing = Files.list( dir ) ) {
+            files = listing.filter( Files::isRegularFile )
+                           .filter( CorpusRunner::isProgram )
+                           .sorted()
+                           .collect( Collectors.toList() );
+        }
+        return run( files );
+    }
+
+    /**
+     * Run the given programs and wait for them to finish.
+     * @param files the program files
+     * @return one Result per program, in the same order as the files
+     */
+    public List< Result > run( List< Path > files ) {
+        Integer[] bySize = new Integer[ files.size() ];
+        long[] sizes = new long[ files.size() ];
+        for ( int i = 0; i < bySize.length; ++i ) {
+            bySize[ i ] = i;
+            try {
+                sizes[ i ] = Files.size( files.get( i ) );
+            }
+            catch ( IOException e ) {
+                sizes[ i ] = 0;
+            }
+        }
+        Arrays.sort( bySize, Comparator.comparingLong( i -> -sizes[ i ] ) );
+
+        List< ForkJoinTask< Result > > pending = new ArrayList<>( files.size() );
+        for ( int i = 0; i < files.size(); ++i ) {
+            pending.add( null );
+        }
+        for ( int i: bySize ) {
+            Path file = files.get( i );
+            pending.set( i, pool.submit( () -> runOne( file ) ) );
+        }
+        List< Result > results = new ArrayList<>( pending.size() );
+        for ( ForkJoinTask< Result > task: pending ) {
+            results.add( task.join() );
+        }
+        return results;
+    }
+
+    /**
+     * Run one program on a fresh Machine whose output is captured,
+     * and read its golden file.
+     * @param file the program
+     * @return the program's result
+     */
+    private Result runOne( Path file ) {
+        long start = System.nanoTime();
+        MemorySink out = new MemorySink();
+        Throwable failure = null;
+        try {
+            Machine machine = new Machine( out );
+            String name = file.getFileName().toString();
+            if ( name.endsWith( SOURCE ) ) {
+                String text = Files.readString( file, StandardCharsets.UTF_8 ).trim();
+                List< String > tokens = text.isEmpty() ? List.of() : Arrays.asList( text.split( "\\s+" ) );
+                if ( cache != null ) {
+                    machine.executeProgram( cache.compile( tokens ) );
+                }
+                else {
+                    machine.executeProgram( new ParseTree( tokens ).compile() );
+                }
+            }
+            else if ( name.endsWith( ASSEMBLY ) ) {
+                List< Machine.Instruction > program = InstructionReader.assemble( file.toString() );
+                if ( program == null ) {
+                    throw new IOException( "Could not open file " + file );
+                }
+                machine.executeProgram( program );
+            }
+            else {
+                CodeSegment segment = ObjectFile.load( file );
+                machine.executeProgram( segment );
+            }
+        }
+        catch ( DendronException e ) {
+            failure = e;
+            out.print( e.describe() );
+        }
+        catch ( IOException | RuntimeException e ) {
+            failure = e;
+            out.println( e.toString() );
+        }
+        String output = out.toString();
+        String expected = null;
+        Path golden = golden( file );
+        if ( Files.isRegularFile( golden ) ) {
+            try {
+                expected = Files.readString( golden, StandardCharsets.UTF_8 );
+            }
+            catch ( IOException e ) {
+                expected = e.toString();
+            }
+        }
+        return new Result( file, output, expected, failure, System.nanoTime() - start );
+    }
+
+    /**
+     * @param file a program file
+     * @return the golden file that goes with it
+     */
+    public static Path golden( Path file ) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling( name.substring( 0, name.lastIndexOf( '.' ) ) + GOLDEN );
+    }
+
+    /**
+     * Describe a finished run: how many programs passed, failed and
+     * had nothing to compare against, and where the time went.
+     * @param results the results of the run
+     * @param wallNanos how long the whole run took
+     * @return a multi-line summary
+     */
+    public static String summary( List< Result > results, long wallNanos ) {
+        int[] counts = new int[ Status.values().length ];
+        long totalNanos = 0;
+        Result slowest = null;
+        for ( Result result: results ) {
+            counts[ result.status().ordinal() ] += 1;
+            totalNanos += result.nanos();
+            if ( slowest == null || result.nanos() > slowest.nanos() ) {
+                slowest = result;
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        text.append( String.format( "%d programs: %d passed, %d failed, %d without %s files\n",
+                                    results.size(), counts[ Status.PASS.ordinal() ],
+                                    counts[ Status.FAIL.ordinal() ],
+                                    counts[ Status.NO_GOLDEN.ordinal() ], GOLDEN ) );
+        text.append( String.format( "%.1f ms elapsed, %.1f ms in programs (%.1fx parallel)\n",
+                                    wallNanos / 1e6, totalNanos / 1e6,
+                                    wallNanos == 0 ? 0.0 : (double) totalNanos / wallNanos ) );
+        if ( slowest != null ) {
+            text.append( String.format( "slowest: %s, %.1f ms\n",
+                                        slowest.file().getFileName(), slowest.nanos() / 1e6 ) );
+        }
+        return text.toString();
+    }
+}
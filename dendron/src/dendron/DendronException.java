@@ -0,0 +1,87 @@
+package dendron;
+
+/**
+ * A Dendron program failed. It carries the kind of error, the value
+ * that caused it, if any, and where in the program it happened, so
+ * a driver can report it and go on to the next program instead of
+ * the whole JVM stopping.
+ *
+ * These are errors in Dendron programs, not in Java code, so no stack
+ * trace is filled in; that keeps a failing program as cheap as one
+ * that succeeds.
+ *
+ * @author Nicholas Pembroke
+ */
+public abstract class DendronException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Errors.Type type;
+    private final Object info;
+    private int position;
+
+    /**
+     * @param type the kind of error
+     * @param info if not null, the value that caused it
+     * @param position where it happened, or -1 if not known
+     */
+    protected DendronException( Errors.Type type, Object info, int position ) {
+        super( null, null, false, false );
+        this.type = type;
+        this.info = info;
+        this.position = position;
+    }
+
+    /**
+     * @return what the position counts, for messages, e.g. "token"
+     */
+    protected abstract String unit();
+
+    /**
+     * Fill in where the error happened, if whoever raised it could not
+     * tell.
+     * @param position where it happened
+     * @return this exception
+     */
+    public DendronException at( int position ) {
+        if ( this.position < 0 ) {
+            this.position = position;
+        }
+        return this;
+    }
+
+    /**
+     * @return the kind of error
+     */
+    public Errors.Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the value that caused the error, or null if none
+     */
+    public Object getInfo() {
+        return info;
+    }
+
+    /**
+     * @return where in the program the error happened, counted as
+     *         {@link #unit()} says, or -1 if not known
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the error in the form {@link Errors#report(DendronException)}
+     *         prints it, without the position
+     */
+    public String describe() {
+        return info == null ? type.message() : type.message() + ": " + info;
+    }
+
+    @Override
+    public String getMessage() {
+        return position < 0 ? describe() : describe() + " (" + unit() + " " + position + ")";
+    }
+}
@@ -1,5 +1,8 @@
 package dendron;
 
+import dendron.io.OutputSink;
+
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -10,6 +13,7 @@ import java.util.Map;
  *     <li>uninitialized variable in expression</li>
  *     <li>premature end of statement</li>
  *     <li>extra tokens at end of statement</li>
+ *     <li>stack underflow in machine code</li>
  * </ul>
  *
  * @author James Heliotis
@@ -17,37 +21,51 @@ import java.util.Map;
 public class Errors {
 
     /**
-     * The exit status returned by the Java virtual machine if an
-     * error is reported via this class
+     * The exit status the drivers return from the Java virtual
+     * machine when a program fails
      */
     public static final int DENDRON_ABORT = 1;
 
+    /**
+     * Variables whose names start with this are temporaries made by
+     * the compiler, and are never shown in a symbol table dump
+     */
+    public static final String TEMP_PREFIX = "$";
+
     public enum Type {
         DIVIDE_BY_ZERO( "divide by zero" ),
         ILLEGAL_VALUE( "illegal value encountered in source" ),
         UNINITIALIZED( "uninitialized variable in expression" ),
         PREMATURE_END( "premature end of statement" ),
-        EXTRA_TOKENS( "extra tokens at end of statement" );
+        EXTRA_TOKENS( "extra tokens at end of statement" ),
+        STACK_UNDERFLOW( "stack underflow" );
 
         private final String message;
 
         Type( String message ) {
             this.message = message;
         }
+
+        /**
+         * @return how this kind of error is described to the user
+         */
+        public String message() {
+            return message;
+        }
     }
 
     /**
-     * Report an error and stop the program. All output goes to standard error.
+     * Report an error that stopped a program: the kind of error, then
+     * after a colon the value that caused it, if any. All output goes
+     * to standard error, after whatever is waiting in this thread's
+     * standard output sink. Deciding whether to exit is up to the
+     * caller.
      *
-     * @param type The kind of error, printed first
-     * @param info if not null, an additional value to be printed after a colon
+     * @param error the error the program raised
      */
-    public static void report( Type type, Object info ) {
-        System.err.print( type.message );
-        if ( info != null ) {
-            System.err.print( ": " + info );
-        }
-        System.exit( DENDRON_ABORT );
+    public static void report( DendronException error ) {
+        OutputSink.standardOutput().flush();
+        System.err.print( error.describe() );
     }
 
     /**
@@ -55,9 +73,58 @@ public class Errors {
      * @param table the program's symbol table
      */
     public static void dump( Map< String, Integer > table ) {
-        System.out.println( "Symbol Table Contents\n=====================\n" );
-        for ( String ident: table.keySet() ) {
-            System.out.printf( "%12s : %11d\n", ident, table.get( ident ) );
+        OutputSink out = OutputSink.standardOutput();
+        dump( out, table );
+        out.flush();
+    }
+
+    /**
+     * Show on the given sink the values of all the variables in the
+     * table, in the same form as {@link #dump(Map)}.
+     * @param out where to print the table
+     * @param table the program's symbol table
+     */
+    public static void dump( OutputSink out, Map< String, Integer > table ) {
+        out.println( "Symbol Table Contents\n=====================\n" );
+        for ( Map.Entry< String, Integer > entry: table.entrySet() ) {
+            if ( entry.getKey().startsWith( TEMP_PREFIX ) ) continue;
+            line( out, entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * Show on the given sink the values of all the variables in a
+     * linked frame that have values, by name, in the same form and
+     * order as {@link #dump(Map)} would show them.
+     * @param out where to print the table
+     * @param slots the map from variable name to frame slot
+     * @param frame the variable values, indexed by slot
+     * @param defined which slots have been assigned a value
+     */
+    public static void dump( OutputSink out, Map< String, Integer > slots,
+                             int[] frame, boolean[] defined ) {
+        String[] names = new String[ slots.size() ];
+        for ( Map.Entry< String, Integer > entry: slots.entrySet() ) {
+            names[ entry.getValue() ] = entry.getKey();
         }
+        // Entered in slot order, so the table is the same whatever else the frame holds
+        Map< String, Integer > table = new HashMap<>();
+        for ( int slot = 0; slot < names.length; ++slot ) {
+            if ( defined[ slot ] ) {
+                table.put( names[ slot ], frame[ slot ] );
+            }
+        }
+        dump( out, table );
+    }
+
+    /**
+     * One line of a symbol table dump, formatted as printf's
+     * "%12s : %11d\n" would.
+     */
+    private static void line( OutputSink out, String ident, int value ) {
+        out.print( ident, 12 );
+        out.print( " : " );
+        out.print( value, 11 );
+        out.println();
     }
 }
@@ -0,0 +1,27 @@
+package dendron;
+
+/**
+ * A Dendron program failed while its parse tree was being
+ * interpreted. The position is the index of the statement that was
+ * running.
+ *
+ * @author Nicholas Pembroke
+ */
+public class InterpretException extends DendronException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Raise an error whose statement is filled in by {@link #at(int)}.
+     * @param type the kind of error
+     * @param info if not null, the value that caused it
+     */
+    public InterpretException( Errors.Type type, Object info ) {
+        super( type, info, -1 );
+    }
+
+    @Override
+    protected String unit() {
+        return "statement";
+    }
+}
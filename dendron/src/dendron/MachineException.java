@@ -0,0 +1,27 @@
+package dendron;
+
+/**
+ * A Dendron program failed while running on a Machine. The position
+ * is the index of the failing instruction in the form of the program
+ * that ran, or -1 for compiled forms that do not keep one.
+ *
+ * @author Nicholas Pembroke
+ */
+public class MachineException extends DendronException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Raise an error whose instruction is filled in by {@link #at(int)}.
+     * @param type the kind of error
+     * @param info if not null, the value that caused it
+     */
+    public MachineException( Errors.Type type, Object info ) {
+        super( type, info, -1 );
+    }
+
+    @Override
+    protected String unit() {
+        return "instruction";
+    }
+}
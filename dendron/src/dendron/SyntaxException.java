@@ -0,0 +1,27 @@
+package dendron;
+
+/**
+ * A Dendron program could not be parsed. The position is the index
+ * of the offending token, or the number of tokens if the program
+ * ended too soon.
+ *
+ * @author Nicholas Pembroke
+ */
+public class SyntaxException extends DendronException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param type the kind of error
+     * @param info if not null, the offending token
+     * @param token the index of the token
+     */
+    public SyntaxException( Errors.Type type, Object info, int token ) {
+        super( type, info, token );
+    }
+
+    @Override
+    protected String unit() {
+        return "token";
+    }
+}
@@ -0,0 +1,368 @@
+package dendron;
+
+import dendron.io.OutputSink;
+import dendron.io.StreamSink;
+import dendron.tree.BinaryOperation;
+import dendron.tree.ParseTree;
+import dendron.tree.UnaryOperation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generate random Dendron programs of any size for stress tests and
+ * benchmarks. Each program is written three ways: as source, one
+ * statement per line; as the equivalent machine assembly code; and
+ * as the output InstructionReader should print when it runs the
+ * assembly code. The same settings and seed always give the same
+ * program.
+ *
+ * The settings are
+ * <ul>
+ *     <li>statements: how many statements the program has</li>
+ *     <li>depth: how deeply operators may nest in an expression</li>
+ *     <li>width: the most operands (constants and variables) an
+ *     expression may have</li>
+ *     <li>variables: how many different variables there are</li>
+ *     <li>reuse: the chance that an operand reads a variable that
+ *     already has a value rather than being a constant</li>
+ *     <li>print density: the chance that a statement is a print
+ *     rather than an assignment</li>
+ * </ul>
+ * Generated programs never read a variable before it is assigned
+ * and never divide by zero, so they always run to the end.
+ *
+ * @author Nicholas Pembroke
+ */
+public class WorkloadGenerator {
+
+    /** The chance that an operator is unary rather than binary */
+    private static final double UNARY = 0.1;
+
+    /** Constants are drawn from 0 up to, but not including, this */
+    private static final int CONSTANT_LIMIT = 100;
+
+    private static final String[] BINARY = {
+            BinaryOperation.ADD, BinaryOperation.SUB, BinaryOperation.MUL, BinaryOperation.DIV
+    };
+
+    private static final String[] MNEMONIC = { "ADD", "SUB", "MUL", "DIV" };
+
+    private long seed = 1;
+    private int statements = 1000;
+    private int depth = 4;
+    private int width = 8;
+    private int variables = 26;
+    private double reuse = 0.5;
+    private double printDensity = 0.1;
+
+    /*
+     * State while a program is being generated
+     */
+    private Random random;
+    private String[] names;
+    private int[] values;
+    private boolean[] defined;
+    private int[] assigned;
+    private int assignedCount;
+
+    /**
+     * An expression being generated, with its value.
+     */
+    private static final class Node {
+        final String operator;
+        final String leaf;
+        final Node left;
+        final Node right;
+        final int value;
+
+        Node( String leaf, int value ) {
+            this( null, leaf, null, null, value );
+        }
+
+        Node( String operator, String leaf, Node left, Node right, int value ) {
+            this.operator = operator;
+            this.leaf = leaf;
+            this.left = left;
+            this.right = right;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param seed the seed of the random choices
+     * @return this generator
+     */
+    public WorkloadGenerator seed( long seed ) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param statements how many statements to generate
+     * @return this generator
+     */
+    public WorkloadGenerator statements( int statements ) {
+        this.statements = atLeast( 0, statements, "statements" );
+        return this;
+    }
+
+    /**
+     * @param depth the deepest nesting of operators in an expression
+     * @return this generator
+     */
+    public WorkloadGenerator depth( int depth ) {
+        this.depth = atLeast( 0, depth, "depth" );
+        return this;
+    }
+
+    /**
+     * @param width the most operands an expression may have
+     * @return this generator
+     */
+    public WorkloadGenerator width( int width ) {
+        this.width = atLeast( 1, width, "width" );
+        return this;
+    }
+
+    /**
+     * @param variables how many different variables to use
+     * @return this generator
+     */
+    public WorkloadGenerator variables( int variables ) {
+        this.variables = atLeast( 1, variables, "variables" );
+        return this;
+    }
+
+    /**
+     * @param reuse the chance, from 0 to 1, that an operand is a variable
+     * @return this generator
+     */
+    public WorkloadGenerator reuse( double reuse ) {
+        this.reuse = fraction( reuse, "reuse" );
+        return this;
+    }
+
+    /**
+     * @param printDensity the chance, from 0 to 1, that a statement is a print
+     * @return this generator
+     */
+    public WorkloadGenerator printDensity( double printDensity ) {
+        this.printDensity = fraction( printDensity, "print density" );
+        return this;
+    }
+
+    /**
+     * Generate a program into three files named after a base path:
+     * base.txt for the source, base.denm for the assembly code and
+     * base.out for the expected output.
+     * @param base the path of the files, without an extension
+     * @throws IOException if a file cannot be written
+     */
+    public void write( Path base ) throws IOException {
+        String name = base.getFileName().toString();
+        try ( Writer source = Files.newBufferedWriter( base.resolveSibling( name + ".txt" ) );
+              Writer assembly = Files.newBufferedWriter( base.resolveSibling( name + ".denm" ) );
+              OutputSink expected = new StreamSink(
+                      Files.newOutputStream( base.resolveSibling( name + ".out" ) ) ) ) {
+            generate( source, assembly, expected );
+        }
+    }
+
+    /**
+     * Generate a program.
+     * @param source where the source goes, one statement per line
+     * @param assembly where the assembly code goes
+     * @param expected where the expected InstructionReader output goes
+     * @throws IOException if the source or assembly cannot be written
+     */
+    public void generate( Writer source, Writer assembly, OutputSink expected )
+            throws IOException {
+        random = new Random( seed );
+        names = new String[ variables ];
+        values = new int[ variables ];
+        defined = new boolean[ variables ];
+        assigned = new int[ variables ];
+        assignedCount = 0;
+        for ( int v = 0; v < variables; ++v ) {
+            names[ v ] = "v" + v;
+        }
+        // Built in the order the Machine will link the names, so that
+        // the dump below lists them in the same order as the Machine's.
+        Map< String, Integer > slots = new HashMap<>();
+
+        expected.println( "Executing compiled code..." );
+        StringBuilder line = new StringBuilder();
+        for ( int s = 0; s < statements; ++s ) {
+            boolean print = random.nextDouble() < printDensity;
+            int target = print ? -1 : random.nextInt( variables );
+            Node expr = expression( depth, 1 + random.nextInt( width ) );
+
+            line.setLength( 0 );
+            if ( print ) {
+                line.append( ParseTree.PRINT );
+            }
+            else {
+                line.append( ParseTree.ASSIGN ).append( ' ' ).append( names[ target ] );
+            }
+            prefix( expr, line );
+            source.append( line ).append( '\n' );
+
+            line.setLength( 0 );
+            postfix( expr, line );
+            if ( print ) {
+                line.append( "PRINT\n" );
+                expected.print( "*** " );
+                expected.println( expr.value );
+            }
+            else {
+                line.append( "STORE " ).append( names[ target ] ).append( '\n' );
+                if ( !defined[ target ] ) {
+                    defined[ target ] = true;
+                    assigned[ assignedCount++ ] = target;
+                    slots.put( names[ target ], slots.size() );
+                }
+                values[ target ] = expr.value;
+            }
+            assembly.append( line );
+        }
+
+        expected.println( "Machine: execution ended with 0 items left on the stack." );
+        expected.println();
+        int[] frame = new int[ slots.size() ];
+        for ( int v = 0; v < assignedCount; ++v ) {
+            frame[ slots.get( names[ assigned[ v ] ] ) ] = values[ assigned[ v ] ];
+        }
+        boolean[] all = new boolean[ slots.size() ];
+        Arrays.fill( all, true );
+        Errors.dump( expected, slots, frame, all );
+    }
+
+    /**
+     * Generate an expression.
+     * @param levels how many more levels of operators may nest
+     * @param operands how many operands to use, at most
+     */
+    private Node expression( int levels, int operands ) {
+        if ( levels > 0 && random.nextDouble() < UNARY ) {
+            Node operand = expression( levels - 1, operands );
+            String op = random.nextBoolean() ? UnaryOperation.NEG : UnaryOperation.SQRT;
+            return new Node( op, null, operand, null, UnaryOperation.apply( op, operand.value ) );
+        }
+        if ( levels == 0 || operands == 1 ) {
+            if ( assignedCount > 0 && random.nextDouble() < reuse ) {
+                int v = assigned[ random.nextInt( assignedCount ) ];
+                return new Node( names[ v ], values[ v ] );
+            }
+            int k = random.nextInt( CONSTANT_LIMIT );
+            return new Node( Integer.toString( k ), k );
+        }
+        int split = 1 + random.nextInt( operands - 1 );
+        Node left = expression( levels - 1, split );
+        Node right = expression( levels - 1, operands - split );
+        int op = random.nextInt( BINARY.length );
+        if ( BINARY[ op ].equals( BinaryOperation.DIV ) && right.value == 0 ) {
+            op = random.nextInt( BINARY.length - 1 );
+        }
+        return new Node( BINARY[ op ], MNEMONIC[ op ], left, right,
+                         BinaryOperation.apply( BINARY[ op ], left.value, right.value ) );
+    }
+
+    private static void prefix( Node expr, StringBuilder out ) {
+        if ( expr.operator == null ) {
+            out.append( ' ' ).append( expr.leaf );
+            return;
+        }
+        out.append( ' ' ).append( expr.operator );
+        prefix( expr.left, out );
+        if ( expr.right != null ) {
+            prefix( expr.right, out );
+        }
+    }
+
+    private static void postfix( Node expr, StringBuilder out ) {
+        if ( expr.operator == null ) {
+            char first = expr.leaf.charAt( 0 );
+            out.append( Character.isDigit( first ) ? "PUSH " : "LOAD " )
+               .append( expr.leaf ).append( '\n' );
+            return;
+        }
+        postfix( expr.left, out );
+        if ( expr.right != null ) {
+            postfix( expr.right, out );
+            out.append( expr.leaf ).append( '\n' );
+        }
+        else {
+            out.append( expr.operator.equals( UnaryOperation.NEG ) ? "NEG\n" : "SQRT\n" );
+        }
+    }
+
+    private static int atLeast( int least, int value, String what ) {
+        if ( value < least ) {
+            throw new IllegalArgumentException( what + " must be at least " + least );
+        }
+        return value;
+    }
+
+    private static double fraction( double value, String what ) {
+        if ( !( value >= 0 && value <= 1 ) ) {
+            throw new IllegalArgumentException( what + " must be from 0 to 1" );
+        }
+        return value;
+    }
+
+    /**
+     * Generate a program from the command line.
+     * @param args [-seed n] [-statements n] [-depth n] [-width n]
+     *             [-variables n] [-reuse fraction] [-print fraction]
+     *             followed by the base name of the files to write
+     */
+    public static void main( String[] args ) {
+        WorkloadGenerator generator = new WorkloadGenerator();
+        String base = null;
+        int i = 0;
+        try {
+            for ( ; i + 1 < args.length; i += 2 ) {
+                String value = args[ i + 1 ];
+                switch ( args[ i ] ) {
+                    case "-seed": generator.seed( Long.parseLong( value ) ); break;
+                    case "-statements": generator.statements( Integer.parseInt( value ) ); break;
+                    case "-depth": generator.depth( Integer.parseInt( value ) ); break;
+                    case "-width": generator.width( Integer.parseInt( value ) ); break;
+                    case "-variables": generator.variables( Integer.parseInt( value ) ); break;
+                    case "-reuse": generator.reuse( Double.parseDouble( value ) ); break;
+                    case "-print": generator.printDensity( Double.parseDouble( value ) ); break;
+                    default:
+                        throw new IllegalArgumentException( "Unknown option " + args[ i ] );
+                }
+            }
+            if ( i == args.length - 1 && !args[ i ].startsWith( "-" ) ) {
+                base = args[ i ];
+            }
+        }
+        catch ( IllegalArgumentException iae ) {
+            System.err.println( iae.getMessage() );
+        }
+        if ( base == null ) {
+            System.err.println(
+                    "Usage: java dendron.WorkloadGenerator [-seed n] [-statements n] " +
+                    "[-depth n] [-width n] [-variables n] [-reuse fraction] " +
+                    "[-print fraction] base-name" );
+            System.exit( 1 );
+        }
+        try {
+            generator.write( Paths.get( base ) );
+        }
+        catch ( IOException ioe ) {
+            System.err.println( ioe.getMessage() );
+            System.exit( 1 );
+        }
+    }
+}
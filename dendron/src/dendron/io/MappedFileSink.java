@@ -0,0 +1,98 @@
+package dendron.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An OutputSink that writes a file through memory, mapping a region at
+ * a time, so output reaches the page cache without a write call per
+ * flush. The file is longer than its contents until the sink is
+ * closed, which cuts it to the length actually written.
+ *
+ * @author Nicholas Pembroke
+ */
+public class MappedFileSink extends OutputSink {
+
+    /** How much of the file is mapped at once when not told otherwise */
+    public static final int DEFAULT_REGION_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final int regionSize;
+    private MappedByteBuffer region;
+    private long regionStart = 0;
+    private boolean closed = false;
+
+    /**
+     * Create or replace a file and map its first region.
+     * @param file where the output goes
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public MappedFileSink( Path file ) throws IOException {
+        this( file, DEFAULT_FLUSH_SIZE, DEFAULT_REGION_SIZE );
+    }
+
+    /**
+     * Create or replace a file and map its first region.
+     * @param file where the output goes
+     * @param flushSize how many bytes to gather before copying them
+     *                  into the mapped region
+     * @param regionSize how much of the file to map at once
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public MappedFileSink( Path file, int flushSize, int regionSize ) throws IOException {
+        super( flushSize );
+        if ( regionSize <= 0 ) {
+            throw new IllegalArgumentException( "region size " + regionSize );
+        }
+        this.channel = FileChannel.open( file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING );
+        this.regionSize = regionSize;
+        this.region = channel.map( FileChannel.MapMode.READ_WRITE, 0, regionSize );
+    }
+
+    @Override
+    protected void drain( byte[] bytes, int offset, int count ) throws IOException {
+        while ( count > 0 ) {
+            if ( !region.hasRemaining() ) {
+                regionStart += region.position();
+                region = channel.map( FileChannel.MapMode.READ_WRITE, regionStart, regionSize );
+            }
+            int chunk = Math.min( count, region.remaining() );
+            region.put( bytes, offset, chunk );
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    /**
+     * @return how many bytes have been copied into the file so far
+     */
+    public long written() {
+        return regionStart + region.position();
+    }
+
+    /**
+     * Flush, cut the file to the length written and close it.
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void close() {
+        if ( closed ) {
+            return;
+        }
+        super.close();
+        closed = true;
+        try ( FileChannel toClose = channel ) {
+            region.force();
+            toClose.truncate( written() );
+        }
+        catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dendron.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An OutputSink that keeps all its output in memory, for capturing
+ * what a program prints.
+ *
+ * @author Nicholas Pembroke
+ */
+public class MemorySink extends OutputSink {
+
+    private byte[] collected = new byte[ 256 ];
+    private int size = 0;
+
+    /**
+     * Create an in-memory sink with the default flush size.
+     */
+    public MemorySink() {
+        this( DEFAULT_FLUSH_SIZE );
+    }
+
+    /**
+     * @param flushSize how many bytes to gather before collecting them
+     */
+    public MemorySink( int flushSize ) {
+        super( flushSize );
+    }
+
+    @Override
+    protected void drain( byte[] bytes, int offset, int count ) {
+        if ( collected.length - size < count ) {
+            collected = Arrays.copyOf( collected, Math.max( collected.length << 1, size + count ) );
+        }
+        System.arraycopy( bytes, offset, collected, size, count );
+        size += count;
+    }
+
+    /**
+     * @return everything written so far, flushed or not
+     */
+    public byte[] toByteArray() {
+        flush();
+        return Arrays.copyOf( collected, size );
+    }
+
+    /**
+     * @return everything written so far, flushed or not, as text
+     */
+    @Override
+    public String toString() {
+        flush();
+        return new String( collected, 0, size, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Forget everything written so far.
+     */
+    public void clear() {
+        flush();
+        size = 0;
+    }
+}
@@ -0,0 +1,251 @@
+package dendron.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where a running Dendron program's output goes: PRINT values,
+ * banners and symbol table dumps.
+ *
+ * Output is gathered in a byte buffer, with ints formatted by hand
+ * instead of through Strings or printf, and is only handed on when
+ * the buffer reaches the flush size or when {@link #flush()} is
+ * called. The Machine and the tree interpreters flush once at the end
+ * of each run, so a print-heavy program costs one write, not one
+ * synchronized, autoflushed println per value.
+ *
+ * A sink is not thread-safe. Each thread has its own
+ * {@link #standardOutput()}.
+ *
+ * @author Nicholas Pembroke
+ */
+public abstract class OutputSink implements Flushable, Closeable {
+
+    /** The flush size used when none is given, in bytes */
+    public static final int DEFAULT_FLUSH_SIZE = 1 << 16;
+
+    private static final ThreadLocal< OutputSink > STANDARD_OUTPUT =
+            ThreadLocal.withInitial( StreamSink::forStandardOutput );
+
+    private static final byte[] MIN_VALUE =
+            Integer.toString( Integer.MIN_VALUE ).getBytes( StandardCharsets.US_ASCII );
+
+    private final byte[] buffer;
+    private int length = 0;
+
+    /**
+     * @param flushSize how many bytes to gather before handing them on
+     */
+    protected OutputSink( int flushSize ) {
+        if ( flushSize < MIN_VALUE.length ) {
+            throw new IllegalArgumentException( "flush size " + flushSize );
+        }
+        this.buffer = new byte[ flushSize ];
+    }
+
+    /**
+     * The sink for standard output on the current thread. It writes
+     * to whatever System.out is at the time it is flushed.
+     * @return this thread's standard output sink
+     */
+    public static OutputSink standardOutput() {
+        return STANDARD_OUTPUT.get();
+    }
+
+    /**
+     * Hand on some gathered output.
+     * @param bytes the output
+     * @param offset where it starts in bytes
+     * @param count how many bytes there are
+     * @throws IOException if the output cannot be written
+     */
+    protected abstract void drain( byte[] bytes, int offset, int count ) throws IOException;
+
+    /**
+     * Push output already handed on through to its destination. Does
+     * nothing unless overridden.
+     * @throws IOException if the output cannot be written
+     */
+    protected void sync() throws IOException {
+    }
+
+    /**
+     * @return how many bytes are gathered before they are handed on
+     */
+    public int flushSize() {
+        return buffer.length;
+    }
+
+    /**
+     * @return how many bytes are gathered and not yet handed on
+     */
+    public int pending() {
+        return length;
+    }
+
+    /**
+     * Hand on everything gathered and push it through to its
+     * destination.
+     * @throws UncheckedIOException if the output cannot be written
+     */
+    @Override
+    public void flush() {
+        try {
+            drainBuffer();
+            sync();
+        }
+        catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Flush, and release whatever the sink writes to.
+     * @throws UncheckedIOException if the output cannot be written
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * @param s text to write
+     */
+    public void print( String s ) {
+        for ( int i = 0; i < s.length(); ++i ) {
+            char c = s.charAt( i );
+            if ( c >= 0x80 ) {
+                write( s.substring( i ).getBytes( StandardCharsets.UTF_8 ) );
+                return;
+            }
+            if ( length == buffer.length ) {
+                drainFull();
+            }
+            buffer[ length++ ] = (byte) c;
+        }
+    }
+
+    /**
+     * Write text right-justified in a field, like printf's %12s.
+     * @param s text to write
+     * @param width the field width; longer text is not cut
+     */
+    public void print( String s, int width ) {
+        pad( width - s.length() );
+        print( s );
+    }
+
+    /**
+     * @param value an int to write in decimal
+     */
+    public void print( int value ) {
+        print( value, 0 );
+    }
+
+    /**
+     * Write an int right-justified in a field, like printf's %11d.
+     * @param value an int to write in decimal
+     * @param width the field width; longer numbers are not cut
+     */
+    public void print( int value, int width ) {
+        if ( value == Integer.MIN_VALUE ) {
+            pad( width - MIN_VALUE.length );
+            write( MIN_VALUE );
+            return;
+        }
+        int magnitude = value < 0 ? -value : value;
+        int digits = 1;
+        for ( int rest = magnitude; rest >= 10; rest /= 10 ) {
+            ++digits;
+        }
+        int size = value < 0 ? digits + 1 : digits;
+        pad( width - size );
+        if ( buffer.length - length < size ) {
+            drainFull();
+        }
+        if ( value < 0 ) {
+            buffer[ length ] = '-';
+        }
+        int end = length + size;
+        for ( int at = end - 1; at >= end - digits; --at ) {
+            buffer[ at ] = (byte) ( '0' + magnitude % 10 );
+            magnitude /= 10;
+        }
+        length = end;
+    }
+
+    /**
+     * End the current line.
+     */
+    public void println() {
+        if ( length == buffer.length ) {
+            drainFull();
+        }
+        buffer[ length++ ] = '\n';
+    }
+
+    /**
+     * @param s text to write on the end of the current line
+     */
+    public void println( String s ) {
+        print( s );
+        println();
+    }
+
+    /**
+     * @param value an int to write in decimal on the end of the current line
+     */
+    public void println( int value ) {
+        print( value, 0 );
+        println();
+    }
+
+    /**
+     * @param bytes raw output to write
+     */
+    public void write( byte[] bytes ) {
+        if ( bytes.length > buffer.length - length ) {
+            drainFull();
+            if ( bytes.length > buffer.length ) {
+                try {
+                    drain( bytes, 0, bytes.length );
+                }
+                catch ( IOException e ) {
+                    throw new UncheckedIOException( e );
+                }
+                return;
+            }
+        }
+        System.arraycopy( bytes, 0, buffer, length, bytes.length );
+        length += bytes.length;
+    }
+
+    private void pad( int count ) {
+        for ( int i = 0; i < count; ++i ) {
+            if ( length == buffer.length ) {
+                drainFull();
+            }
+            buffer[ length++ ] = ' ';
+        }
+    }
+
+    private void drainFull() {
+        try {
+            drainBuffer();
+        }
+        catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private void drainBuffer() throws IOException {
+        if ( length > 0 ) {
+            int count = length;
+            length = 0;
+            drain( buffer, 0, count );
+        }
+    }
+}
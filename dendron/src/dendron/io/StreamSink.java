@@ -0,0 +1,89 @@
+package dendron.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * An OutputSink that hands its output on to an OutputStream in large
+ * writes.
+ *
+ * @author Nicholas Pembroke
+ */
+public class StreamSink extends OutputSink {
+
+    /** Forwards to System.out as it is when written, not when created */
+    private static final OutputStream SYSTEM_OUT = new OutputStream() {
+        @Override
+        public void write( int b ) {
+            System.out.write( b );
+        }
+
+        @Override
+        public void write( byte[] bytes, int offset, int count ) {
+            System.out.write( bytes, offset, count );
+        }
+
+        @Override
+        public void flush() {
+            System.out.flush();
+        }
+    };
+
+    private final OutputStream out;
+    private final boolean closeStream;
+
+    /**
+     * @param out where the output goes; it is flushed along with this
+     *            sink, and closed when this sink is closed
+     */
+    public StreamSink( OutputStream out ) {
+        this( out, DEFAULT_FLUSH_SIZE );
+    }
+
+    /**
+     * @param out where the output goes; it is flushed along with this
+     *            sink, and closed when this sink is closed
+     * @param flushSize how many bytes to gather before writing them
+     */
+    public StreamSink( OutputStream out, int flushSize ) {
+        this( out, flushSize, true );
+    }
+
+    private StreamSink( OutputStream out, int flushSize, boolean closeStream ) {
+        super( flushSize );
+        this.out = out;
+        this.closeStream = closeStream;
+    }
+
+    /**
+     * @return a new sink that writes to System.out and never closes it
+     * @see OutputSink#standardOutput()
+     */
+    static StreamSink forStandardOutput() {
+        return new StreamSink( SYSTEM_OUT, DEFAULT_FLUSH_SIZE, false );
+    }
+
+    @Override
+    protected void drain( byte[] bytes, int offset, int count ) throws IOException {
+        out.write( bytes, offset, count );
+    }
+
+    @Override
+    protected void sync() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if ( closeStream ) {
+            try {
+                out.close();
+            }
+            catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+}
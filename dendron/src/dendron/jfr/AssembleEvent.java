@@ -0,0 +1,29 @@
+package dendron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Dendron assembly file was assembled into Machine instructions.
+ *
+ * @author Nicholas Pembroke
+ */
+@Name( "dendron.Assemble" )
+@Label( "Dendron Assemble" )
+@Category( "Dendron" )
+@Description( "Assembling a Dendron machine code file" )
+public class AssembleEvent extends jdk.jfr.Event {
+
+    @Label( "File" )
+    public String file;
+
+    @Label( "Size" )
+    @DataAmount
+    public long size;
+
+    @Label( "Instructions" )
+    public int instructions;
+}
@@ -0,0 +1,24 @@
+package dendron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Dendron parse tree was compiled to Machine instructions.
+ *
+ * @author Nicholas Pembroke
+ */
+@Name( "dendron.Compile" )
+@Label( "Dendron Compile" )
+@Category( "Dendron" )
+@Description( "Compiling a Dendron parse tree to Machine instructions" )
+public class CompileEvent extends jdk.jfr.Event {
+
+    @Label( "Statements" )
+    public int statements;
+
+    @Label( "Instructions" )
+    public int instructions;
+}
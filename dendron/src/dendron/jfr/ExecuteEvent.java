@@ -0,0 +1,34 @@
+package dendron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Machine ran a program, from a pristine state or from where an
+ * earlier program left it.
+ *
+ * @author Nicholas Pembroke
+ */
+@Name( "dendron.Execute" )
+@Label( "Dendron Execute" )
+@Category( "Dendron" )
+@Description( "Running a program on a Dendron Machine" )
+public class ExecuteEvent extends jdk.jfr.Event {
+
+    @Label( "Form" )
+    @Description( "list, segment, jit or register" )
+    public String form;
+
+    @Label( "Instructions" )
+    @Description( "The size of the program, or -1 if not known" )
+    public int instructions;
+
+    @Label( "Stack Left" )
+    public int stackLeft;
+
+    @Label( "Failed" )
+    @Description( "Whether the program stopped with an error" )
+    public boolean failed;
+}
@@ -0,0 +1,31 @@
+package dendron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted by a Machine every so many instructions, when sampling is
+ * on, and spanning the time those instructions took.
+ *
+ * @author Nicholas Pembroke
+ * @see dendron.machine.Machine#setSampleInterval(int)
+ */
+@Name( "dendron.InstructionSample" )
+@Label( "Dendron Instruction Sample" )
+@Category( "Dendron" )
+@Description( "A stretch of instructions run by a Dendron Machine" )
+public class InstructionSampleEvent extends jdk.jfr.Event {
+
+    @Label( "Instructions" )
+    @Description( "How many instructions the sample spans" )
+    public int instructions;
+
+    @Label( "Executed" )
+    @Description( "How many instructions the current run has executed" )
+    public long executed;
+
+    @Label( "Stack Depth" )
+    public int stackDepth;
+}
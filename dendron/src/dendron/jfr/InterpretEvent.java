@@ -0,0 +1,29 @@
+package dendron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Dendron parse tree was interpreted.
+ *
+ * @author Nicholas Pembroke
+ */
+@Name( "dendron.Interpret" )
+@Label( "Dendron Interpret" )
+@Category( "Dendron" )
+@Description( "Running a Dendron program by interpreting its parse tree" )
+public class InterpretEvent extends jdk.jfr.Event {
+
+    @Label( "Statements" )
+    public int statements;
+
+    @Label( "Form" )
+    @Description( "tree for tree walking, closures for the bound form" )
+    public String form;
+
+    @Label( "Failed" )
+    @Description( "Whether the program stopped with an error" )
+    public boolean failed;
+}
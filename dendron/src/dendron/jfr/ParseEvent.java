@@ -0,0 +1,28 @@
+package dendron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Dendron source program was parsed into a tree.
+ *
+ * @author Nicholas Pembroke
+ */
+@Name( "dendron.Parse" )
+@Label( "Dendron Parse" )
+@Category( "Dendron" )
+@Description( "Parsing Dendron source tokens into a parse tree" )
+public class ParseEvent extends jdk.jfr.Event {
+
+    @Label( "Tokens" )
+    public int tokens;
+
+    @Label( "Statements" )
+    public int statements;
+
+    @Label( "Failed" )
+    @Description( "Whether the tokens were not a valid program" )
+    public boolean failed;
+}
@@ -0,0 +1,303 @@
+package dendron.machine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A streaming assembler for the text .denm format. Input is read in
+ * large blocks and tokenized byte by byte; mnemonics are matched and
+ * integer operands are converted without building intermediate
+ * Strings. Variable names are the only Strings created, and each
+ * distinct name is created once.
+ *
+ * Errors are reported on standard error with their line numbers, and
+ * the offending instruction is skipped.
+ *
+ * @author Nicholas Pembroke
+ */
+class Assembler {
+
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /** Rough lower bound on the bytes per instruction, for presizing */
+    private static final int BYTES_PER_INSTR = 5;
+
+    private static final byte[] PUSH = ascii( "PUSH" );
+    private static final byte[] LOAD = ascii( "LOAD" );
+    private static final byte[] STORE = ascii( "STORE" );
+    private static final byte[] ADD = ascii( "ADD" );
+    private static final byte[] SUB = ascii( "SUB" );
+    private static final byte[] MUL = ascii( "MUL" );
+    private static final byte[] DIV = ascii( "DIV" );
+    private static final byte[] NEG = ascii( "NEG" );
+    private static final byte[] SQRT = ascii( "SQRT" );
+    private static final byte[] PRINT = ascii( "PRINT" );
+    private static final byte[] DUP = ascii( "DUP" );
+
+    private final InputStream in;
+    private final String source;
+    private final byte[] block = new byte[ BLOCK_SIZE ];
+    private int blockPos = 0;
+    private int blockEnd = 0;
+
+    /** The current token, valid up to tokenLength */
+    private byte[] token = new byte[ 64 ];
+    private int tokenLength;
+    private int tokenLine;
+    private int line = 1;
+
+    /** Open-addressed table of the distinct variable names seen so far */
+    private String[] names = new String[ 64 ];
+    private byte[][] nameBytes = new byte[ 64 ][];
+    private int[] nameHashes = new int[ 64 ];
+    private int nameCount = 0;
+
+    private Assembler( InputStream in, String source ) {
+        this.in = in;
+        this.source = source;
+    }
+
+    /**
+     * Assemble a .denm file.
+     * @param file the assembly source
+     * @return the instructions, in order
+     * @throws IOException if the file cannot be read
+     */
+    static List< Machine.Instruction > assemble( Path file ) throws IOException {
+        long size = Files.size( file );
+        int capacity = (int) Math.min( Integer.MAX_VALUE - 8, size / BYTES_PER_INSTR + 1 );
+        try ( InputStream in = Files.newInputStream( file ) ) {
+            return new Assembler( in, file.toString() ).run( new ArrayList<>( capacity ) );
+        }
+    }
+
+    private List< Machine.Instruction > run( List< Machine.Instruction > result )
+            throws IOException {
+        while ( nextToken() ) {
+            if ( matches( PUSH ) ) {
+                if ( nextOperand( "PUSH" ) ) {
+                    int line = tokenLine;
+                    long value = integerToken();
+                    if ( value > Integer.MAX_VALUE ) {
+                        error( line, "Illegal PUSH operand " + tokenString() );
+                    }
+                    else {
+                        result.add( CodeBuffer.pushConstant( (int) value ) );
+                    }
+                }
+            }
+            else if ( matches( LOAD ) ) {
+                if ( nextOperand( "LOAD" ) ) {
+                    result.add( new Machine.Load( name() ) );
+                }
+            }
+            else if ( matches( STORE ) ) {
+                if ( nextOperand( "STORE" ) ) {
+                    result.add( new Machine.Store( name() ) );
+                }
+            }
+            else if ( matches( ADD ) ) {
+                result.add( CodeBuffer.ADD );
+            }
+            else if ( matches( SUB ) ) {
+                result.add( CodeBuffer.SUBTRACT );
+            }
+            else if ( matches( MUL ) ) {
+                result.add( CodeBuffer.MULTIPLY );
+            }
+            else if ( matches( DIV ) ) {
+                result.add( CodeBuffer.DIVIDE );
+            }
+            else if ( matches( NEG ) ) {
+                result.add( CodeBuffer.NEGATE );
+            }
+            else if ( matches( SQRT ) ) {
+                result.add( CodeBuffer.SQUARE_ROOT );
+            }
+            else if ( matches( PRINT ) ) {
+                result.add( CodeBuffer.PRINT );
+            }
+            else if ( matches( DUP ) ) {
+                result.add( CodeBuffer.DUP );
+            }
+            else {
+                error( tokenLine, "Illegal assembly instr " + tokenString() );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read the next byte, refilling the block as needed.
+     * @return the byte as an unsigned value, or -1 at end of input
+     */
+    private int read() throws IOException {
+        if ( blockPos == blockEnd ) {
+            blockEnd = in.read( block, 0, block.length );
+            blockPos = 0;
+            if ( blockEnd <= 0 ) {
+                blockEnd = 0;
+                return -1;
+            }
+        }
+        return block[ blockPos++ ] & 0xFF;
+    }
+
+    private static boolean isSpace( int b ) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r' ||
+               b == '\f' || b == 0x0B || ( b >= 0x1C && b <= 0x1F );
+    }
+
+    /**
+     * Move to the next whitespace-delimited token.
+     * @return false if the input is exhausted
+     */
+    private boolean nextToken() throws IOException {
+        int b = read();
+        while ( b >= 0 && isSpace( b ) ) {
+            if ( b == '\n' ) {
+                ++line;
+            }
+            b = read();
+        }
+        if ( b < 0 ) {
+            return false;
+        }
+        tokenLine = line;
+        tokenLength = 0;
+        while ( b >= 0 && !isSpace( b ) ) {
+            if ( tokenLength == token.length ) {
+                token = Arrays.copyOf( token, tokenLength << 1 );
+            }
+            token[ tokenLength++ ] = (byte) b;
+            b = read();
+        }
+        if ( b == '\n' ) {
+            ++line;
+        }
+        return true;
+    }
+
+    /**
+     * Move to the operand of an instruction, reporting an error if
+     * the input ends first.
+     */
+    private boolean nextOperand( String mnemonic ) throws IOException {
+        int line = tokenLine;
+        if ( nextToken() ) {
+            return true;
+        }
+        error( line, "Missing operand for " + mnemonic );
+        return false;
+    }
+
+    private boolean matches( byte[] mnemonic ) {
+        if ( tokenLength != mnemonic.length ) {
+            return false;
+        }
+        for ( int i = 0; i < tokenLength; ++i ) {
+            if ( token[ i ] != mnemonic[ i ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Convert the current token to an integer.
+     * @return the value, or a value above Integer.MAX_VALUE if the
+     *         token is not a legal int
+     */
+    private long integerToken() {
+        int i = 0;
+        boolean negative = false;
+        if ( tokenLength > 1 && ( token[ 0 ] == '-' || token[ 0 ] == '+' ) ) {
+            negative = token[ 0 ] == '-';
+            i = 1;
+        }
+        long value = 0;
+        for ( ; i < tokenLength; ++i ) {
+            int digit = token[ i ] - '0';
+            if ( digit < 0 || digit > 9 ) {
+                return Long.MAX_VALUE;
+            }
+            value = value * 10 + digit;
+            if ( value > (long) Integer.MAX_VALUE + 1 ) {
+                return Long.MAX_VALUE;
+            }
+        }
+        if ( negative ) {
+            return -value;
+        }
+        return value == (long) Integer.MAX_VALUE + 1 ? Long.MAX_VALUE : value;
+    }
+
+    /**
+     * Find or create the String for the current token, so that each
+     * distinct variable name is only decoded once.
+     */
+    private String name() {
+        int hash = 1;
+        for ( int i = 0; i < tokenLength; ++i ) {
+            hash = 31 * hash + token[ i ];
+        }
+        int mask = names.length - 1;
+        int index = ( hash ^ ( hash >>> 16 ) ) & mask;
+        while ( names[ index ] != null ) {
+            if ( nameHashes[ index ] == hash &&
+                 Arrays.equals( nameBytes[ index ], 0, nameBytes[ index ].length,
+                                token, 0, tokenLength ) ) {
+                return names[ index ];
+            }
+            index = ( index + 1 ) & mask;
+        }
+        String name = tokenString();
+        names[ index ] = name;
+        nameBytes[ index ] = Arrays.copyOf( token, tokenLength );
+        nameHashes[ index ] = hash;
+        if ( ++nameCount * 2 > names.length ) {
+            rehash();
+        }
+        return name;
+    }
+
+    private void rehash() {
+        String[] oldNames = names;
+        byte[][] oldBytes = nameBytes;
+        int[] oldHashes = nameHashes;
+        names = new String[ oldNames.length << 1 ];
+        nameBytes = new byte[ names.length ][];
+        nameHashes = new int[ names.length ];
+        int mask = names.length - 1;
+        for ( int i = 0; i < oldNames.length; ++i ) {
+            if ( oldNames[ i ] != null ) {
+                int hash = oldHashes[ i ];
+                int index = ( hash ^ ( hash >>> 16 ) ) & mask;
+                while ( names[ index ] != null ) {
+                    index = ( index + 1 ) & mask;
+                }
+                names[ index ] = oldNames[ i ];
+                nameBytes[ index ] = oldBytes[ i ];
+                nameHashes[ index ] = hash;
+            }
+        }
+    }
+
+    private String tokenString() {
+        return new String( token, 0, tokenLength, StandardCharsets.UTF_8 );
+    }
+
+    private void error( int line, String message ) {
+        System.err.println( source + ":" + line + ": " + message );
+    }
+
+    private static byte[] ascii( String s ) {
+        return s.getBytes( StandardCharsets.US_ASCII );
+    }
+}
@@ -0,0 +1,128 @@
+package dendron.machine;
+
+import dendron.io.MemorySink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Run many compiled programs at the same time, each on its own
+ * {@link Machine} with its own captured output.
+ *
+ * Any Executor may be used: a work-stealing pool (the default is the
+ * common ForkJoinPool), a fixed thread pool, or, on a JDK that has
+ * them, a virtual-thread-per-task executor.
+ *
+ * Each Machine links a private copy of its program, so the same
+ * instruction list may appear in a batch any number of times.
+ *
+ * @author Nicholas Pembroke
+ */
+public class BatchExecutor {
+
+    /**
+     * The outcome of running one program of a batch.
+     */
+    public static class Result {
+
+        private final String output;
+        private final Map< String, Integer > symbolTable;
+        private final int stackSize;
+        private final Throwable failure;
+
+        private Result( String output, Map< String, Integer > symbolTable,
+                        int stackSize, Throwable failure ) {
+            this.output = output;
+            this.symbolTable = symbolTable;
+            this.stackSize = stackSize;
+            this.failure = failure;
+        }
+
+        /**
+         * @return everything the program's Machine printed, including
+         *         the banner, PRINT output and symbol table dump
+         */
+        public String output() {
+            return output;
+        }
+
+        /**
+         * @return the program's variables and their final values
+         */
+        public Map< String, Integer > symbolTable() {
+            return symbolTable;
+        }
+
+        /**
+         * @return how many values were left on the stack
+         */
+        public int stackSize() {
+            return stackSize;
+        }
+
+        /**
+         * @return the exception that stopped the program, or null if
+         *         it ran to completion
+         */
+        public Throwable failure() {
+            return failure;
+        }
+    }
+
+    private final Executor executor;
+
+    /**
+     * Create a batch executor that uses the common ForkJoinPool.
+     */
+    public BatchExecutor() {
+        this( ForkJoinPool.commonPool() );
+    }
+
+    /**
+     * Create a batch executor that runs programs on the given Executor.
+     * @param executor where the programs are run
+     */
+    public BatchExecutor( Executor executor ) {
+        this.executor = executor;
+    }
+
+    /**
+     * Run one program on a fresh Machine whose output is captured.
+     * @param program the instructions to run
+     * @return the program's result
+     */
+    private static Result runOne( List< Machine.Instruction > program ) {
+        MemorySink out = new MemorySink();
+        Machine machine = new Machine( out );
+        Throwable failure = null;
+        try {
+            machine.executeProgram( program );
+        }
+        catch ( RuntimeException e ) {
+            failure = e;
+        }
+        return new Result( out.toString(),
+                           machine.symbolTable(), machine.stackSize(), failure );
+    }
+
+    /**
+     * Run all the programs concurrently and wait for them to finish.
+     * @param programs the compiled programs
+     * @return one Result per program, in the same order as the programs
+     */
+    public List< Result > executeAll( List< List< Machine.Instruction > > programs ) {
+        List< CompletableFuture< Result > > pending = new ArrayList<>( programs.size() );
+        for ( List< Machine.Instruction > program: programs ) {
+            pending.add( CompletableFuture.supplyAsync( () -> runOne( program ), executor ) );
+        }
+        List< Result > results = new ArrayList<>( pending.size() );
+        for ( CompletableFuture< Result > future: pending ) {
+            results.add( future.join() );
+        }
+        return results;
+    }
+}
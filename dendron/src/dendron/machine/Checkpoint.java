@@ -0,0 +1,342 @@
+package dendron.machine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A snapshot of a session on disk: a Machine's variables and stack,
+ * the tree interpreter's symbol table, and the index of the
+ * instruction to resume from in the program it was running. All
+ * values are little-endian ints:
+ * <pre>
+ *     magic             'D' 'E' 'N' 'C'
+ *     version           currently 2
+ *     resume index      the first instruction to run after restoring
+ *     slot count        Machine variables, in slot order
+ *     stack depth
+ *     tree count        tree interpreter variables
+ *     program           eight ints of the SHA-256 of the program's code
+ *                       and names, or zeros if it belongs to none
+ *     values            one per slot
+ *     defined           a bit per slot, 32 to an int, lowest bit first
+ *     stack             bottom first
+ *     tree values       one per tree variable
+ *     names             the slot names then the tree names, each a
+ *                       byte length then that many UTF-8 bytes,
+ *                       padded with zeros to a multiple of 4
+ * </pre>
+ * The header gives the length of every int section, so where each
+ * one starts follows from the lengths of those before it. Loading maps
+ * the file and reads only the header and names; restoring a Machine
+ * copies its frame and stack straight out of the mapping in bulk.
+ * A checkpoint is written to a temporary file and renamed into place,
+ * so a crash while writing leaves the previous checkpoint intact.
+ *
+ * DendronTest's streaming sessions save between statements, so they
+ * always resume at the start of the next one. InstructionReader saves
+ * every {@link #INTERVAL_PROPERTY} instructions of a single program,
+ * and resumes from the last of them when it is run again.
+ *
+ * @author Nicholas Pembroke
+ */
+public class Checkpoint {
+
+    /** The first four bytes of every checkpoint file */
+    private static final int MAGIC = 'D' | 'E' << 8 | 'N' << 16 | 'C' << 24;
+
+    /** The format version written by this class */
+    public static final int VERSION = 2;
+
+    /** The conventional file name extension */
+    public static final String EXTENSION = ".denc";
+
+    /** The system property that names the checkpoint file for the drivers */
+    public static final String PROPERTY = "dendron.checkpoint";
+
+    /** The system property that says how many instructions to run between saves */
+    public static final String INTERVAL_PROPERTY = "dendron.checkpointInterval";
+
+    /** How many instructions to run between saves if the property is not set */
+    public static final int DEFAULT_INTERVAL = 1 << 20;
+
+    private static final int DIGEST_BYTES = 32;
+    private static final int HEADER_INTS = 6 + DIGEST_BYTES / Integer.BYTES;
+
+    private final ByteBuffer map;
+    private final byte[] program;
+    private final int resumeAt;
+    private final int stackDepth;
+    private final String[] slotNames;
+    private final String[] treeNames;
+
+    private Checkpoint( ByteBuffer map, byte[] program, int resumeAt, int stackDepth,
+                        String[] slotNames, String[] treeNames ) {
+        this.map = map;
+        this.program = program;
+        this.resumeAt = resumeAt;
+        this.stackDepth = stackDepth;
+        this.slotNames = slotNames;
+        this.treeNames = treeNames;
+    }
+
+    /**
+     * Save a session that runs one program after another, so belongs
+     * to none of them, replacing any checkpoint already in the file.
+     * @param file where to write it
+     * @param machine the Machine whose variables and stack are saved
+     * @param resumeAt the index of the next instruction to run
+     * @param treeTable the tree interpreter's symbol table, or null
+     * @throws IOException if the file cannot be written
+     */
+    public static void write( Path file, Machine machine, int resumeAt,
+                              Map< String, Integer > treeTable ) throws IOException {
+        write( file, machine, null, resumeAt, treeTable );
+    }
+
+    /**
+     * Save a session part way through a program, replacing any
+     * checkpoint already in the file.
+     * @param file where to write it
+     * @param machine the Machine whose variables and stack are saved
+     * @param program the program being run, or null if none
+     * @param resumeAt the index of the next instruction to run
+     * @param treeTable the tree interpreter's symbol table, or null
+     * @throws IOException if the file cannot be written
+     */
+    public static void write( Path file, Machine machine, CodeSegment program, int resumeAt,
+                              Map< String, Integer > treeTable ) throws IOException {
+        String[] slots = machine.slotNames();
+        int depth = machine.stack().size();
+        if ( treeTable == null ) {
+            treeTable = Map.of();
+        }
+        String[] tree = treeTable.keySet().toArray( new String[ 0 ] );
+
+        byte[][] encoded = new byte[ slots.length + tree.length ][];
+        long size = (long) Integer.BYTES *
+                ( HEADER_INTS + slots.length + words( slots.length ) + depth + tree.length );
+        for ( int i = 0; i < encoded.length; ++i ) {
+            String name = i < slots.length ? slots[ i ] : tree[ i - slots.length ];
+            encoded[ i ] = name.getBytes( StandardCharsets.UTF_8 );
+            size += Integer.BYTES + padded( encoded[ i ].length );
+        }
+
+        Path temp = Files.createTempFile( file.toAbsolutePath().getParent(),
+                                          file.getFileName().toString(), ".tmp" );
+        try {
+            try ( FileChannel channel = FileChannel.open( temp, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) ) {
+                MappedByteBuffer buf = channel.map( FileChannel.MapMode.READ_WRITE, 0, size );
+                buf.order( ByteOrder.LITTLE_ENDIAN );
+                buf.putInt( MAGIC );
+                buf.putInt( VERSION );
+                buf.putInt( resumeAt );
+                buf.putInt( slots.length );
+                buf.putInt( depth );
+                buf.putInt( tree.length );
+                buf.put( digest( program ) );
+
+                IntBuffer ints = buf.asIntBuffer();
+                ints.put( machine.frame(), 0, slots.length );
+                boolean[] defined = machine.defined();
+                for ( int word = 0; word < words( slots.length ); ++word ) {
+                    int bits = 0;
+                    for ( int bit = 0; bit < 32 && word * 32 + bit < slots.length; ++bit ) {
+                        if ( defined[ word * 32 + bit ] ) {
+                            bits |= 1 << bit;
+                        }
+                    }
+                    ints.put( bits );
+                }
+                machine.stack().copyTo( ints );
+                for ( String name: tree ) {
+                    ints.put( treeTable.get( name ) );
+                }
+                buf.position( buf.position() + ints.position() * Integer.BYTES );
+
+                for ( byte[] name: encoded ) {
+                    buf.putInt( name.length );
+                    buf.put( name );
+                    buf.position( buf.position() + padded( name.length ) - name.length );
+                }
+                buf.force();
+            }
+            Files.move( temp, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally {
+            Files.deleteIfExists( temp );
+        }
+    }
+
+    /**
+     * Map a checkpoint file.
+     * @param file the checkpoint
+     * @return the checkpoint, ready to restore
+     * @throws IOException if the file cannot be read or is not a
+     *         well-formed checkpoint of a supported version
+     */
+    public static Checkpoint load( Path file ) throws IOException {
+        MappedByteBuffer map;
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+            map = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        map.order( ByteOrder.LITTLE_ENDIAN );
+        try {
+            return decode( map, file );
+        }
+        catch ( RuntimeException e ) {
+            throw new IOException( file + ": corrupt checkpoint", e );
+        }
+    }
+
+    private static Checkpoint decode( ByteBuffer map, Path file ) throws IOException {
+        if ( map.remaining() < HEADER_INTS * Integer.BYTES || map.getInt() != MAGIC ) {
+            throw new IOException( file + ": not a Dendron checkpoint" );
+        }
+        int version = map.getInt();
+        if ( version != VERSION ) {
+            throw new IOException( file + ": unsupported checkpoint version " + version );
+        }
+        int resumeAt = map.getInt();
+        int slotCount = map.getInt();
+        int stackDepth = map.getInt();
+        int treeCount = map.getInt();
+        byte[] program = new byte[ DIGEST_BYTES ];
+        map.get( program );
+        if ( resumeAt < 0 || slotCount < 0 || stackDepth < 0 || treeCount < 0 ) {
+            throw new IOException( file + ": bad checkpoint header" );
+        }
+        long ints = (long) slotCount + words( slotCount ) + stackDepth + treeCount;
+        if ( ints * Integer.BYTES > map.remaining() ) {
+            throw new IOException( file + ": checkpoint is truncated" );
+        }
+        map.position( map.position() + (int) ints * Integer.BYTES );
+        String[] slotNames = names( map, slotCount );
+        String[] treeNames = names( map, treeCount );
+        return new Checkpoint( map.duplicate().order( ByteOrder.LITTLE_ENDIAN )
+                                  .position( HEADER_INTS * Integer.BYTES ),
+                               program, resumeAt, stackDepth, slotNames, treeNames );
+    }
+
+    private static String[] names( ByteBuffer map, int count ) {
+        String[] names = new String[ count ];
+        for ( int i = 0; i < count; ++i ) {
+            int length = map.getInt();
+            byte[] bytes = new byte[ length ];
+            map.get( bytes );
+            map.position( map.position() + padded( length ) - length );
+            names[ i ] = new String( bytes, StandardCharsets.UTF_8 );
+        }
+        return names;
+    }
+
+    /**
+     * @param program a program, or null for none
+     * @return true if this checkpoint was saved while running that
+     *         program, or, given null, if it belongs to no program
+     */
+    public boolean belongsTo( CodeSegment program ) {
+        return Arrays.equals( this.program, digest( program ) );
+    }
+
+    /**
+     * @param program a program, or null
+     * @return the SHA-256 of its code and names, or zeros for null
+     */
+    private static byte[] digest( CodeSegment program ) {
+        if ( program == null ) {
+            return new byte[ DIGEST_BYTES ];
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( e );
+        }
+        ByteBuffer code = ByteBuffer.allocate( program.code().length * Integer.BYTES )
+                                    .order( ByteOrder.LITTLE_ENDIAN );
+        code.asIntBuffer().put( program.code() );
+        digest.update( code );
+        for ( String name: program.names() ) {
+            byte[] bytes = name.getBytes( StandardCharsets.UTF_8 );
+            digest.update( ByteBuffer.allocate( Integer.BYTES ).order( ByteOrder.LITTLE_ENDIAN )
+                                     .putInt( 0, bytes.length ) );
+            digest.update( bytes );
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return the index of the instruction to resume from
+     */
+    public int resumeAt() {
+        return resumeAt;
+    }
+
+    /**
+     * @return how many values were on the Machine's stack
+     */
+    public int stackDepth() {
+        return stackDepth;
+    }
+
+    /**
+     * Put a Machine in the state that was saved, replacing all its
+     * variables and its stack.
+     * @param machine the Machine to restore
+     */
+    public void restore( Machine machine ) {
+        machine.resetSlots( slotNames );
+        IntBuffer ints = map.slice().order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+        ints.get( machine.frame(), 0, slotNames.length );
+        boolean[] defined = machine.defined();
+        for ( int word = 0; word < words( slotNames.length ); ++word ) {
+            int bits = ints.get();
+            for ( int bit = 0; bit < 32 && word * 32 + bit < slotNames.length; ++bit ) {
+                defined[ word * 32 + bit ] = ( bits & 1 << bit ) != 0;
+            }
+        }
+        machine.stack().copyFrom( ints, stackDepth );
+    }
+
+    /**
+     * @return a copy of the tree interpreter's symbol table as saved
+     */
+    public Map< String, Integer > treeSymbolTable() {
+        IntBuffer ints = map.slice().order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+        ints.position( slotNames.length + words( slotNames.length ) + stackDepth );
+        Map< String, Integer > table = new HashMap<>();
+        for ( String name: treeNames ) {
+            table.put( name, ints.get() );
+        }
+        return table;
+    }
+
+    /**
+     * @param bits how many bits
+     * @return how many ints hold them
+     */
+    private static int words( int bits ) {
+        return ( bits + 31 ) >>> 5;
+    }
+
+    private static int padded( int length ) {
+        return ( length + 3 ) & ~3;
+    }
+}
@@ -0,0 +1,187 @@
+package dendron.machine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a JVM class file writer to build the straight-line
+ * classes produced by {@link JitCompiler}: a constant pool, one
+ * implemented interface, and methods with Code attributes. Methods
+ * may not branch, since no StackMapTable is written.
+ *
+ * @author Nicholas Pembroke
+ */
+class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    /** Java 17 class files */
+    private static final int MAJOR_VERSION = 61;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /** The largest code array a method may have */
+    static final int MAX_CODE_LENGTH = 65535;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream( poolBytes );
+    private final Map< String, Integer > poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int iface;
+    private final List< byte[] > methods = new ArrayList<>();
+
+    /**
+     * Start a class.
+     * @param name the internal name of the class, e.g. a/b/C
+     * @param superName the internal name of its superclass
+     * @param interfaceName the internal name of the one interface it
+     *                      implements
+     */
+    ClassFileWriter( String name, String superName, String interfaceName ) {
+        thisClass = classRef( name );
+        superClass = classRef( superName );
+        iface = classRef( interfaceName );
+    }
+
+    private int entry( String key, int tag, byte[] body ) {
+        Integer index = poolIndex.get( key );
+        if ( index == null ) {
+            index = poolCount++;
+            poolIndex.put( key, index );
+            poolBytes.write( tag );
+            poolBytes.write( body, 0, body.length );
+        }
+        return index;
+    }
+
+    private static byte[] u2u2( int a, int b ) {
+        return new byte[] { (byte) ( a >> 8 ), (byte) a, (byte) ( b >> 8 ), (byte) b };
+    }
+
+    int utf8( String s ) {
+        Integer index = poolIndex.get( "U" + s );
+        if ( index == null ) {
+            try {
+                index = poolCount++;
+                poolIndex.put( "U" + s, index );
+                pool.writeByte( CONSTANT_UTF8 );
+                pool.writeUTF( s );
+            }
+            catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+        return index;
+    }
+
+    int classRef( String internalName ) {
+        int name = utf8( internalName );
+        return entry( "C" + internalName, CONSTANT_CLASS,
+                      new byte[] { (byte) ( name >> 8 ), (byte) name } );
+    }
+
+    int string( String s ) {
+        int value = utf8( s );
+        return entry( "S" + s, CONSTANT_STRING,
+                      new byte[] { (byte) ( value >> 8 ), (byte) value } );
+    }
+
+    int integer( int value ) {
+        return entry( "I" + value, CONSTANT_INTEGER, new byte[] {
+                (byte) ( value >> 24 ), (byte) ( value >> 16 ),
+                (byte) ( value >> 8 ), (byte) value } );
+    }
+
+    int methodRef( String owner, String name, String descriptor ) {
+        int cls = classRef( owner );
+        int nat = entry( "N" + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE,
+                         u2u2( utf8( name ), utf8( descriptor ) ) );
+        return entry( "M" + owner + "." + name + ":" + descriptor,
+                      CONSTANT_METHODREF, u2u2( cls, nat ) );
+    }
+
+    /**
+     * Add a method with a Code attribute and no exception handlers.
+     * @param access the access flags
+     * @param name the method name
+     * @param descriptor the method descriptor
+     * @param code the bytecode
+     * @param maxStack the deepest the operand stack gets
+     * @param maxLocals how many local variable slots are used
+     */
+    void method( int access, String name, String descriptor,
+                 byte[] code, int maxStack, int maxLocals ) {
+        if ( code.length > MAX_CODE_LENGTH ) {
+            throw new IllegalArgumentException( "Method " + name + " is too large" );
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        try {
+            out.writeShort( access );
+            out.writeShort( utf8( name ) );
+            out.writeShort( utf8( descriptor ) );
+            out.writeShort( 1 );
+            out.writeShort( utf8( "Code" ) );
+            out.writeInt( 12 + code.length );
+            out.writeShort( maxStack );
+            out.writeShort( maxLocals );
+            out.writeInt( code.length );
+            out.write( code );
+            out.writeShort( 0 );
+            out.writeShort( 0 );
+        }
+        catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        methods.add( bytes.toByteArray() );
+    }
+
+    /**
+     * @return the complete class file
+     */
+    byte[] toByteArray() {
+        if ( poolCount > 0xFFFF ) {
+            throw new IllegalArgumentException( "Constant pool overflow" );
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        try {
+            out.writeInt( 0xCAFEBABE );
+            out.writeShort( 0 );
+            out.writeShort( MAJOR_VERSION );
+            out.writeShort( poolCount );
+            poolBytes.writeTo( out );
+            out.writeShort( ACC_FINAL | ACC_SUPER );
+            out.writeShort( thisClass );
+            out.writeShort( superClass );
+            out.writeShort( 1 );
+            out.writeShort( iface );
+            out.writeShort( 0 );
+            out.writeShort( methods.size() );
+            for ( byte[] method: methods ) {
+                out.write( method );
+            }
+            out.writeShort( 0 );
+        }
+        catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        return bytes.toByteArray();
+    }
+}
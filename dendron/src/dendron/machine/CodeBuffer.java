@@ -0,0 +1,123 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A growable list of instructions that a whole parse tree emits into,
+ * so compiling a tree appends each instruction once instead of copying
+ * every subtree's code into its parent's.
+ *
+ * Instructions with no state are shared: every ADD in every program is
+ * the same object, and so is every PUSHCONST of a small constant.
+ * LOAD and STORE name a variable, so each is a new object.
+ *
+ * @author Nicholas Pembroke
+ */
+public class CodeBuffer {
+
+    /** The shared stateless instructions */
+    public static final Machine.Instruction ADD = new Machine.Add();
+    public static final Machine.Instruction SUBTRACT = new Machine.Subtract();
+    public static final Machine.Instruction MULTIPLY = new Machine.Multiply();
+    public static final Machine.Instruction DIVIDE = new Machine.Divide();
+    public static final Machine.Instruction NEGATE = new Machine.Negate();
+    public static final Machine.Instruction SQUARE_ROOT = new Machine.SquareRoot();
+    public static final Machine.Instruction PRINT = new Machine.Print();
+    public static final Machine.Instruction DUP = new Machine.Dup();
+
+    /** The range of constants whose PUSHCONST instructions are shared */
+    private static final int SMALLEST_SHARED = -128;
+    private static final int LARGEST_SHARED = 1023;
+
+    private static final Machine.PushConst[] PUSHES =
+            new Machine.PushConst[ LARGEST_SHARED - SMALLEST_SHARED + 1 ];
+
+    static {
+        for ( int i = 0; i < PUSHES.length; ++i ) {
+            PUSHES[ i ] = new Machine.PushConst( SMALLEST_SHARED + i );
+        }
+    }
+
+    private ArrayList< Machine.Instruction > code;
+
+    /**
+     * Create an empty buffer.
+     */
+    public CodeBuffer() {
+        this( 16 );
+    }
+
+    /**
+     * @param capacity how many instructions to make room for at first
+     */
+    public CodeBuffer( int capacity ) {
+        code = new ArrayList<>( capacity );
+    }
+
+    /**
+     * @param constant any value
+     * @return a PUSHCONST of the value, shared if the value is small
+     */
+    public static Machine.PushConst pushConstant( int constant ) {
+        if ( constant >= SMALLEST_SHARED && constant <= LARGEST_SHARED ) {
+            return PUSHES[ constant - SMALLEST_SHARED ];
+        }
+        return new Machine.PushConst( constant );
+    }
+
+    /**
+     * Append an instruction.
+     * @param instr the instruction
+     * @return this buffer
+     */
+    public CodeBuffer emit( Machine.Instruction instr ) {
+        code.add( instr );
+        return this;
+    }
+
+    /**
+     * Append a PUSHCONST.
+     * @param constant the value pushed
+     * @return this buffer
+     */
+    public CodeBuffer pushConst( int constant ) {
+        return emit( pushConstant( constant ) );
+    }
+
+    /**
+     * Append a LOAD.
+     * @param name the variable loaded
+     * @return this buffer
+     */
+    public CodeBuffer load( String name ) {
+        return emit( new Machine.Load( name ) );
+    }
+
+    /**
+     * Append a STORE.
+     * @param name the variable stored
+     * @return this buffer
+     */
+    public CodeBuffer store( String name ) {
+        return emit( new Machine.Store( name ) );
+    }
+
+    /**
+     * @return how many instructions have been appended
+     */
+    public int size() {
+        return code.size();
+    }
+
+    /**
+     * Hand over the instructions appended so far, leaving the buffer
+     * empty. The list is not copied.
+     * @return the instructions, in order
+     */
+    public List< Machine.Instruction > toList() {
+        List< Machine.Instruction > result = code;
+        code = new ArrayList<>();
+        return result;
+    }
+}
@@ -0,0 +1,227 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact encoding of a Machine program: a single int array of
+ * opcodes, each followed by its inline operand if it has one, plus a
+ * pool of the variable names the program uses.
+ *
+ * PUSH is followed by its constant. LOAD and STORE are followed by
+ * an index into the name pool. All other opcodes have no operand.
+ *
+ * A segment is not changed once it is made, so what is worked out
+ * from its code, like where each instruction starts, can be kept.
+ *
+ * @author Nicholas Pembroke
+ */
+public class CodeSegment {
+
+    public static final int PUSH = 0;
+    public static final int LOAD = 1;
+    public static final int STORE = 2;
+    public static final int ADD = 3;
+    public static final int SUB = 4;
+    public static final int MUL = 5;
+    public static final int DIV = 6;
+    public static final int NEG = 7;
+    public static final int SQRT = 8;
+    public static final int PRINT = 9;
+    public static final int DUP = 10;
+
+    /** The highest opcode value in use */
+    public static final int MAX_OPCODE = DUP;
+
+    private final int[] code;
+    private final String[] names;
+    private final int instructionCount;
+
+    /** Where each instruction starts, and the code's length, once needed */
+    private volatile int[] offsets;
+
+    /**
+     * Wrap an already-encoded program.
+     * @param code the opcodes and inline operands, exactly filled
+     * @param names the name pool indexed by LOAD and STORE operands
+     * @param instructionCount how many instructions the code holds
+     */
+    public CodeSegment( int[] code, String[] names, int instructionCount ) {
+        this.code = code;
+        this.names = names;
+        this.instructionCount = instructionCount;
+    }
+
+    /**
+     * @return the opcodes and inline operands (not a copy)
+     */
+    public int[] code() {
+        return code;
+    }
+
+    /**
+     * @return the name pool (not a copy)
+     */
+    public String[] names() {
+        return names;
+    }
+
+    /**
+     * @return how many instructions are encoded
+     */
+    public int instructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * Find which instruction a code offset falls in.
+     * @param offset an index into {@link #code()}
+     * @return the index of the instruction, counting from 0
+     */
+    public int instructionAt( int offset ) {
+        int instruction = 0;
+        int pc = 0;
+        while ( true ) {
+            pc += hasOperand( code[ pc ] ) ? 2 : 1;
+            if ( offset < pc ) {
+                return instruction;
+            }
+            ++instruction;
+        }
+    }
+
+    /**
+     * Find where an instruction starts.
+     * @param instruction the index of an instruction, counting from 0,
+     *                    or the instruction count for the end of the code
+     * @return its offset in {@link #code()}
+     * @throws IllegalArgumentException if there is no such instruction
+     */
+    public int offsetOf( int instruction ) {
+        if ( instruction < 0 || instruction > instructionCount ) {
+            throw new IllegalArgumentException( "No instruction " + instruction +
+                                                " in " + instructionCount );
+        }
+        int[] offsets = this.offsets;
+        if ( offsets == null ) {
+            offsets = new int[ instructionCount + 1 ];
+            int pc = 0;
+            for ( int i = 0; i < instructionCount; ++i ) {
+                offsets[ i ] = pc;
+                pc += hasOperand( code[ pc ] ) ? 2 : 1;
+            }
+            offsets[ instructionCount ] = pc;
+            this.offsets = offsets;
+        }
+        return offsets[ instruction ];
+    }
+
+    /**
+     * @param opcode one of this class's opcode constants
+     * @return true if the opcode is followed by an operand
+     */
+    public static boolean hasOperand( int opcode ) {
+        return opcode == PUSH || opcode == LOAD || opcode == STORE;
+    }
+
+    /**
+     * Encode a list of instructions.
+     * @param program the instructions, in order
+     * @return the equivalent code segment
+     * @throws IllegalArgumentException if the program contains an
+     *         instruction that has no encoding
+     */
+    public static CodeSegment fromInstructions( List< Machine.Instruction > program ) {
+        program = SuperinstructionRewriter.expand( program );
+        int[] code = new int[ program.size() * 2 ];
+        int pc = 0;
+        Map< String, Integer > pool = new HashMap<>();
+        List< String > names = new ArrayList<>();
+        for ( Machine.Instruction instr: program ) {
+            if ( instr instanceof Machine.PushConst ) {
+                code[ pc++ ] = PUSH;
+                code[ pc++ ] = ( (Machine.PushConst) instr ).constant;
+            }
+            else if ( instr instanceof Machine.Load ) {
+                code[ pc++ ] = LOAD;
+                code[ pc++ ] = poolIndex( ( (Machine.Load) instr ).varname, pool, names );
+            }
+            else if ( instr instanceof Machine.Store ) {
+                code[ pc++ ] = STORE;
+                code[ pc++ ] = poolIndex( ( (Machine.Store) instr ).name, pool, names );
+            }
+            else if ( instr instanceof Machine.Add ) {
+                code[ pc++ ] = ADD;
+            }
+            else if ( instr instanceof Machine.Subtract ) {
+                code[ pc++ ] = SUB;
+            }
+            else if ( instr instanceof Machine.Multiply ) {
+                code[ pc++ ] = MUL;
+            }
+            else if ( instr instanceof Machine.Divide ) {
+                code[ pc++ ] = DIV;
+            }
+            else if ( instr instanceof Machine.Negate ) {
+                code[ pc++ ] = NEG;
+            }
+            else if ( instr instanceof Machine.SquareRoot ) {
+                code[ pc++ ] = SQRT;
+            }
+            else if ( instr instanceof Machine.Print ) {
+                code[ pc++ ] = PRINT;
+            }
+            else if ( instr instanceof Machine.Dup ) {
+                code[ pc++ ] = DUP;
+            }
+            else {
+                throw new IllegalArgumentException( "No encoding for " + instr );
+            }
+        }
+        return new CodeSegment( Arrays.copyOf( code, pc ),
+                                names.toArray( new String[ 0 ] ),
+                                program.size() );
+    }
+
+    private static int poolIndex( String name, Map< String, Integer > pool,
+                                  List< String > names ) {
+        Integer index = pool.get( name );
+        if ( index == null ) {
+            index = names.size();
+            pool.put( name, index );
+            names.add( name );
+        }
+        return index;
+    }
+
+    /**
+     * Decode this segment back into a list of instructions.
+     * @return a new list of instructions, sharing those without state
+     */
+    public List< Machine.Instruction > toInstructions() {
+        List< Machine.Instruction > program = new ArrayList<>( instructionCount );
+        int pc = 0;
+        while ( pc < code.length ) {
+            switch ( code[ pc++ ] ) {
+                case PUSH: program.add( CodeBuffer.pushConstant( code[ pc++ ] ) ); break;
+                case LOAD: program.add( new Machine.Load( names[ code[ pc++ ] ] ) ); break;
+                case STORE: program.add( new Machine.Store( names[ code[ pc++ ] ] ) ); break;
+                case ADD: program.add( CodeBuffer.ADD ); break;
+                case SUB: program.add( CodeBuffer.SUBTRACT ); break;
+                case MUL: program.add( CodeBuffer.MULTIPLY ); break;
+                case DIV: program.add( CodeBuffer.DIVIDE ); break;
+                case NEG: program.add( CodeBuffer.NEGATE ); break;
+                case SQRT: program.add( CodeBuffer.SQUARE_ROOT ); break;
+                case PRINT: program.add( CodeBuffer.PRINT ); break;
+                case DUP: program.add( CodeBuffer.DUP ); break;
+                default:
+                    throw new IllegalStateException(
+                            "Bad opcode " + code[ pc - 1 ] + " at " + ( pc - 1 ) );
+            }
+        }
+        return program;
+    }
+}
@@ -0,0 +1,468 @@
+package dendron.machine;
+
+import dendron.Errors;
+import dendron.MachineException;
+import dendron.io.MemorySink;
+import dendron.io.OutputSink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run one program over many rows of inputs at once. Each input
+ * variable is given as a column, an int array with one value per row,
+ * and the program runs an instruction at a time over a whole block of
+ * rows: an ADD is one loop adding two columns, not one ADD per row.
+ *
+ * Row r gets exactly what {@link Machine#run(CodeSegment)} gets on a
+ * fresh Machine after {@link Machine#assign(String, int)} has given
+ * each input variable its value from row r: the same PRINT output, the
+ * same final variables and stack size, and the same failure at the
+ * same instruction.
+ *
+ * This works because a program is straight-line code. The stack depth
+ * before each instruction, and which variables have values, are the
+ * same for every row, so a stack underflow or a LOAD of a variable
+ * with no value stops every row at the same instruction, and is found
+ * before anything runs. Only a division by zero depends on the data;
+ * the rows it stops are masked out of later STOREs and PRINTs.
+ *
+ * An executor holds no state between runs, so one may run batches on
+ * several threads at once.
+ *
+ * @author Nicholas Pembroke
+ */
+public class ColumnarExecutor {
+
+    /** How many rows run together when not told otherwise */
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final String[] names;
+    private final int blockSize;
+    private final int count;
+
+    // Indexed by instruction
+    private final int[] ops;
+    private final int[] operands;
+
+    // Indexed by instruction, valid up to and including underflow
+    private final int[] depth;
+    private final int[] prints;
+
+    /** The first instruction that pops an empty stack, or count if none does */
+    private final int underflow;
+
+    private final int maxDepth;
+
+    /**
+     * The outcome of running a program over a batch of rows.
+     */
+    public class Result {
+
+        private final int rows;
+        private final String[] variables;
+        private final boolean[] input;
+        private final int[] firstStore;
+        private final int[][] values;
+        private final int[][] printed;
+        private final int[] stoppedAt;
+
+        private Result( int rows, String[] variables, boolean[] input, int[] firstStore,
+                        int[][] values, int[][] printed, int[] stoppedAt ) {
+            this.rows = rows;
+            this.variables = variables;
+            this.input = input;
+            this.firstStore = firstStore;
+            this.values = values;
+            this.printed = printed;
+            this.stoppedAt = stoppedAt;
+        }
+
+        /**
+         * @return how many rows ran
+         */
+        public int rows() {
+            return rows;
+        }
+
+        /**
+         * @param name a variable
+         * @return the variable's final value in each row (not a copy),
+         *         or null if the program and inputs never mention it;
+         *         rows in which it has no value hold 0
+         */
+        public int[] values( String name ) {
+            for ( int slot = 0; slot < variables.length; ++slot ) {
+                if ( variables[ slot ].equals( name ) ) {
+                    return values[ slot ];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return how many PRINT instructions ran in the rows that ran
+         *         the most of them
+         */
+        public int prints() {
+            return printed.length;
+        }
+
+        /**
+         * @param print which PRINT, counting from 0 in program order
+         * @return the value it printed in each row (not a copy); rows
+         *         that stopped before it hold 0
+         */
+        public int[] printed( int print ) {
+            return printed[ print ];
+        }
+
+        /**
+         * @param row a row
+         * @return how many PRINT instructions ran in the row
+         */
+        public int printCount( int row ) {
+            return prints[ stoppedAt[ row ] ];
+        }
+
+        /**
+         * @param row a row
+         * @return true if the row ran to the end of the program
+         */
+        public boolean completed( int row ) {
+            return stoppedAt[ row ] == count;
+        }
+
+        /**
+         * @param row a row
+         * @return what the row's PRINT instructions would have printed
+         */
+        public String output( int row ) {
+            MemorySink out = new MemorySink();
+            output( row, out );
+            return out.toString();
+        }
+
+        /**
+         * Write what the row's PRINT instructions would have printed.
+         * @param row a row
+         * @param out where it goes
+         */
+        public void output( int row, OutputSink out ) {
+            int n = printCount( row );
+            for ( int print = 0; print < n; ++print ) {
+                out.print( "*** " );
+                out.println( printed[ print ][ row ] );
+            }
+        }
+
+        /**
+         * @param row a row
+         * @return what stopped the row, as Machine would have thrown
+         *         it, or null if the row ran to the end
+         */
+        public MachineException failure( int row ) {
+            int at = stoppedAt[ row ];
+            if ( at == count ) {
+                return null;
+            }
+            MachineException error = at == underflow
+                    ? new MachineException( Errors.Type.STACK_UNDERFLOW, null )
+                    : ops[ at ] == CodeSegment.LOAD
+                    ? new MachineException( Errors.Type.UNINITIALIZED, names[ operands[ at ] ] )
+                    : new MachineException( Errors.Type.DIVIDE_BY_ZERO, null );
+            error.at( at );
+            return error;
+        }
+
+        /**
+         * @param row a row
+         * @return how many values the row left on the stack
+         */
+        public int stackSize( int row ) {
+            int at = stoppedAt[ row ];
+            if ( at == count ) {
+                return depth[ count ];
+            }
+            if ( at == underflow ) {
+                return 0;
+            }
+            // A failed LOAD pops nothing; a failed DIVIDE pops both operands.
+            return ops[ at ] == CodeSegment.LOAD ? depth[ at ] : depth[ at ] - 2;
+        }
+
+        /**
+         * @param row a row
+         * @return the row's variables that have values, leaving out
+         *         compiler temporaries, as in {@link Machine#symbolTable()}
+         */
+        public Map< String, Integer > symbolTable( int row ) {
+            Map< String, Integer > table = new HashMap<>();
+            for ( int slot = 0; slot < variables.length; ++slot ) {
+                if ( ( input[ slot ] || firstStore[ slot ] < stoppedAt[ row ] ) &&
+                     !variables[ slot ].startsWith( Errors.TEMP_PREFIX ) ) {
+                    table.put( variables[ slot ], values[ slot ][ row ] );
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Prepare to run a program over rows of inputs.
+     * @param segment the program
+     */
+    public ColumnarExecutor( CodeSegment segment ) {
+        this( segment, DEFAULT_BLOCK_SIZE );
+    }
+
+    /**
+     * Prepare to run a program over rows of inputs.
+     * @param segment the program
+     * @param blockSize how many rows run together
+     */
+    public ColumnarExecutor( CodeSegment segment, int blockSize ) {
+        if ( blockSize <= 0 ) {
+            throw new IllegalArgumentException( "block size " + blockSize );
+        }
+        this.names = segment.names();
+        this.blockSize = blockSize;
+        this.count = segment.instructionCount();
+        this.ops = new int[ count ];
+        this.operands = new int[ count ];
+        int[] code = segment.code();
+        int pc = 0;
+        for ( int i = 0; i < count; ++i ) {
+            ops[ i ] = code[ pc++ ];
+            if ( CodeSegment.hasOperand( ops[ i ] ) ) {
+                operands[ i ] = code[ pc++ ];
+            }
+        }
+
+        this.depth = new int[ count + 1 ];
+        this.prints = new int[ count + 1 ];
+        int d = 0;
+        int p = 0;
+        int max = 0;
+        int i = 0;
+        for ( ; i < count; ++i ) {
+            depth[ i ] = d;
+            prints[ i ] = p;
+            if ( d < pops( ops[ i ] ) ) {
+                break;
+            }
+            d += pushes( ops[ i ] ) - pops( ops[ i ] );
+            max = Math.max( max, d );
+            if ( ops[ i ] == CodeSegment.PRINT ) {
+                ++p;
+            }
+        }
+        depth[ i ] = d;
+        prints[ i ] = p;
+        this.underflow = i;
+        this.maxDepth = max;
+    }
+
+    /**
+     * @param op an opcode
+     * @return how many values the instruction takes off the stack
+     */
+    private static int pops( int op ) {
+        switch ( op ) {
+            case CodeSegment.PUSH:
+            case CodeSegment.LOAD:
+                return 0;
+            case CodeSegment.ADD:
+            case CodeSegment.SUB:
+            case CodeSegment.MUL:
+            case CodeSegment.DIV:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @param op an opcode
+     * @return how many values the instruction puts on the stack
+     */
+    private static int pushes( int op ) {
+        switch ( op ) {
+            case CodeSegment.STORE:
+            case CodeSegment.PRINT:
+                return 0;
+            case CodeSegment.DUP:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Run the program over every row.
+     * @param inputs a column of values for each input variable, each
+     *               at least rows long; the columns are not changed
+     * @param rows how many rows there are
+     * @return the outcome for every row
+     * @throws IllegalArgumentException if a column is too short
+     */
+    public Result execute( Map< String, int[] > inputs, int rows ) {
+        List< String > variables = new ArrayList<>( Arrays.asList( names ) );
+        for ( String name: inputs.keySet() ) {
+            if ( !variables.contains( name ) ) {
+                variables.add( name );
+            }
+        }
+        int[][] values = new int[ variables.size() ][];
+        boolean[] input = new boolean[ variables.size() ];
+        for ( int slot = 0; slot < values.length; ++slot ) {
+            int[] column = inputs.get( variables.get( slot ) );
+            if ( column == null ) {
+                values[ slot ] = new int[ rows ];
+                continue;
+            }
+            if ( column.length < rows ) {
+                throw new IllegalArgumentException( "Column " + variables.get( slot ) +
+                        " has " + column.length + " values, not " + rows );
+            }
+            values[ slot ] = Arrays.copyOf( column, rows );
+            input[ slot ] = true;
+        }
+
+        // Every row stops at the first LOAD of a variable that is
+        // neither an input nor stored before it, if it gets that far.
+        int[] firstStore = new int[ values.length ];
+        Arrays.fill( firstStore, Integer.MAX_VALUE );
+        int end = underflow;
+        for ( int i = 0; i < underflow; ++i ) {
+            if ( ops[ i ] == CodeSegment.LOAD ) {
+                int slot = operands[ i ];
+                if ( !input[ slot ] && firstStore[ slot ] > i ) {
+                    end = i;
+                    break;
+                }
+            }
+            else if ( ops[ i ] == CodeSegment.STORE ) {
+                firstStore[ operands[ i ] ] = Math.min( firstStore[ operands[ i ] ], i );
+            }
+        }
+
+        int[][] printed = new int[ prints[ end ] ][ rows ];
+        int[] stoppedAt = new int[ rows ];
+        Arrays.fill( stoppedAt, end );
+        int[][] stack = new int[ maxDepth ][ Math.min( blockSize, rows ) ];
+        boolean[] alive = new boolean[ Math.min( blockSize, rows ) ];
+        for ( int base = 0; base < rows; base += blockSize ) {
+            runBlock( base, Math.min( blockSize, rows - base ), end,
+                      stack, alive, values, printed, stoppedAt );
+        }
+        return new Result( rows, variables.toArray( new String[ 0 ] ), input, firstStore,
+                           values, printed, stoppedAt );
+    }
+
+    /**
+     * Run instructions 0 to end - 1 over one block of rows.
+     */
+    private void runBlock( int base, int length, int end, int[][] stack, boolean[] alive,
+                           int[][] values, int[][] printed, int[] stoppedAt ) {
+        Arrays.fill( alive, 0, length, true );
+        int dead = 0;
+        int sp = 0;
+        int[] a, b;
+        for ( int i = 0; i < end; ++i ) {
+            switch ( ops[ i ] ) {
+                case CodeSegment.PUSH:
+                    Arrays.fill( stack[ sp++ ], 0, length, operands[ i ] );
+                    break;
+                case CodeSegment.LOAD:
+                    System.arraycopy( values[ operands[ i ] ], base, stack[ sp++ ], 0, length );
+                    break;
+                case CodeSegment.STORE:
+                    a = stack[ --sp ];
+                    b = values[ operands[ i ] ];
+                    if ( dead == 0 ) {
+                        System.arraycopy( a, 0, b, base, length );
+                    }
+                    else {
+                        for ( int r = 0; r < length; ++r ) {
+                            if ( alive[ r ] ) {
+                                b[ base + r ] = a[ r ];
+                            }
+                        }
+                    }
+                    break;
+                case CodeSegment.ADD:
+                    b = stack[ --sp ];
+                    a = stack[ sp - 1 ];
+                    for ( int r = 0; r < length; ++r ) {
+                        a[ r ] += b[ r ];
+                    }
+                    break;
+                case CodeSegment.SUB:
+                    b = stack[ --sp ];
+                    a = stack[ sp - 1 ];
+                    for ( int r = 0; r < length; ++r ) {
+                        a[ r ] -= b[ r ];
+                    }
+                    break;
+                case CodeSegment.MUL:
+                    b = stack[ --sp ];
+                    a = stack[ sp - 1 ];
+                    for ( int r = 0; r < length; ++r ) {
+                        a[ r ] *= b[ r ];
+                    }
+                    break;
+                case CodeSegment.DIV:
+                    b = stack[ --sp ];
+                    a = stack[ sp - 1 ];
+                    for ( int r = 0; r < length; ++r ) {
+                        if ( b[ r ] != 0 ) {
+                            a[ r ] /= b[ r ];
+                        }
+                        else {
+                            a[ r ] = 0;
+                            if ( alive[ r ] ) {
+                                alive[ r ] = false;
+                                stoppedAt[ base + r ] = i;
+                                ++dead;
+                            }
+                        }
+                    }
+                    break;
+                case CodeSegment.NEG:
+                    a = stack[ sp - 1 ];
+                    for ( int r = 0; r < length; ++r ) {
+                        a[ r ] = -a[ r ];
+                    }
+                    break;
+                case CodeSegment.SQRT:
+                    a = stack[ sp - 1 ];
+                    for ( int r = 0; r < length; ++r ) {
+                        a[ r ] = (int) Math.round( Math.sqrt( a[ r ] ) );
+                    }
+                    break;
+                case CodeSegment.PRINT:
+                    a = stack[ --sp ];
+                    b = printed[ prints[ i ] ];
+                    System.arraycopy( a, 0, b, base, length );
+                    if ( dead != 0 ) {
+                        for ( int r = 0; r < length; ++r ) {
+                            if ( !alive[ r ] ) {
+                                b[ base + r ] = 0;
+                            }
+                        }
+                    }
+                    break;
+                case CodeSegment.DUP:
+                    System.arraycopy( stack[ sp - 1 ], 0, stack[ sp ], 0, length );
+                    ++sp;
+                    break;
+                default:
+                    throw new IllegalStateException( "Bad opcode " + ops[ i ] + " at " + i );
+            }
+        }
+    }
+}
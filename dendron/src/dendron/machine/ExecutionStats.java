@@ -0,0 +1,226 @@
+package dendron.machine;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Statistics gathered while a Machine runs, for finding out where the
+ * time goes in a slow run:
+ * <ul>
+ *     <li>how many instructions of each class ran, and the total
+ *     nanoseconds spent in them</li>
+ *     <li>the deepest the operand stack got, counting what a
+ *     superinstruction would have pushed as the instructions it
+ *     replaces</li>
+ *     <li>how many variables had values at the end</li>
+ *     <li>how many times each variable was loaded and stored</li>
+ * </ul>
+ * Statistics are only gathered by a Machine that has been given this
+ * object with {@link Machine#setStats(ExecutionStats)}; a Machine
+ * without one checks once per run and does nothing more. They add up
+ * over every run until {@link #reset()}.
+ *
+ * Timing each instruction costs much more than the instruction
+ * itself, so the nanosecond figures are best read relative to each
+ * other.
+ *
+ * @author Nicholas Pembroke
+ */
+public class ExecutionStats {
+
+    /** count and nanoseconds of each instruction class, in order first run */
+    private final Map< Class< ? >, long[] > perClass = new LinkedHashMap<>();
+    private final Map< String, long[] > perVariable = new TreeMap<>();
+    private int peakStackDepth = 0;
+    private int symbolTableSize = 0;
+
+    /**
+     * Count one executed instruction.
+     * @param instr the instruction
+     * @param nanos how long it took
+     * @param depth the stack depth after it
+     */
+    void record( Machine.Instruction instr, long nanos, int depth ) {
+        long[] entry = perClass.get( instr.getClass() );
+        if ( entry == null ) {
+            entry = new long[ 2 ];
+            perClass.put( instr.getClass(), entry );
+        }
+        entry[ 0 ] += 1;
+        entry[ 1 ] += nanos;
+        if ( depth > peakStackDepth ) {
+            peakStackDepth = depth;
+        }
+    }
+
+    /**
+     * Note a depth the stack reached, such as before a run starts.
+     * @param depth the stack depth
+     */
+    void stackDepth( int depth ) {
+        if ( depth > peakStackDepth ) {
+            peakStackDepth = depth;
+        }
+    }
+
+    /**
+     * Count a LOAD of a variable.
+     * @param name the variable
+     */
+    void load( String name ) {
+        perVariable.computeIfAbsent( name, n -> new long[ 2 ] )[ 0 ] += 1;
+    }
+
+    /**
+     * Count a STORE to a variable.
+     * @param name the variable
+     */
+    void store( String name ) {
+        perVariable.computeIfAbsent( name, n -> new long[ 2 ] )[ 1 ] += 1;
+    }
+
+    /**
+     * Note the symbol table size at the end of a run.
+     * @param size how many variables have values
+     */
+    void symbolTableSize( int size ) {
+        symbolTableSize = size;
+    }
+
+    /**
+     * Forget everything gathered so far.
+     */
+    public void reset() {
+        perClass.clear();
+        perVariable.clear();
+        peakStackDepth = 0;
+        symbolTableSize = 0;
+    }
+
+    /**
+     * @return how many instructions ran in all
+     */
+    public long instructions() {
+        long sum = 0;
+        for ( long[] entry: perClass.values() ) {
+            sum += entry[ 0 ];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the nanoseconds spent in all instructions
+     */
+    public long nanos() {
+        long sum = 0;
+        for ( long[] entry: perClass.values() ) {
+            sum += entry[ 1 ];
+        }
+        return sum;
+    }
+
+    /**
+     * @return how many instructions of each class ran, by simple class name
+     */
+    public Map< String, Long > counts() {
+        return column( 0 );
+    }
+
+    /**
+     * @return the nanoseconds spent in each instruction class, by simple class name
+     */
+    public Map< String, Long > nanosByClass() {
+        return column( 1 );
+    }
+
+    /**
+     * @param instructionClass the simple class name, e.g. "Load"
+     * @return how many instructions of that class ran
+     */
+    public long count( String instructionClass ) {
+        return counts().getOrDefault( instructionClass, 0L );
+    }
+
+    /**
+     * @param instructionClass the simple class name, e.g. "Load"
+     * @return the nanoseconds spent in instructions of that class
+     */
+    public long nanos( String instructionClass ) {
+        return nanosByClass().getOrDefault( instructionClass, 0L );
+    }
+
+    /**
+     * @return the deepest the operand stack got
+     */
+    public int peakStackDepth() {
+        return peakStackDepth;
+    }
+
+    /**
+     * @return how many variables had values at the end of the last run
+     */
+    public int symbolTableSize() {
+        return symbolTableSize;
+    }
+
+    /**
+     * @param name a variable
+     * @return how many times it was loaded
+     */
+    public long loads( String name ) {
+        long[] entry = perVariable.get( name );
+        return entry == null ? 0 : entry[ 0 ];
+    }
+
+    /**
+     * @param name a variable
+     * @return how many times it was stored
+     */
+    public long stores( String name ) {
+        long[] entry = perVariable.get( name );
+        return entry == null ? 0 : entry[ 1 ];
+    }
+
+    /**
+     * @return every variable loaded or stored, in name order
+     */
+    public Set< String > variables() {
+        return Collections.unmodifiableSet( perVariable.keySet() );
+    }
+
+    /**
+     * Describe everything gathered.
+     * @return a multi-line report
+     */
+    public String report() {
+        StringBuilder text = new StringBuilder();
+        text.append( String.format( "Execution statistics: %d instructions, %d ns\n",
+                                    instructions(), nanos() ) );
+        text.append( String.format( "%24s : %d\n", "peak stack depth", peakStackDepth ) );
+        text.append( String.format( "%24s : %d\n", "symbol table size", symbolTableSize ) );
+        text.append( String.format( "%24s   %10s %12s %10s\n", "instruction", "count", "ns", "ns each" ) );
+        for ( Map.Entry< Class< ? >, long[] > entry: perClass.entrySet() ) {
+            long[] counts = entry.getValue();
+            text.append( String.format( "%24s : %10d %12d %10.1f\n",
+                                        entry.getKey().getSimpleName(), counts[ 0 ], counts[ 1 ],
+                                        (double) counts[ 1 ] / counts[ 0 ] ) );
+        }
+        text.append( String.format( "%24s   %10s %12s\n", "variable", "loads", "stores" ) );
+        for ( Map.Entry< String, long[] > entry: perVariable.entrySet() ) {
+            text.append( String.format( "%24s : %10d %12d\n",
+                                        entry.getKey(), entry.getValue()[ 0 ], entry.getValue()[ 1 ] ) );
+        }
+        return text.toString();
+    }
+
+    private Map< String, Long > column( int index ) {
+        Map< String, Long > result = new LinkedHashMap<>();
+        for ( Map.Entry< Class< ? >, long[] > entry: perClass.entrySet() ) {
+            result.put( entry.getKey().getSimpleName(), entry.getValue()[ index ] );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dynamic instruction counts gathered while a Machine runs. For every
+ * instruction executed, the sequence formed by it and the instructions
+ * just before it is counted, for every sequence length from one up to
+ * the profile's longest. Sequences are written as the instruction
+ * class names joined by spaces, e.g. "Load Load Multiply".
+ *
+ * A sequence never spans two calls to {@link Machine#run(List)}.
+ *
+ * @author Nicholas Pembroke
+ */
+public class InstructionProfile {
+
+    /** The longest sequence counted by default */
+    public static final int DEFAULT_LENGTH = 3;
+
+    private final int longest;
+    private final List< Map< String, Long > > counts = new ArrayList<>();
+    private final String[] recent;
+    private int seen = 0;
+
+    /**
+     * Create a profile counting sequences of up to three instructions.
+     */
+    public InstructionProfile() {
+        this( DEFAULT_LENGTH );
+    }
+
+    /**
+     * Create a profile.
+     * @param longest the longest instruction sequence to count
+     */
+    public InstructionProfile( int longest ) {
+        if ( longest < 1 ) {
+            throw new IllegalArgumentException( "Sequence length must be positive" );
+        }
+        this.longest = longest;
+        this.recent = new String[ longest ];
+        for ( int n = 0; n < longest; ++n ) {
+            counts.add( new HashMap<>() );
+        }
+    }
+
+    /**
+     * Forget the instructions before the next one, so that no sequence
+     * joins two separate runs.
+     */
+    void startRun() {
+        seen = 0;
+    }
+
+    /**
+     * Count an instruction that is about to execute.
+     * @param instr the instruction
+     */
+    void record( Machine.Instruction instr ) {
+        String name = instr.getClass().getSimpleName();
+        System.arraycopy( recent, 1, recent, 0, longest - 1 );
+        recent[ longest - 1 ] = name;
+        ++seen;
+        StringBuilder key = new StringBuilder( name );
+        counts.get( 0 ).merge( name, 1L, Long::sum );
+        for ( int n = 2; n <= Math.min( seen, longest ); ++n ) {
+            key.insert( 0, ' ' ).insert( 0, recent[ longest - n ] );
+            counts.get( n - 1 ).merge( key.toString(), 1L, Long::sum );
+        }
+    }
+
+    /**
+     * @return the longest sequence length counted
+     */
+    public int longest() {
+        return longest;
+    }
+
+    /**
+     * @return how many instructions have been executed
+     */
+    public long total() {
+        long sum = 0;
+        for ( long count: counts.get( 0 ).values() ) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /**
+     * @param length a sequence length from 1 to {@link #longest()}
+     * @return how often each sequence of that length was executed
+     */
+    public Map< String, Long > counts( int length ) {
+        return counts.get( length - 1 );
+    }
+
+    /**
+     * @param sequence instruction class names joined by spaces
+     * @return how often the sequence was executed
+     */
+    public long count( String sequence ) {
+        int length = sequence.split( " " ).length;
+        if ( length > longest ) {
+            return 0;
+        }
+        return counts( length ).getOrDefault( sequence, 0L );
+    }
+
+    /**
+     * Describe the most frequent sequences of each length.
+     * @param top how many sequences of each length to show
+     * @return a multi-line report
+     */
+    public String report( int top ) {
+        long total = total();
+        StringBuilder text = new StringBuilder();
+        text.append( "Profile: " ).append( total ).append( " instructions executed\n" );
+        for ( int n = 1; n <= longest; ++n ) {
+            List< Map.Entry< String, Long > > entries = new ArrayList<>( counts( n ).entrySet() );
+            entries.sort( Map.Entry.< String, Long >comparingByValue().reversed()
+                                   .thenComparing( Map.Entry.comparingByKey() ) );
+            for ( Map.Entry< String, Long > entry: entries.subList( 0, Math.min( top, entries.size() ) ) ) {
+                text.append( String.format( "%40s : %8d %5.1f%%\n", entry.getKey(), entry.getValue(),
+                                            100.0 * entry.getValue() / Math.max( total, 1 ) ) );
+            }
+        }
+        return text.toString();
+    }
+}
@@ -1,11 +1,18 @@
 package dendron.machine;
 
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.io.OutputSink;
+import dendron.jfr.AssembleEvent;
 import dendron.machine.Machine;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.*;
-import java.util.function.Function;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * Assemble instructions from a file.
@@ -15,24 +22,6 @@ import java.util.function.Function;
  */
 public class InstructionReader {
 
-    private static Map< String, Function< Scanner, Machine.Instruction> > gen
-            = new HashMap< String, Function< Scanner, Machine.Instruction > >()
-    {{
-        put( "PUSH", in -> { int i = in.nextInt();
-                             return new Machine.PushConst( i ); } );
-        put( "LOAD", in -> { String v = in.next();
-                             return new Machine.Load( v ); } );
-        put( "STORE", in -> { String v = in.next();
-                              return new Machine.Store( v ); } );
-        put( "ADD", in -> new Machine.Add() );
-        put( "SUB", in -> new Machine.Subtract() );
-        put( "MUL", in -> new Machine.Multiply() );
-        put( "DIV", in -> new Machine.Divide() );
-        put( "NEG", in -> new Machine.Negate() );
-        put( "SQRT", in -> new Machine.SquareRoot() );
-        put( "PRINT", in -> new Machine.Print() );
-    }};
-
     /**
      * Read instructions from the named file and translate them
      * to internal form.
@@ -40,19 +29,19 @@ public class InstructionReader {
      * @return a list of Machine.Instruction objects, ready to execute
      */
     public static List< Machine.Instruction > assemble( String assyFile ) {
-        try ( FileInputStream fileStr = new FileInputStream( assyFile ) ) {
-            List< Machine.Instruction > result = new LinkedList<>();
-            Scanner in = new Scanner( fileStr );
-            while ( in.hasNext() ) {
-                String mnemonic = in.next();
-                if ( gen.containsKey( mnemonic ) ) {
-                    result.add( gen.get( mnemonic ).apply( in ) );
-                }
-                else {
-                    System.err.println( "Illegal assembly instr " + mnemonic );
-                }
+        AssembleEvent event = new AssembleEvent();
+        event.begin();
+        try {
+            Path file = Paths.get( assyFile );
+            List< Machine.Instruction > program = Assembler.assemble( file );
+            event.end();
+            if ( event.shouldCommit() ) {
+                event.file = assyFile;
+                event.size = Files.size( file );
+                event.instructions = program.size();
+                event.commit();
             }
-            return result;
+            return program;
         }
         catch( IOException ioe ) {
             System.err.println( "Could not open file " + assyFile );
@@ -61,16 +50,274 @@ public class InstructionReader {
     }
 
     /**
-     * Assemble and execute some Dendron machine code.
-     * @param args the name of the assembly language source file
+     * Assemble and execute some Dendron machine code, or with -o,
+     * assemble it into a binary object file instead of running it.
+     * Files in the binary .denb format are recognized by their
+     * contents and loaded directly. With -O the code is run through
+     * the peephole optimizer first, and its report goes to standard
+     * error. With -J the code is compiled to JVM bytecode before it
+     * runs, falling back to the interpreter if it cannot be compiled.
+     * With -R it is translated to register code and run on that, with
+     * the same fallback.
+     * With -S common sequences are replaced by superinstructions, with
+     * -P the run is profiled, and with -T execution statistics are
+     * gathered; these run the instruction list interpreter and report
+     * to standard error. With both -S and -P, the plain program is
+     * first run without output to profile it, only the sequences that
+     * profile finds common are replaced, and the dispatches saved are
+     * reported.
+     * If the dendron.checkpoint system property names a file, the
+     * encoded code is run a stretch at a time and the Machine is saved
+     * there after each one; a run that is cut short resumes from the
+     * last save when started again, and a run that ends, or fails,
+     * deletes it.
+     * A program that fails is reported on standard error and the JVM
+     * exits with {@link Errors#DENDRON_ABORT}.
+     * @param args [-O] [-J | -R | [-S] [-P] [-T]] [-o object-file] followed
+     *             by the name of the assembly language source or object file
      */
     public static void main( String[] args ) {
-        if ( args.length != 1 ) {
+        try {
+            run( args );
+        }
+        catch ( DendronException e ) {
+            Errors.report( e );
+            System.exit( Errors.DENDRON_ABORT );
+        }
+    }
+
+    /**
+     * Do what {@link #main(String[])} describes.
+     * @param args as for main
+     * @throws DendronException if the program fails
+     */
+    private static void run( String[] args ) {
+        boolean optimize = false;
+        boolean jit = false;
+        boolean registers = false;
+        boolean fuse = false;
+        boolean profile = false;
+        boolean statistics = false;
+        String objectFile = null;
+        String input = null;
+        boolean usage = false;
+        for ( int i = 0; i < args.length; ++i ) {
+            if ( args[ i ].equals( "-O" ) ) {
+                optimize = true;
+            }
+            else if ( args[ i ].equals( "-J" ) ) {
+                jit = true;
+            }
+            else if ( args[ i ].equals( "-R" ) ) {
+                registers = true;
+            }
+            else if ( args[ i ].equals( "-S" ) ) {
+                fuse = true;
+            }
+            else if ( args[ i ].equals( "-P" ) ) {
+                profile = true;
+            }
+            else if ( args[ i ].equals( "-T" ) ) {
+                statistics = true;
+            }
+            else if ( args[ i ].equals( "-o" ) && i + 1 < args.length ) {
+                objectFile = args[ ++i ];
+            }
+            else if ( input == null ) {
+                input = args[ i ];
+            }
+            else {
+                usage = true;
+            }
+        }
+        boolean interpretList = fuse || profile || statistics;
+        if ( input == null || usage ||
+             ( jit ? 1 : 0 ) + ( registers ? 1 : 0 ) + ( interpretList ? 1 : 0 ) > 1 ) {
             System.err.println(
-                    "Usage: java InstructionReader assembly-code-file" );
+                    "Usage: java InstructionReader [-O] [-J | -R | [-S] [-P] [-T]] " +
+                    "[-o object-file] " +
+                    "assembly-code-file" );
             System.exit( 1 );
         }
-        List< Machine.Instruction > code = assemble( args[ 0 ] );
-        Machine.execute( code );
+        CodeSegment segment;
+        try {
+            Path file = Paths.get( input );
+            if ( ObjectFile.isObjectFile( file ) ) {
+                segment = ObjectFile.load( file );
+            }
+            else {
+                segment = CodeSegment.fromInstructions( assemble( input ) );
+            }
+            if ( optimize ) {
+                PeepholeOptimizer optimizer = new PeepholeOptimizer();
+                segment = CodeSegment.fromInstructions(
+                        optimizer.optimize( segment.toInstructions() ) );
+                System.err.print( optimizer.report() );
+            }
+            if ( objectFile != null ) {
+                ObjectFile.write( segment, Paths.get( objectFile ) );
+                return;
+            }
+        }
+        catch( IOException ioe ) {
+            System.err.println( ioe.getMessage() );
+            System.exit( 1 );
+            return;
+        }
+        if ( interpretList ) {
+            List< Machine.Instruction > program = segment.toInstructions();
+            InstructionProfile counts = profile ? new InstructionProfile() : null;
+            long plainDispatches = 0;
+            if ( fuse ) {
+                SuperinstructionRewriter rewriter;
+                if ( counts != null ) {
+                    plainDispatches = profile( program, counts );
+                    System.err.print( counts.report( 10 ) );
+                    rewriter = new SuperinstructionRewriter( counts,
+                            SuperinstructionRewriter.DEFAULT_MIN_SHARE );
+                    // Count the fused run's dispatches to compare.
+                    counts = new InstructionProfile( 1 );
+                }
+                else {
+                    rewriter = new SuperinstructionRewriter();
+                }
+                program = rewriter.rewrite( program );
+                System.err.print( rewriter.report() );
+            }
+            Machine machine = new Machine();
+            ExecutionStats stats = statistics ? new ExecutionStats() : null;
+            machine.setProfile( counts );
+            machine.setStats( stats );
+            machine.executeProgram( program );
+            if ( counts != null && fuse ) {
+                long fused = counts.total();
+                System.err.printf( "Dispatches: %d plain, %d with superinstructions" +
+                                   " (%.1f%% fewer)%n", plainDispatches, fused,
+                                   100.0 * ( plainDispatches - fused ) /
+                                   Math.max( plainDispatches, 1 ) );
+            }
+            else if ( counts != null ) {
+                System.err.print( counts.report( 10 ) );
+            }
+            if ( stats != null ) {
+                System.err.print( stats.report() );
+            }
+            return;
+        }
+        if ( registers ) {
+            try {
+                Machine.execute( RegisterCompiler.compile( segment.toInstructions() ) );
+                return;
+            }
+            catch( IllegalArgumentException iae ) {
+                System.err.println( "Not compiled: " + iae.getMessage() );
+            }
+        }
+        if ( jit ) {
+            try {
+                Machine.execute( JitCompiler.compile( segment.toInstructions() ) );
+                return;
+            }
+            catch( IllegalArgumentException iae ) {
+                System.err.println( "Not compiled: " + iae.getMessage() );
+            }
+        }
+        String checkpoint = System.getProperty( Checkpoint.PROPERTY );
+        if ( checkpoint != null && !checkpoint.isEmpty() ) {
+            runCheckpointed( segment, Paths.get( checkpoint ) );
+            return;
+        }
+        Machine.execute( segment );
+    }
+
+    /**
+     * Run a program once to profile it, discarding its output. A run
+     * that fails is profiled up to the failure, which the real run
+     * will report.
+     * @param program the instructions
+     * @param counts where to count them
+     * @return how many instructions were dispatched
+     */
+    private static long profile( List< Machine.Instruction > program,
+                                 InstructionProfile counts ) {
+        Machine machine = new Machine( new PrintStream( OutputStream.nullOutputStream() ) );
+        machine.setProfile( counts );
+        try {
+            machine.run( program );
+        }
+        catch ( DendronException e ) {
+            // Reported by the run that follows.
+        }
+        return counts.total();
+    }
+
+    /**
+     * Run encoded code as {@link Machine#execute(CodeSegment)} does,
+     * saving a checkpoint every {@link Checkpoint#INTERVAL_PROPERTY}
+     * instructions. If the file already holds one, the Machine is
+     * restored from it and the run resumes where it was saved. The
+     * checkpoint holds the Machine's state but not what it has
+     * printed, so output printed after the last save by a run that
+     * was stopped is printed again when it resumes.
+     * @param segment the code
+     * @param file where to keep the checkpoint
+     * @throws DendronException if the program fails
+     */
+    private static void runCheckpointed( CodeSegment segment, Path file ) {
+        Machine machine = new Machine();
+        int from = 0;
+        boolean restored = false;
+        if ( Files.exists( file ) ) {
+            try {
+                Checkpoint saved = Checkpoint.load( file );
+                if ( !saved.belongsTo( segment ) ) {
+                    throw new IOException( file + ": saved by a different program" );
+                }
+                if ( saved.resumeAt() > segment.instructionCount() ) {
+                    throw new IOException( file + ": saved past the end of this program" );
+                }
+                saved.restore( machine );
+                from = saved.resumeAt();
+                restored = true;
+            }
+            catch ( IOException ioe ) {
+                System.err.println( "Checkpoint not restored: " + ioe.getMessage() );
+            }
+        }
+        if ( !restored ) {
+            OutputSink.standardOutput().println( "Executing compiled code..." );
+        }
+        int interval = Math.max( 1, Integer.getInteger( Checkpoint.INTERVAL_PROPERTY,
+                                                        Checkpoint.DEFAULT_INTERVAL ) );
+        int count = segment.instructionCount();
+        try {
+            while ( from < count ) {
+                int to = (int) Math.min( (long) from + interval, count );
+                machine.run( segment, from, to );
+                from = to;
+                try {
+                    Checkpoint.write( file, machine, segment, from, null );
+                }
+                catch ( IOException ioe ) {
+                    System.err.println( "Checkpoint not saved: " + ioe.getMessage() );
+                }
+            }
+        }
+        catch ( DendronException e ) {
+            // Running again would only fail the same way.
+            deleteCheckpoint( file );
+            throw e;
+        }
+        machine.report();
+        deleteCheckpoint( file );
+    }
+
+    private static void deleteCheckpoint( Path file ) {
+        try {
+            Files.deleteIfExists( file );
+        }
+        catch ( IOException ioe ) {
+            System.err.println( "Checkpoint not deleted: " + ioe.getMessage() );
+        }
     }
 }
@@ -0,0 +1,296 @@
+package dendron.machine;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compile a Machine program to a JVM class, loaded as a hidden class.
+ *
+ * Each Dendron variable becomes a local variable of the generated
+ * method and each Machine stack operation becomes the corresponding
+ * JVM stack operation, so the value stack disappears once HotSpot
+ * compiles the method. Only at the end are the variables and any
+ * values left on the stack copied into the Machine, so that the
+ * report and symbol table dump match the interpreter's.
+ *
+ * A compiled program always starts from a pristine Machine: a LOAD
+ * of a variable that no earlier STORE in the program assigned is
+ * reported as uninitialized.
+ *
+ * @author Nicholas Pembroke
+ */
+public class JitCompiler {
+
+    /**
+     * A Dendron program compiled to JVM bytecode.
+     */
+    public interface CompiledProgram {
+
+        /**
+         * Run the program, leaving its variables and any values
+         * left on its stack in the given Machine.
+         * @param machine the Machine that receives output and state
+         */
+        void run( Machine machine );
+    }
+
+    private static final String MACHINE = "dendron/machine/Machine";
+    private static final String PROGRAM = "dendron/machine/JitCompiler$CompiledProgram";
+    private static final String CLASS_NAME = "dendron/machine/JitProgram";
+
+    /** Local slot 0 is this, 1 is the Machine, variables follow */
+    private static final int FIRST_VARIABLE = 2;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ISTORE = 0x36;
+    private static final int DUP = 0x59;
+    private static final int SWAP = 0x5f;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IDIV = 0x6c;
+    private static final int INEG = 0x74;
+    private static final int I2D = 0x87;
+    private static final int L2I = 0x88;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int WIDE = 0xc4;
+
+    /** Do not instantiate this class. */
+    private JitCompiler() {}
+
+    /**
+     * Compile a program to a JVM class and load it.
+     * @param program the instructions to compile
+     * @return the loaded program
+     * @throws IllegalArgumentException if the program cannot be
+     *         compiled, for example because it would pop an empty
+     *         stack or is too large for one JVM method; such programs
+     *         should be run by the interpreter instead
+     */
+    public static CompiledProgram compile( List< Machine.Instruction > program ) {
+        byte[] classFile = generate( program );
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass( classFile, true );
+            return (CompiledProgram) lookup.lookupClass()
+                                           .getDeclaredConstructor()
+                                           .newInstance();
+        }
+        catch ( ReflectiveOperationException | LinkageError e ) {
+            throw new IllegalArgumentException( "Could not load compiled program", e );
+        }
+    }
+
+    /**
+     * Generate the class file for a program.
+     * @param program the instructions to compile
+     * @return the class file bytes
+     */
+    static byte[] generate( List< Machine.Instruction > program ) {
+        program = SuperinstructionRewriter.expand( program );
+        ClassFileWriter cls = new ClassFileWriter( CLASS_NAME, "java/lang/Object", PROGRAM );
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+        // variable name -> local slot, in order of first appearance
+        Map< String, Integer > locals = new LinkedHashMap<>();
+        Set< String > assigned = new LinkedHashSet<>();
+        int depth = 0;
+        int maxDepth = 0;
+        int pc = 0;
+        for ( Machine.Instruction instr: program ) {
+            if ( instr instanceof Machine.PushConst ) {
+                pushInt( cls, code, ( (Machine.PushConst) instr ).constant );
+                depth += 1;
+            }
+            else if ( instr instanceof Machine.Load ) {
+                String name = ( (Machine.Load) instr ).varname;
+                int local = local( locals, name );
+                if ( assigned.contains( name ) ) {
+                    localOp( code, ILOAD, local );
+                }
+                else {
+                    code.write( ALOAD_1 );
+                    ldc( code, cls.string( name ) );
+                    invoke( code, INVOKEVIRTUAL,
+                            cls.methodRef( MACHINE, "jitUninitialized", "(Ljava/lang/String;)I" ) );
+                    maxDepth = Math.max( maxDepth, depth + 2 );
+                }
+                depth += 1;
+            }
+            else if ( instr instanceof Machine.Store ) {
+                depth = need( depth, 1, pc, instr ) - 1;
+                String name = ( (Machine.Store) instr ).name;
+                localOp( code, ISTORE, local( locals, name ) );
+                assigned.add( name );
+            }
+            else if ( instr instanceof Machine.Add ) {
+                depth = need( depth, 2, pc, instr ) - 1;
+                code.write( IADD );
+            }
+            else if ( instr instanceof Machine.Subtract ) {
+                depth = need( depth, 2, pc, instr ) - 1;
+                code.write( ISUB );
+            }
+            else if ( instr instanceof Machine.Multiply ) {
+                depth = need( depth, 2, pc, instr ) - 1;
+                code.write( IMUL );
+            }
+            else if ( instr instanceof Machine.Divide ) {
+                depth = need( depth, 2, pc, instr ) - 1;
+                code.write( IDIV );
+            }
+            else if ( instr instanceof Machine.Negate ) {
+                need( depth, 1, pc, instr );
+                code.write( INEG );
+            }
+            else if ( instr instanceof Machine.SquareRoot ) {
+                need( depth, 1, pc, instr );
+                code.write( I2D );
+                invoke( code, INVOKESTATIC, cls.methodRef( "java/lang/Math", "sqrt", "(D)D" ) );
+                invoke( code, INVOKESTATIC, cls.methodRef( "java/lang/Math", "round", "(D)J" ) );
+                code.write( L2I );
+                // a double or long occupies two stack slots
+                maxDepth = Math.max( maxDepth, depth + 1 );
+            }
+            else if ( instr instanceof Machine.Print ) {
+                need( depth, 1, pc, instr );
+                code.write( ALOAD_1 );
+                code.write( SWAP );
+                invoke( code, INVOKEVIRTUAL, cls.methodRef( MACHINE, "jitPrint", "(I)V" ) );
+                maxDepth = Math.max( maxDepth, depth + 1 );
+                depth -= 1;
+            }
+            else if ( instr instanceof Machine.Dup ) {
+                need( depth, 1, pc, instr );
+                code.write( DUP );
+                depth += 1;
+            }
+            else {
+                throw new IllegalArgumentException( "Cannot compile " + instr );
+            }
+            maxDepth = Math.max( maxDepth, depth );
+            ++pc;
+        }
+
+        // Copy what is left on the stack into the Machine, bottom first.
+        int spill = FIRST_VARIABLE + locals.size();
+        for ( int i = depth - 1; i >= 0; --i ) {
+            localOp( code, ISTORE, spill + i );
+        }
+        for ( int i = 0; i < depth; ++i ) {
+            code.write( ALOAD_1 );
+            localOp( code, ILOAD, spill + i );
+            invoke( code, INVOKEVIRTUAL, cls.methodRef( MACHINE, "jitPush", "(I)V" ) );
+        }
+        // Copy the assigned variables, in order of first appearance.
+        for ( Map.Entry< String, Integer > entry: locals.entrySet() ) {
+            if ( assigned.contains( entry.getKey() ) ) {
+                code.write( ALOAD_1 );
+                ldc( code, cls.string( entry.getKey() ) );
+                localOp( code, ILOAD, entry.getValue() );
+                invoke( code, INVOKEVIRTUAL,
+                        cls.methodRef( MACHINE, "jitStore", "(Ljava/lang/String;I)V" ) );
+            }
+        }
+        code.write( RETURN );
+        int maxLocals = spill + depth;
+        if ( maxLocals > 0xFFFF ) {
+            throw new IllegalArgumentException( "Too many variables to compile" );
+        }
+        cls.method( ClassFileWriter.ACC_PUBLIC, "run", "(L" + MACHINE + ";)V",
+                    code.toByteArray(), Math.max( maxDepth, 3 ), maxLocals );
+
+        ByteArrayOutputStream init = new ByteArrayOutputStream();
+        init.write( ALOAD_0 );
+        invoke( init, INVOKESPECIAL, cls.methodRef( "java/lang/Object", "<init>", "()V" ) );
+        init.write( RETURN );
+        cls.method( ClassFileWriter.ACC_PUBLIC, "<init>", "()V", init.toByteArray(), 1, 1 );
+
+        return cls.toByteArray();
+    }
+
+    private static int local( Map< String, Integer > locals, String name ) {
+        Integer local = locals.get( name );
+        if ( local == null ) {
+            local = FIRST_VARIABLE + locals.size();
+            locals.put( name, local );
+        }
+        return local;
+    }
+
+    /**
+     * Check that enough values are on the stack for an instruction.
+     * @return the depth, unchanged
+     */
+    private static int need( int depth, int operands, int pc, Machine.Instruction instr ) {
+        if ( depth < operands ) {
+            throw new IllegalArgumentException(
+                    instr + " at " + pc + " would pop an empty stack" );
+        }
+        return depth;
+    }
+
+    private static void pushInt( ClassFileWriter cls, ByteArrayOutputStream code, int value ) {
+        if ( value >= -1 && value <= 5 ) {
+            code.write( ICONST_0 + value );
+        }
+        else if ( value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ) {
+            code.write( BIPUSH );
+            code.write( value );
+        }
+        else if ( value >= Short.MIN_VALUE && value <= Short.MAX_VALUE ) {
+            code.write( SIPUSH );
+            u2( code, value );
+        }
+        else {
+            ldc( code, cls.integer( value ) );
+        }
+    }
+
+    private static void ldc( ByteArrayOutputStream code, int index ) {
+        if ( index <= 0xFF ) {
+            code.write( LDC );
+            code.write( index );
+        }
+        else {
+            code.write( LDC_W );
+            u2( code, index );
+        }
+    }
+
+    private static void localOp( ByteArrayOutputStream code, int opcode, int local ) {
+        if ( local <= 0xFF ) {
+            code.write( opcode );
+            code.write( local );
+        }
+        else {
+            code.write( WIDE );
+            code.write( opcode );
+            u2( code, local );
+        }
+    }
+
+    private static void invoke( ByteArrayOutputStream code, int opcode, int method ) {
+        code.write( opcode );
+        u2( code, method );
+    }
+
+    private static void u2( ByteArrayOutputStream code, int value ) {
+        code.write( value >> 8 );
+        code.write( value );
+    }
+}
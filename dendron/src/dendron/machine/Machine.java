@@ -1,10 +1,17 @@
 package dendron.machine;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
 import java.util.Map;
 import java.util.HashMap;
 import dendron.Errors;
+import dendron.MachineException;
+import dendron.io.OutputSink;
+import dendron.io.StreamSink;
+import dendron.jfr.ExecuteEvent;
+import dendron.jfr.InstructionSampleEvent;
 
 /**
  * An abstraction of a computing machine that reads instructions
@@ -12,9 +19,9 @@ import dendron.Errors;
  * for variables (instead of general-purpose memory), and a
  * value stack on which calculations are performed.
  *
- * (Everything is static to avoid the need to master the subtleties
- * of nested class instantiation or to pass the symbol table and
- * stack into every instruction when it executes.)
+ * Each Machine instance owns its own stack, frame and output stream,
+ * so separate instances may run programs on separate threads at the
+ * same time. The instructions are handed the Machine they run on.
  *
  *
  * @author James Heliotis
@@ -28,19 +35,147 @@ public class Machine {
     ////////////////////////////////////////////////////////
 
 
-    /** Do not instatiate this class. */
-    private Machine() {}
+    /** How many programs keep their linked copies, and how many slots survive a reset */
+    private static final int MAX_LINKED_PROGRAMS = 64;
+    private static final int MAX_KEPT_SLOTS = 1 << 16;
 
-    private static Map< String, Integer > table = null;
-    private static Stack< Integer > stack = null;
+    private Map< String, Integer > slots = new HashMap<>();
+    private final Map< List< Instruction >, List< Instruction > > linkedPrograms =
+            new HashMap<>();
+    private CodeSegment decodedSegment;
+    private List< Instruction > decodedProgram;
+    private int[] frame = new int[ 0 ];
+    private boolean[] defined = new boolean[ 0 ];
+    private final OperandStack stack = new OperandStack();
+    private final OutputSink out;
+    private InstructionProfile profile = null;
+    private ExecutionStats stats = null;
+    private int sampleInterval = Integer.getInteger( "dendron.sampleInterval", 0 );
 
     /**
-     * Reset the Machine to a pristine state.
-     * @see Machine#execute
+     * The output of a PRINT instruction.
+     * @param value the value printed
      */
-    private static void reset() {
-        stack = new Stack<>();
-        table = new HashMap<>();
+    private void print( int value ) {
+        out.print( "*** " );
+        out.println( value );
+    }
+
+    /**
+     * Give a variable name a slot in the frame, reusing its
+     * slot if it already has one.
+     * @param name the variable name
+     * @return the variable's index in the frame
+     */
+    private int slotFor( String name ) {
+        Integer slot = slots.get( name );
+        if ( slot == null ) {
+            slot = slots.size();
+            slots.put( name, slot );
+        }
+        return slot;
+    }
+
+    /**
+     * Make sure the frame has room for every slot handed out.
+     */
+    private void ensureFrame() {
+        if ( frame.length < slots.size() ) {
+            frame = Arrays.copyOf( frame, slots.size() );
+            defined = Arrays.copyOf( defined, slots.size() );
+        }
+    }
+
+    /*
+     * Entry points for code generated by JitCompiler. The generated
+     * class lives in this package, so these need not be public.
+     */
+
+    void jitPrint( int value ) {
+        print( value );
+    }
+
+    int jitUninitialized( String name ) {
+        throw new MachineException( Errors.Type.UNINITIALIZED, name );
+    }
+
+    void jitStore( String name, int value ) {
+        assign( name, value );
+    }
+
+    void jitPush( int value ) {
+        stack.push( value );
+    }
+
+    /*
+     * State access for Checkpoint, which lives in this package.
+     */
+
+    String[] slotNames() {
+        String[] names = new String[ slots.size() ];
+        for ( Map.Entry< String, Integer > entry: slots.entrySet() ) {
+            names[ entry.getValue() ] = entry.getKey();
+        }
+        return names;
+    }
+
+    int[] frame() {
+        return frame;
+    }
+
+    boolean[] defined() {
+        return defined;
+    }
+
+    OperandStack stack() {
+        return stack;
+    }
+
+    /**
+     * Forget everything and give each name the slot of its index.
+     * @param names the variable names, in slot order
+     */
+    void resetSlots( String[] names ) {
+        reset();
+        forgetSlots();
+        for ( String name: names ) {
+            slotFor( name );
+        }
+        ensureFrame();
+    }
+
+
+    /////////////////////////////////////////////////////
+    ////////////     Public Constructors     ////////////
+    /////////////////////////////////////////////////////
+
+
+    /**
+     * Create a Machine that prints to this thread's standard output
+     * sink.
+     * @see OutputSink#standardOutput()
+     */
+    public Machine() {
+        this( OutputSink.standardOutput() );
+    }
+
+    /**
+     * Create a Machine that sends PRINT output and reports to
+     * the given stream, buffered and written at the end of each run.
+     * @param out where this Machine's output goes
+     */
+    public Machine( PrintStream out ) {
+        this( new StreamSink( out ) );
+    }
+
+    /**
+     * Create a Machine that sends PRINT output and reports to
+     * the given sink. The sink is flushed at the end of each run and
+     * each report.
+     * @param out where this Machine's output goes
+     */
+    public Machine( OutputSink out ) {
+        this.out = out;
     }
 
 
@@ -56,8 +191,10 @@ public class Machine {
 
         /**
          * Run this instruction on the Machine, using the Machine's value stack and symbol table
+         *
+         * @param machine the Machine whose state the instruction works on
          */
-        void execute();
+        void execute( Machine machine );
 
 
         /**
@@ -70,6 +207,19 @@ public class Machine {
 
     }
 
+    /**
+     * A superinstruction: one instruction doing the work of a short
+     * sequence of ordinary ones, so that the sequence costs a single
+     * dispatch. See {@link SuperinstructionRewriter}.
+     */
+    public interface Superinstruction extends Instruction {
+
+        /**
+         * @return the ordinary instructions this one stands for, in order
+         */
+        List< Instruction > expand();
+    }
+
 
     ////////////////////////////////////////////////
     ////////////     Public Classes     ////////////
@@ -83,10 +233,10 @@ public class Machine {
 
         //Run the microsteps for the ADD Instruction
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 + op2 );
+        public void execute( Machine machine ) {
+            int op2 = machine.stack.pop();
+            int op1 = machine.stack.pop();
+            machine.stack.push( op1 + op2 );
         }
 
         //Show the ADD instruction as plain text
@@ -104,10 +254,10 @@ public class Machine {
 
         //Run the microsteps for the DIVIDE Instruction
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 / op2 );
+        public void execute( Machine machine ) {
+            int op2 = machine.stack.pop();
+            int op1 = machine.stack.pop();
+            machine.stack.push( op1 / op2 );
         }
 
         //Show the DIVIDE instruction as plain text
@@ -117,22 +267,58 @@ public class Machine {
         }
     }
 
+    /**
+     * The DUP instruction
+     */
+    public static class Dup implements Instruction{
+
+        //Run the microsteps for the DUP Instruction
+        @Override
+        public void execute( Machine machine ) {
+            int op1 = machine.stack.pop();
+            machine.stack.push( op1 );
+            machine.stack.push( op1 );
+        }
+
+        //Show the DUP instruction as plain text
+        @Override
+        public String toString() {
+            return "DUP";
+        }
+    }
+
     /**
      * The LOAD instruction
      */
     public static class Load implements Instruction{
 
-        private String varname;
+        final String varname;
+
+        //Frame index of the variable, given by Machine.link to its own copy
+        private final int slot;
 
-        private Load(String varname) {
+        public Load(String varname) {
+            this( varname, -1 );
+        }
+
+        //A copy linked to a frame slot
+        private Load(String varname, int slot) {
             this.varname = varname;
+            this.slot = slot;
+        }
+
+        //Read the variable, reporting it if it has no value
+        private int fetch( Machine machine ) {
+            if ( !machine.defined[ this.slot ] ) {
+                throw new MachineException( Errors.Type.UNINITIALIZED, this.varname );
+            }
+            return machine.frame[ this.slot ];
         }
 
         //Run the microsteps for the LOAD Instruction
         @Override
-        public void execute() {
-            int key = table.get(this.varname);
-            stack.push(key);
+        public void execute( Machine machine ) {
+            machine.stack.push( fetch( machine ) );
         }
 
         //Show the LOAD instruction as plain text
@@ -149,10 +335,10 @@ public class Machine {
 
         //Run the microsteps for the MULTIPLY Instruction
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 * op2 );
+        public void execute( Machine machine ) {
+            int op2 = machine.stack.pop();
+            int op1 = machine.stack.pop();
+            machine.stack.push( op1 * op2 );
         }
 
         //Show the MULTIPLY instruction as plain text
@@ -169,9 +355,9 @@ public class Machine {
 
         //Run the microsteps for the NEGATE Instruction
         @Override
-        public void execute() {
-            int op1 = stack.pop();
-            stack.push( -1 * op1 );
+        public void execute( Machine machine ) {
+            int op1 = machine.stack.pop();
+            machine.stack.push( -1 * op1 );
         }
 
         //Show the NEGATE instruction as plain text
@@ -188,9 +374,9 @@ public class Machine {
 
         //Run the microsteps for the PRINT Instruction
         @Override
-        public void execute() {
-            int op1 = stack.pop();
-            System.out.println("*** " + op1);
+        public void execute( Machine machine ) {
+            int op1 = machine.stack.pop();
+            machine.print( op1 );
         }
 
         //Show the PRINT instruction as plain text
@@ -205,17 +391,17 @@ public class Machine {
      */
     public static class PushConst implements Instruction{
 
-        private int constant;
+        final int constant;
 
         //Constructor
-        private PushConst(int constant) {
+        public PushConst(int constant) {
             this.constant = constant;
         }
 
         //Run the microsteps for the PUSHCONST Instruction
         @Override
-        public void execute() {
-            stack.push( this.constant );
+        public void execute( Machine machine ) {
+            machine.stack.push( this.constant );
         }
 
         //Show the PUSHCONST instruction as plain text
@@ -232,9 +418,9 @@ public class Machine {
 
         //Run the microsteps for the SQUAREROOT Instruction
         @Override
-        public void execute() {
-            int op1 = stack.pop();
-            stack.push((int) Math.round(Math.sqrt(op1)));
+        public void execute( Machine machine ) {
+            int op1 = machine.stack.pop();
+            machine.stack.push((int) Math.round(Math.sqrt(op1)));
         }
 
         //Show the SQUAREROOT instruction as plain text
@@ -250,17 +436,32 @@ public class Machine {
     public static class Store implements Instruction{
 
         //Store the name of the target variable
-        private String name;
+        final String name;
+
+        //Frame index of the variable, given by Machine.link to its own copy
+        private final int slot;
 
         //Constructor
-        private Store(String ident) {
+        public Store(String ident) {
+            this( ident, -1 );
+        }
+
+        //A copy linked to a frame slot
+        private Store(String ident, int slot) {
             this.name = ident;
+            this.slot = slot;
+        }
+
+        //Give the variable a value
+        private void assign( Machine machine, int value ) {
+            machine.frame[ this.slot ] = value;
+            machine.defined[ this.slot ] = true;
         }
 
         //Run the microsteps for the STORE Instruction
         @Override
-        public void execute() {
-            table.put( this.name, stack.pop() );
+        public void execute( Machine machine ) {
+            assign( machine, machine.stack.pop() );
         }
 
         //Show the STORE instruction as plain text
@@ -278,10 +479,10 @@ public class Machine {
 
         //Run the microsteps for the SUBTRACT Instruction
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 - op2 );
+        public void execute( Machine machine ) {
+            int op2 = machine.stack.pop();
+            int op1 = machine.stack.pop();
+            machine.stack.push( op1 - op2 );
         }
 
         //Show the SUBTRACT instruction as plain text
@@ -293,40 +494,1192 @@ public class Machine {
 
 
     ////////////////////////////////////////////////
-    ////////////     Public Methods     ////////////
+    ////////////     Superinstructions     /////////
     ////////////////////////////////////////////////
 
 
     /**
-     *
-     * Generate a listing of a program on standard output by calling the
-     * toString() method on each instruction contained therein, in order
-     *
-     * @param program - a list of instructions in the program
-     *
+     * What the superinstructions have in common: the ordinary
+     * instructions they stand for, and among those the LOADs and
+     * STOREs that Machine.link must give frame slots.
+     * Those that hold a LOAD or STORE make linked copies of themselves.
      */
-    public static void displayInstructions(List< Instruction > program) {
-            System.out.println( "\nCompiled code:" );
-            for ( Machine.Instruction instr: program ) {
-                System.out.println( instr );
+    abstract static class Fused implements Superinstruction {
+
+        private final List< Instruction > parts;
+        private final Instruction[] variables;
+
+        /** How far the replaced instructions take the stack above its starting depth */
+        private final int rise;
+
+        Fused( Instruction... parts ) {
+            this.parts = List.of( parts );
+            this.variables = Arrays.stream( parts )
+                                   .filter( part -> part instanceof Load || part instanceof Store )
+                                   .toArray( Instruction[]::new );
+            // Every part that is not a LOAD or PUSHCONST pops one more than it pushes.
+            int depth = 0;
+            int rise = 0;
+            for ( Instruction part: parts ) {
+                depth += part instanceof Load || part instanceof PushConst ? 1 : -1;
+                rise = Math.max( rise, depth );
             }
-            System.out.println();
+            this.rise = rise;
+        }
+
+        @Override
+        public List< Instruction > expand() {
+            return parts;
+        }
+
+        /**
+         * @param machine the Machine whose frame slots are used
+         * @return a copy of this instruction linked to the Machine,
+         *         or this instruction if it has no variables
+         */
+        Fused link( Machine machine ) {
+            return this;
+        }
     }
 
     /**
-     * Run a "compiled" program by executing in order each instruction contained therein
-     *
-     * @param program - a list of Machine Instructions
+     * LOAD x LOAD y ADD
      */
-    public static void execute(List<Instruction> program) {
-        reset();
-        System.out.println("Executing compiled code...");
-        for ( Instruction instr: program ) {
-            instr.execute();
+    public static class LoadLoadAdd extends Fused {
+
+        private final Load left;
+        private final Load right;
+
+        public LoadLoadAdd( String left, String right ) {
+            this( new Load( left ), new Load( right ) );
+        }
+
+        private LoadLoadAdd( Load left, Load right ) {
+            super( left, right, new Add() );
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Fused link( Machine machine ) {
+            return new LoadLoadAdd( machine.linked( left ), machine.linked( right ) );
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            int op1 = left.fetch( machine );
+            machine.stack.push( op1 + right.fetch( machine ) );
+        }
+
+        @Override
+        public String toString() {
+            return "LOADLOADADD " + left.varname + " " + right.varname;
+        }
+    }
+
+    /**
+     * LOAD x LOAD y SUBTRACT
+     */
+    public static class LoadLoadSub extends Fused {
+
+        private final Load left;
+        private final Load right;
+
+        public LoadLoadSub( String left, String right ) {
+            this( new Load( left ), new Load( right ) );
+        }
+
+        private LoadLoadSub( Load left, Load right ) {
+            super( left, right, new Subtract() );
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Fused link( Machine machine ) {
+            return new LoadLoadSub( machine.linked( left ), machine.linked( right ) );
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            int op1 = left.fetch( machine );
+            machine.stack.push( op1 - right.fetch( machine ) );
+        }
+
+        @Override
+        public String toString() {
+            return "LOADLOADSUB " + left.varname + " " + right.varname;
+        }
+    }
+
+    /**
+     * LOAD x LOAD y MULTIPLY
+     */
+    public static class LoadLoadMul extends Fused {
+
+        private final Load left;
+        private final Load right;
+
+        public LoadLoadMul( String left, String right ) {
+            this( new Load( left ), new Load( right ) );
+        }
+
+        private LoadLoadMul( Load left, Load right ) {
+            super( left, right, new Multiply() );
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Fused link( Machine machine ) {
+            return new LoadLoadMul( machine.linked( left ), machine.linked( right ) );
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            int op1 = left.fetch( machine );
+            machine.stack.push( op1 * right.fetch( machine ) );
+        }
+
+        @Override
+        public String toString() {
+            return "LOADLOADMUL " + left.varname + " " + right.varname;
+        }
+    }
+
+    /**
+     * LOAD x ADD
+     */
+    public static class LoadAdd extends Fused {
+
+        private final Load load;
+
+        public LoadAdd( String varname ) {
+            this( new Load( varname ) );
+        }
+
+        private LoadAdd( Load load ) {
+            super( load, new Add() );
+            this.load = load;
+        }
+
+        @Override
+        Fused link( Machine machine ) {
+            return new LoadAdd( machine.linked( load ) );
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            int op2 = load.fetch( machine );
+            machine.stack.push( machine.stack.pop() + op2 );
+        }
+
+        @Override
+        public String toString() {
+            return "LOADADD " + load.varname;
+        }
+    }
+
+    /**
+     * LOAD x MULTIPLY
+     */
+    public static class LoadMul extends Fused {
+
+        private final Load load;
+
+        public LoadMul( String varname ) {
+            this( new Load( varname ) );
+        }
+
+        private LoadMul( Load load ) {
+            super( load, new Multiply() );
+            this.load = load;
+        }
+
+        @Override
+        Fused link( Machine machine ) {
+            return new LoadMul( machine.linked( load ) );
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            int op2 = load.fetch( machine );
+            machine.stack.push( machine.stack.pop() * op2 );
+        }
+
+        @Override
+        public String toString() {
+            return "LOADMUL " + load.varname;
+        }
+    }
+
+    /**
+     * PUSHCONST k ADD
+     */
+    public static class PushConstAdd extends Fused {
+
+        private final int constant;
+
+        public PushConstAdd( int constant ) {
+            super( new PushConst( constant ), new Add() );
+            this.constant = constant;
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            machine.stack.push( machine.stack.pop() + constant );
+        }
+
+        @Override
+        public String toString() {
+            return "PUSHCONSTADD " + constant;
+        }
+    }
+
+    /**
+     * PUSHCONST k SUBTRACT
+     */
+    public static class PushConstSub extends Fused {
+
+        private final int constant;
+
+        public PushConstSub( int constant ) {
+            super( new PushConst( constant ), new Subtract() );
+            this.constant = constant;
         }
-        System.out.println( "Machine: execution ended with " +
-                stack.size() + " items left on the stack." );
-        System.out.println();
-        Errors.dump( table );
+
+        @Override
+        public void execute( Machine machine ) {
+            machine.stack.push( machine.stack.pop() - constant );
+        }
+
+        @Override
+        public String toString() {
+            return "PUSHCONSTSUB " + constant;
+        }
+    }
+
+    /**
+     * PUSHCONST k MULTIPLY
+     */
+    public static class PushConstMul extends Fused {
+
+        private final int constant;
+
+        public PushConstMul( int constant ) {
+            super( new PushConst( constant ), new Multiply() );
+            this.constant = constant;
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            machine.stack.push( machine.stack.pop() * constant );
+        }
+
+        @Override
+        public String toString() {
+            return "PUSHCONSTMUL " + constant;
+        }
+    }
+
+    /**
+     * LOAD x STORE y
+     */
+    public static class LoadStore extends Fused {
+
+        private final Load load;
+        private final Store store;
+
+        public LoadStore( String from, String to ) {
+            this( new Load( from ), new Store( to ) );
+        }
+
+        private LoadStore( Load load, Store store ) {
+            super( load, store );
+            this.load = load;
+            this.store = store;
+        }
+
+        @Override
+        Fused link( Machine machine ) {
+            return new LoadStore( machine.linked( load ), machine.linked( store ) );
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            store.assign( machine, load.fetch( machine ) );
+        }
+
+        @Override
+        public String toString() {
+            return "LOADSTORE " + load.varname + " " + store.name;
+        }
+    }
+
+    /**
+     * PUSHCONST k STORE y
+     */
+    public static class PushConstStore extends Fused {
+
+        private final int constant;
+        private final Store store;
+
+        public PushConstStore( int constant, String to ) {
+            this( constant, new Store( to ) );
+        }
+
+        private PushConstStore( int constant, Store store ) {
+            super( new PushConst( constant ), store );
+            this.constant = constant;
+            this.store = store;
+        }
+
+        @Override
+        Fused link( Machine machine ) {
+            return new PushConstStore( constant, machine.linked( store ) );
+        }
+
+        @Override
+        public void execute( Machine machine ) {
+            store.assign( machine, constant );
+        }
+
+        @Override
+        public String toString() {
+            return "PUSHCONSTSTORE " + constant + " " + store.name;
+        }
+    }
+
+    ////////////////////////////////////////////////
+    ////////////     Public Methods     ////////////
+    ////////////////////////////////////////////////
+
+
+    /**
+     *
+     * Generate a listing of a program on standard output by calling the
+     * toString() method on each instruction contained therein, in order
+     *
+     * @param program - a list of instructions in the program
+     *
+     */
+    public static void displayInstructions(List< Instruction > program) {
+            System.out.println( "\nCompiled code:" );
+            for ( Machine.Instruction instr: program ) {
+                System.out.println( instr );
+            }
+            System.out.println();
+    }
+
+    /**
+     * Resolve every variable named by a LOAD or STORE in the program to
+     * a dense frame slot, so that execution indexes an array instead of
+     * looking names up. Slots are numbered in order of first appearance,
+     * and variables this Machine has already seen keep their slots.
+     * Superinstructions are linked through the instructions they
+     * stand for. The program itself is not changed.
+     *
+     * @param program - a list of Machine Instructions
+     * @return the map from variable name to slot
+     */
+    public Map< String, Integer > link(List<Instruction> program) {
+        linked( program );
+        return slots;
+    }
+
+    /**
+     * Link a private copy of a program: each LOAD and STORE, alone or
+     * inside a superinstruction, is replaced by a copy that holds this
+     * Machine's frame slot for its variable, and every other
+     * instruction is shared. Because the program itself is never
+     * changed, it may run on several Machines at once.
+     *
+     * Slots outlive a reset, so the copy is kept and reused the next
+     * time a list holding the same instructions runs, until the slots
+     * are given out afresh. It is kept under an unmodifiable copy of
+     * the list, so a list changed since it was linked is linked again
+     * rather than running stale code, and the caller's list is not held.
+     *
+     * @param program - a list of Machine Instructions
+     * @return the linked copy
+     */
+    private List<Instruction> linked(List<Instruction> program) {
+        List< Instruction > copy = linkedPrograms.get( program );
+        if ( copy != null ) {
+            return copy;
+        }
+        copy = linkCopy( program );
+        if ( linkedPrograms.size() == MAX_LINKED_PROGRAMS ) {
+            linkedPrograms.clear();
+        }
+        linkedPrograms.put( List.copyOf( program ), copy );
+        return copy;
+    }
+
+    /**
+     * Link a private copy of a program, as {@link #linked(List)} does,
+     * without keeping it.
+     *
+     * @param program - a list of Machine Instructions
+     * @return the linked copy
+     */
+    private List<Instruction> linkCopy(List<Instruction> program) {
+        List< Instruction > copy = new ArrayList<>( program.size() );
+        for ( Instruction instr: program ) {
+            if ( instr instanceof Load ) {
+                copy.add( linked( (Load) instr ) );
+            }
+            else if ( instr instanceof Store ) {
+                copy.add( linked( (Store) instr ) );
+            }
+            else if ( instr instanceof Fused ) {
+                copy.add( ( (Fused) instr ).link( this ) );
+            }
+            else {
+                copy.add( instr );
+            }
+        }
+        ensureFrame();
+        return copy;
+    }
+
+    /**
+     * Decode and link a code segment for the instrumented loop. The
+     * last segment decoded is kept, so running one a stretch at a
+     * time, as when checkpointing, decodes it only once. A freshly
+     * decoded list would never be found again among the linked
+     * copies of lists, so it is not kept there.
+     *
+     * @param segment the encoded program
+     * @return the linked copy of its instructions
+     */
+    private List<Instruction> decoded(CodeSegment segment) {
+        if ( segment != decodedSegment ) {
+            decodedProgram = linkCopy( segment.toInstructions() );
+            decodedSegment = segment;
+        }
+        return decodedProgram;
+    }
+
+    /**
+     * Give up every slot, and with them every linked copy.
+     */
+    private void forgetSlots() {
+        slots = new HashMap<>();
+        frame = new int[ 0 ];
+        defined = new boolean[ 0 ];
+        linkedPrograms.clear();
+        decodedSegment = null;
+        decodedProgram = null;
+    }
+
+    private Load linked(Load load) {
+        return new Load( load.varname, slotFor( load.varname ) );
+    }
+
+    private Store linked(Store store) {
+        return new Store( store.name, slotFor( store.name ) );
+    }
+
+    /**
+     * Turn profiling on or off. While a profile is set, every
+     * instruction run from an instruction list or code segment is
+     * counted in it. Compiled and register programs are not profiled.
+     *
+     * @param profile where to count instructions, or null for none
+     */
+    public void setProfile(InstructionProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Turn execution statistics on or off. While a stats object is
+     * set, instruction lists and code segments run through an
+     * instrumented loop that records into it. Compiled and register
+     * programs are not instrumented.
+     *
+     * @param stats where to record statistics, or null for none
+     */
+    public void setStats(ExecutionStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Turn instruction sampling on or off. While sampling is on and
+     * a flight recording has the dendron.InstructionSample event
+     * enabled, instruction lists and code segments run through the
+     * instrumented loop, which emits one event per stretch of this
+     * many instructions. The default comes from the
+     * dendron.sampleInterval system property.
+     *
+     * @param instructions the stretch length, or 0 for no sampling
+     */
+    public void setSampleInterval(int instructions) {
+        this.sampleInterval = instructions;
+    }
+
+    /**
+     * @return true if instruction sampling should happen on this run
+     */
+    private boolean sampling() {
+        return sampleInterval > 0 && new InstructionSampleEvent().isEnabled();
+    }
+
+    /**
+     * Link a program and run it on this Machine's current state.
+     * Nothing is reset, so variables and stack contents left by
+     * earlier programs are still visible.
+     *
+     * @param program - a list of Machine Instructions
+     * @throws MachineException if the program fails
+     */
+    public void run(List<Instruction> program) {
+        run( program, 0 );
+    }
+
+    /**
+     * Link a program and run it on this Machine's current state,
+     * starting part way through, as when resuming from a checkpoint.
+     *
+     * @param program - a list of Machine Instructions
+     * @param from the index of the first instruction to run
+     * @throws MachineException if the program fails
+     * @throws IllegalArgumentException if there is no such instruction
+     */
+    public void run(List<Instruction> program, int from) {
+        ExecuteEvent event = new ExecuteEvent();
+        event.begin();
+        try {
+            runList( program, from );
+        }
+        catch ( RuntimeException e ) {
+            event.failed = true;
+            throw e;
+        }
+        finally {
+            commitExecute( event, "list", program.size() );
+        }
+    }
+
+    /**
+     * Do the work of {@link #run(List, int)}, without the event.
+     */
+    private void runList(List<Instruction> program, int from) {
+        if ( from < 0 || from > program.size() ) {
+            throw new IllegalArgumentException( "No instruction " + from +
+                                                " in " + program.size() );
+        }
+        runLinked( linked( program ), from );
+    }
+
+    /**
+     * Run a linked program from the given instruction.
+     *
+     * @param program - a list of linked Machine Instructions
+     * @param from the index of the first instruction to run
+     */
+    private void runLinked(List<Instruction> program, int from) {
+        if ( from > 0 ) {
+            program = program.subList( from, program.size() );
+        }
+        boolean sampling = sampling();
+        try {
+            if ( profile != null || stats != null || sampling ) {
+                runInstrumented( program, sampling, from );
+                return;
+            }
+            int pc = from;
+            try {
+                for ( Instruction instr: program ) {
+                    instr.execute( this );
+                    ++pc;
+                }
+            }
+            catch ( MachineException | ArithmeticException e ) {
+                throw failure( e, pc );
+            }
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Turn an exception from a running program into a MachineException
+     * that knows which instruction failed. Integer division by zero is
+     * the only ArithmeticException an instruction can raise.
+     *
+     * @param e what the instruction threw
+     * @param instruction the index of the instruction, or -1 if not known
+     * @return the exception to throw
+     */
+    private static MachineException failure(RuntimeException e, int instruction) {
+        MachineException error = e instanceof MachineException ? (MachineException) e
+                : new MachineException( Errors.Type.DIVIDE_BY_ZERO, null );
+        error.at( instruction );
+        return error;
+    }
+
+    /**
+     * Run a linked program, feeding the profile and the statistics,
+     * whichever are set, and emitting instruction samples if asked.
+     *
+     * @param program - a list of Machine Instructions
+     * @param sampling whether to emit instruction samples
+     * @param pc the index in the whole program of the first instruction
+     */
+    private void runInstrumented(List<Instruction> program, boolean sampling, int pc) {
+        if ( profile != null ) {
+            profile.startRun();
+        }
+        if ( stats != null ) {
+            stats.stackDepth( stack.size() );
+        }
+        InstructionSampleEvent sample = null;
+        if ( sampling ) {
+            sample = new InstructionSampleEvent();
+            sample.begin();
+        }
+        int inSample = 0;
+        long executed = 0;
+        try {
+            for ( Instruction instr: program ) {
+                if ( profile != null ) {
+                    profile.record( instr );
+                }
+                if ( stats == null ) {
+                    instr.execute( this );
+                }
+                else {
+                    int peak = stack.size();
+                    if ( !countVariable( instr ) && instr instanceof Fused ) {
+                        for ( Instruction part: ( (Fused) instr ).variables ) {
+                            countVariable( part );
+                        }
+                        // The depth the replaced instructions would have reached
+                        peak += ( (Fused) instr ).rise;
+                    }
+                    long start = System.nanoTime();
+                    instr.execute( this );
+                    stats.record( instr, System.nanoTime() - start, stack.size() );
+                    stats.stackDepth( peak );
+                }
+                ++pc;
+                if ( sample != null && ++inSample == sampleInterval ) {
+                    executed += inSample;
+                    commitSample( sample, inSample, executed );
+                    sample = new InstructionSampleEvent();
+                    sample.begin();
+                    inSample = 0;
+                }
+            }
+        }
+        catch ( MachineException | ArithmeticException e ) {
+            throw failure( e, pc );
+        }
+        if ( sample != null && inSample > 0 ) {
+            commitSample( sample, inSample, executed + inSample );
+        }
+        if ( stats != null ) {
+            stats.symbolTableSize( symbolTable().size() );
+        }
+    }
+
+    /**
+     * Finish and commit an instruction sample.
+     *
+     * @param sample the begun event
+     * @param instructions how many instructions it spans
+     * @param executed how many instructions the run has executed so far
+     */
+    private void commitSample(InstructionSampleEvent sample, int instructions, long executed) {
+        sample.instructions = instructions;
+        sample.executed = executed;
+        sample.stackDepth = stack.size();
+        sample.commit();
+    }
+
+    /**
+     * Count a LOAD or STORE in the statistics.
+     *
+     * @param instr any instruction
+     * @return true if the instruction was a LOAD or STORE
+     */
+    private boolean countVariable(Instruction instr) {
+        if ( instr instanceof Load ) {
+            stats.load( ( (Load) instr ).varname );
+            return true;
+        }
+        if ( instr instanceof Store ) {
+            stats.store( ( (Store) instr ).name );
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Link a code segment's name pool to this Machine's frame slots.
+     *
+     * @param segment the encoded program
+     * @return the frame slot of each name, indexed by pool position
+     */
+    public int[] link(CodeSegment segment) {
+        return link( segment.names() );
+    }
+
+    /**
+     * Link a name pool to this Machine's frame slots.
+     *
+     * @param names the variable names
+     * @return the frame slot of each name, indexed by pool position
+     */
+    private int[] link(String[] names) {
+        int[] slotOf = new int[ names.length ];
+        for ( int i = 0; i < names.length; ++i ) {
+            slotOf[ i ] = slotFor( names[ i ] );
+        }
+        ensureFrame();
+        return slotOf;
+    }
+
+    /**
+     * Link an encoded program and run it on this Machine's current
+     * state with a single switch-dispatch loop. When profiling,
+     * statistics or sampling are on, it is decoded and run as an
+     * instruction list instead.
+     *
+     * @param segment the encoded program
+     * @throws MachineException if the program fails
+     */
+    public void run(CodeSegment segment) {
+        run( segment, 0 );
+    }
+
+    /**
+     * Link an encoded program and run it on this Machine's current
+     * state like {@link #run(CodeSegment)}, starting part way through,
+     * as when resuming from a checkpoint.
+     *
+     * @param segment the encoded program
+     * @param from the index of the first instruction to run
+     * @throws MachineException if the program fails
+     * @throws IllegalArgumentException if there is no such instruction
+     */
+    public void run(CodeSegment segment, int from) {
+        run( segment, from, segment.instructionCount() );
+    }
+
+    /**
+     * Link an encoded program and run part of it on this Machine's
+     * current state like {@link #run(CodeSegment)}, stopping before a
+     * given instruction, as when saving a checkpoint part way through.
+     *
+     * @param segment the encoded program
+     * @param from the index of the first instruction to run
+     * @param to the index of the instruction to stop before, or the
+     *           instruction count to run to the end
+     * @throws MachineException if the program fails
+     * @throws IllegalArgumentException if there is no such instruction
+     *         or from is after to
+     */
+    public void run(CodeSegment segment, int from, int to) {
+        if ( from > to ) {
+            throw new IllegalArgumentException( "Instruction " + from + " is after " + to );
+        }
+        ExecuteEvent event = new ExecuteEvent();
+        event.begin();
+        try {
+            runSegment( segment, from, to );
+        }
+        catch ( RuntimeException e ) {
+            event.failed = true;
+            throw e;
+        }
+        finally {
+            commitExecute( event, "segment", segment.instructionCount() );
+        }
+    }
+
+    /**
+     * Do the work of {@link #run(CodeSegment, int, int)}, without the event.
+     */
+    private void runSegment(CodeSegment segment, int from, int to) {
+        int pc = segment.offsetOf( from );
+        int end = segment.offsetOf( to );
+        if ( profile != null || stats != null || sampling() ) {
+            runLinked( decoded( segment ).subList( 0, to ), from );
+            return;
+        }
+        int[] slotOf = link( segment );
+        int[] code = segment.code();
+        String[] names = segment.names();
+        int[] frame = this.frame;
+        boolean[] defined = this.defined;
+        OperandStack stack = this.stack;
+        int op1, op2;
+        try {
+            while ( pc < end ) {
+                switch ( code[ pc++ ] ) {
+                    case CodeSegment.PUSH:
+                        stack.push( code[ pc++ ] );
+                        break;
+                    case CodeSegment.LOAD:
+                        op1 = slotOf[ code[ pc ] ];
+                        if ( !defined[ op1 ] ) {
+                            throw new MachineException( Errors.Type.UNINITIALIZED, names[ code[ pc ] ] );
+                        }
+                        stack.push( frame[ op1 ] );
+                        ++pc;
+                        break;
+                    case CodeSegment.STORE:
+                        op1 = slotOf[ code[ pc++ ] ];
+                        frame[ op1 ] = stack.pop();
+                        defined[ op1 ] = true;
+                        break;
+                    case CodeSegment.ADD:
+                        op2 = stack.pop();
+                        op1 = stack.pop();
+                        stack.push( op1 + op2 );
+                        break;
+                    case CodeSegment.SUB:
+                        op2 = stack.pop();
+                        op1 = stack.pop();
+                        stack.push( op1 - op2 );
+                        break;
+                    case CodeSegment.MUL:
+                        op2 = stack.pop();
+                        op1 = stack.pop();
+                        stack.push( op1 * op2 );
+                        break;
+                    case CodeSegment.DIV:
+                        op2 = stack.pop();
+                        op1 = stack.pop();
+                        stack.push( op1 / op2 );
+                        break;
+                    case CodeSegment.NEG:
+                        stack.push( -stack.pop() );
+                        break;
+                    case CodeSegment.SQRT:
+                        stack.push( (int) Math.round( Math.sqrt( stack.pop() ) ) );
+                        break;
+                    case CodeSegment.PRINT:
+                        print( stack.pop() );
+                        break;
+                    case CodeSegment.DUP:
+                        op1 = stack.pop();
+                        stack.push( op1 );
+                        stack.push( op1 );
+                        break;
+                    default:
+                        throw new IllegalStateException(
+                                "Bad opcode " + code[ pc - 1 ] + " at " + ( pc - 1 ) );
+                }
+            }
+        }
+        catch ( MachineException | ArithmeticException e ) {
+            // pc is past the failing opcode but not past the next one
+            throw failure( e, segment.instructionAt( pc - 1 ) );
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Link a register program's name pool to this Machine's frame
+     * slots and run it on this Machine's current state. Values the
+     * program leaves behind are pushed onto the Machine's stack.
+     *
+     * @param program the register program
+     * @throws MachineException if the program fails
+     */
+    public void run(RegisterProgram program) {
+        ExecuteEvent event = new ExecuteEvent();
+        event.begin();
+        try {
+            runRegisters( program );
+        }
+        catch ( RuntimeException e ) {
+            event.failed = true;
+            throw e;
+        }
+        finally {
+            commitExecute( event, "register", program.instructionCount() );
+        }
+    }
+
+    /**
+     * Do the work of {@link #run(RegisterProgram)}, without the event.
+     */
+    private void runRegisters(RegisterProgram program) {
+        int[] slotOf = link( program.names() );
+        int[] code = program.code();
+        String[] names = program.names();
+        int[] r = new int[ program.fileSize() ];
+        int[] frame = this.frame;
+        boolean[] defined = this.defined;
+        int pc = 0;
+        try {
+            for ( ; pc < code.length; pc += RegisterProgram.WIDTH ) {
+                int x = code[ pc + 1 ];
+                int y = code[ pc + 2 ];
+                int z = code[ pc + 3 ];
+                switch ( code[ pc ] ) {
+                    case RegisterProgram.LI: r[ x ] = y; break;
+                    case RegisterProgram.LD:
+                        if ( !defined[ slotOf[ y ] ] ) {
+                            throw new MachineException( Errors.Type.UNINITIALIZED, names[ y ] );
+                        }
+                        r[ x ] = frame[ slotOf[ y ] ];
+                        break;
+                    case RegisterProgram.ST:
+                        frame[ slotOf[ x ] ] = r[ y ];
+                        defined[ slotOf[ x ] ] = true;
+                        break;
+                    case RegisterProgram.STI:
+                        frame[ slotOf[ x ] ] = y;
+                        defined[ slotOf[ x ] ] = true;
+                        break;
+                    case RegisterProgram.ADD: r[ x ] = r[ y ] + r[ z ]; break;
+                    case RegisterProgram.SUB: r[ x ] = r[ y ] - r[ z ]; break;
+                    case RegisterProgram.MUL: r[ x ] = r[ y ] * r[ z ]; break;
+                    case RegisterProgram.DIV: r[ x ] = r[ y ] / r[ z ]; break;
+                    case RegisterProgram.ADDI: r[ x ] = r[ y ] + z; break;
+                    case RegisterProgram.SUBI: r[ x ] = r[ y ] - z; break;
+                    case RegisterProgram.MULI: r[ x ] = r[ y ] * z; break;
+                    case RegisterProgram.DIVI: r[ x ] = r[ y ] / z; break;
+                    case RegisterProgram.RSUBI: r[ x ] = z - r[ y ]; break;
+                    case RegisterProgram.RDIVI: r[ x ] = z / r[ y ]; break;
+                    case RegisterProgram.NEG: r[ x ] = -r[ y ]; break;
+                    case RegisterProgram.SQRT: r[ x ] = (int) Math.round( Math.sqrt( r[ y ] ) ); break;
+                    case RegisterProgram.PRINT: print( r[ x ] ); break;
+                    case RegisterProgram.PRINTI: print( x ); break;
+                    case RegisterProgram.PUSH: stack.push( r[ x ] ); break;
+                    case RegisterProgram.PUSHI: stack.push( x ); break;
+                    default:
+                        throw new IllegalStateException(
+                                "Bad register opcode " + code[ pc ] + " at " + pc );
+                }
+            }
+        }
+        catch ( MachineException | ArithmeticException e ) {
+            throw failure( e, pc / RegisterProgram.WIDTH );
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Run a program from a pristine state, with the same banner,
+     * stack report and symbol table dump as {@link #execute(List)}.
+     *
+     * @param program - a list of Machine Instructions
+     */
+    public void executeProgram(List<Instruction> program) {
+        reset();
+        out.println("Executing compiled code...");
+        run( program );
+        report();
+    }
+
+    /**
+     * Run an encoded program from a pristine state, with the same
+     * banner, stack report and symbol table dump as
+     * {@link #execute(CodeSegment)}.
+     *
+     * @param segment the encoded program
+     */
+    public void executeProgram(CodeSegment segment) {
+        reset();
+        out.println("Executing compiled code...");
+        run( segment );
+        report();
+    }
+
+    /**
+     * Run a JIT-compiled program from a pristine state, with the same
+     * banner, stack report and symbol table dump as
+     * {@link #execute(List)}.
+     *
+     * @param program the compiled program
+     */
+    public void executeProgram(JitCompiler.CompiledProgram program) {
+        reset();
+        out.println("Executing compiled code...");
+        ExecuteEvent event = new ExecuteEvent();
+        event.begin();
+        try {
+            program.run( this );
+        }
+        catch ( MachineException | ArithmeticException e ) {
+            event.failed = true;
+            throw failure( e, -1 );
+        }
+        catch ( RuntimeException e ) {
+            event.failed = true;
+            throw e;
+        }
+        finally {
+            out.flush();
+            commitExecute( event, "jit", -1 );
+        }
+        report();
+    }
+
+    /**
+     * Run a register program from a pristine state, with the same
+     * banner, stack report and symbol table dump as
+     * {@link #execute(List)}.
+     *
+     * @param program the register program
+     */
+    public void executeProgram(RegisterProgram program) {
+        reset();
+        out.println("Executing compiled code...");
+        run( program );
+        report();
+    }
+
+    /**
+     * Finish and commit the event for one run of a program, whether
+     * or not it failed.
+     *
+     * @param event the begun event
+     * @param form which kind of program ran
+     * @param instructions the program size, or -1 if not known
+     */
+    private void commitExecute(ExecuteEvent event, String form, int instructions) {
+        event.form = form;
+        event.instructions = instructions;
+        event.stackLeft = stack.size();
+        event.commit();
+    }
+
+    /**
+     * Print how many items are left on the stack, followed by the
+     * symbol table dump, and flush the output.
+     */
+    public void report() {
+        out.print( "Machine: execution ended with " );
+        out.print( stack.size() );
+        out.println( " items left on the stack." );
+        out.println();
+        Errors.dump( out, slots, frame, defined );
+        out.flush();
+    }
+
+    /**
+     * Reset the Machine to a pristine state: the stack is empty and no
+     * variable has a value. Variables keep their frame slots, so
+     * programs already linked need not be linked again, unless so many
+     * have been given out that it is time to start afresh.
+     */
+    public void reset() {
+        stack.clear();
+        Arrays.fill( defined, false );
+        if ( slots.size() > MAX_KEPT_SLOTS ) {
+            forgetSlots();
+        }
+    }
+
+    /**
+     * Give a variable a value, as a STORE would, so that a program
+     * run afterwards without a reset can use it as an input.
+     *
+     * @param name the variable name
+     * @param value its new value
+     */
+    public void assign(String name, int value) {
+        int slot = slotFor( name );
+        ensureFrame();
+        frame[ slot ] = value;
+        defined[ slot ] = true;
+    }
+
+    /**
+     * @return how many values are currently on the stack
+     */
+    public int stackSize() {
+        return stack.size();
+    }
+
+    /**
+     * Copy out the variables that currently have values, leaving out
+     * compiler temporaries.
+     *
+     * @return a map from variable name to value
+     */
+    public Map< String, Integer > symbolTable() {
+        Map< String, Integer > table = new HashMap<>();
+        for ( Map.Entry< String, Integer > entry: slots.entrySet() ) {
+            if ( defined[ entry.getValue() ] &&
+                 !entry.getKey().startsWith( Errors.TEMP_PREFIX ) ) {
+                table.put( entry.getKey(), frame[ entry.getValue() ] );
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Run a "compiled" program by executing in order each instruction contained therein
+     *
+     * @param program - a list of Machine Instructions
+     */
+    public static void execute(List<Instruction> program) {
+        new Machine().executeProgram( program );
+    }
+
+    /**
+     * Run a "compiled" program like {@link #execute(List)}, counting
+     * the instructions executed in a profile.
+     *
+     * @param program - a list of Machine Instructions
+     * @param profile where to count instructions
+     */
+    public static void execute(List<Instruction> program, InstructionProfile profile) {
+        Machine machine = new Machine();
+        machine.setProfile( profile );
+        machine.executeProgram( program );
+    }
+
+    /**
+     * Run a "compiled" program like {@link #execute(List)}, recording
+     * execution statistics.
+     *
+     * @param program - a list of Machine Instructions
+     * @param stats where to record statistics
+     */
+    public static void execute(List<Instruction> program, ExecutionStats stats) {
+        Machine machine = new Machine();
+        machine.setStats( stats );
+        machine.executeProgram( program );
+    }
+
+    /**
+     * Run an encoded program by interpreting its code segment
+     *
+     * @param segment the encoded program
+     */
+    public static void execute(CodeSegment segment) {
+        new Machine().executeProgram( segment );
+    }
+
+    /**
+     * Run a program that was compiled to JVM bytecode
+     *
+     * @param program the compiled program
+     */
+    public static void execute(JitCompiler.CompiledProgram program) {
+        new Machine().executeProgram( program );
+    }
+
+    /**
+     * Run a program that was compiled to register code
+     *
+     * @param program the register program
+     */
+    public static void execute(RegisterProgram program) {
+        new Machine().executeProgram( program );
     }
 }
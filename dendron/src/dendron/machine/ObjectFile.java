@@ -0,0 +1,186 @@
+package dendron.machine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read and write assembled Dendron programs in the binary .denb
+ * object format. All values are little-endian ints:
+ * <pre>
+ *     magic             'D' 'E' 'N' 'B'
+ *     version           currently 1
+ *     instruction count
+ *     code length       in ints
+ *     name count
+ *     names             each a byte length then that many UTF-8 bytes,
+ *                       padded with zeros to a multiple of 4
+ *     code              the CodeSegment opcodes and operands
+ * </pre>
+ * Loading maps the file and copies the code in bulk, so no
+ * instruction is ever parsed from text.
+ *
+ * @author Nicholas Pembroke
+ */
+public class ObjectFile {
+
+    /** The first four bytes of every .denb file */
+    private static final int MAGIC = 'D' | 'E' << 8 | 'N' << 16 | 'B' << 24;
+
+    /** The format version written by this class */
+    public static final int VERSION = 1;
+
+    /** The conventional file name extension */
+    public static final String EXTENSION = ".denb";
+
+    private static final int HEADER_INTS = 5;
+
+    /** Do not instantiate this class. */
+    private ObjectFile() {}
+
+    /**
+     * Check whether a file starts with the .denb magic number.
+     * @param file the file to check
+     * @return true if the file looks like a .denb object file
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isObjectFile( Path file ) throws IOException {
+        try ( InputStream in = Files.newInputStream( file ) ) {
+            byte[] head = in.readNBytes( 4 );
+            return head.length == 4 &&
+                   ByteBuffer.wrap( head ).order( ByteOrder.LITTLE_ENDIAN ).getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Write an encoded program to a file, replacing it if it exists.
+     * @param segment the program
+     * @param file where to write it
+     * @throws IOException if the file cannot be written
+     */
+    public static void write( CodeSegment segment, Path file ) throws IOException {
+        String[] names = segment.names();
+        byte[][] encoded = new byte[ names.length ][];
+        int size = HEADER_INTS * Integer.BYTES;
+        for ( int i = 0; i < names.length; ++i ) {
+            encoded[ i ] = names[ i ].getBytes( StandardCharsets.UTF_8 );
+            size += Integer.BYTES + padded( encoded[ i ].length );
+        }
+        int[] code = segment.code();
+        size += code.length * Integer.BYTES;
+
+        ByteBuffer buf = ByteBuffer.allocate( size ).order( ByteOrder.LITTLE_ENDIAN );
+        buf.putInt( MAGIC );
+        buf.putInt( VERSION );
+        buf.putInt( segment.instructionCount() );
+        buf.putInt( code.length );
+        buf.putInt( names.length );
+        for ( byte[] name: encoded ) {
+            buf.putInt( name.length );
+            buf.put( name );
+            buf.position( buf.position() + padded( name.length ) - name.length );
+        }
+        buf.asIntBuffer().put( code );
+        buf.clear();
+
+        try ( FileChannel channel = FileChannel.open( file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING ) ) {
+            while ( buf.hasRemaining() ) {
+                channel.write( buf );
+            }
+        }
+    }
+
+    /**
+     * Load an encoded program from a memory-mapped .denb file.
+     * @param file the object file
+     * @return the program it contains
+     * @throws IOException if the file cannot be read or is not a
+     *         well-formed .denb file of a supported version
+     */
+    public static CodeSegment load( Path file ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+            MappedByteBuffer map = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            map.order( ByteOrder.LITTLE_ENDIAN );
+            try {
+                return decode( map, file );
+            }
+            catch ( RuntimeException e ) {
+                throw new IOException( file + ": corrupt object file", e );
+            }
+        }
+    }
+
+    private static CodeSegment decode( ByteBuffer map, Path file ) throws IOException {
+        if ( map.remaining() < HEADER_INTS * Integer.BYTES || map.getInt() != MAGIC ) {
+            throw new IOException( file + ": not a Dendron object file" );
+        }
+        int version = map.getInt();
+        if ( version != VERSION ) {
+            throw new IOException( file + ": unsupported object file version " + version );
+        }
+        int instructionCount = map.getInt();
+        int codeLength = map.getInt();
+        String[] names = new String[ map.getInt() ];
+        for ( int i = 0; i < names.length; ++i ) {
+            int length = map.getInt();
+            byte[] bytes = new byte[ length ];
+            map.get( bytes );
+            map.position( map.position() + padded( length ) - length );
+            names[ i ] = new String( bytes, StandardCharsets.UTF_8 );
+        }
+        IntBuffer ints = map.slice().order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+        if ( ints.remaining() != codeLength ) {
+            throw new IOException( file + ": expected " + codeLength +
+                                   " code words, found " + ints.remaining() );
+        }
+        int[] code = new int[ codeLength ];
+        ints.get( code );
+        verify( code, names.length, instructionCount, file );
+        return new CodeSegment( code, names, instructionCount );
+    }
+
+    /**
+     * Make sure every opcode is known and every name index is in the
+     * pool, so a damaged file fails here instead of while running.
+     */
+    private static void verify( int[] code, int nameCount, int instructionCount,
+                                Path file ) throws IOException {
+        int pc = 0;
+        int count = 0;
+        while ( pc < code.length ) {
+            int opcode = code[ pc++ ];
+            if ( opcode < CodeSegment.PUSH || opcode > CodeSegment.MAX_OPCODE ) {
+                throw new IOException( file + ": bad opcode " + opcode + " at " + ( pc - 1 ) );
+            }
+            if ( CodeSegment.hasOperand( opcode ) ) {
+                if ( pc == code.length ) {
+                    throw new IOException( file + ": missing operand at " + pc );
+                }
+                int operand = code[ pc++ ];
+                if ( opcode != CodeSegment.PUSH && ( operand < 0 || operand >= nameCount ) ) {
+                    throw new IOException( file + ": bad name index " + operand +
+                                           " at " + ( pc - 1 ) );
+                }
+            }
+            ++count;
+        }
+        if ( count != instructionCount ) {
+            throw new IOException( file + ": expected " + instructionCount +
+                                   " instructions, found " + count );
+        }
+    }
+
+    private static int padded( int length ) {
+        return ( length + 3 ) & ~3;
+    }
+}
@@ -0,0 +1,90 @@
+package dendron.machine;
+
+import dendron.Errors;
+import dendron.MachineException;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The Machine's value stack, specialized for primitive ints.
+ * Values are never boxed, and the backing array is only replaced
+ * when a push finds it full, so a warmed-up stack performs no
+ * allocation at all.
+ *
+ * @author Nicholas Pembroke
+ */
+final class OperandStack {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] values;
+    private int size;
+
+    /**
+     * Create an empty stack with a small default capacity.
+     */
+    OperandStack() {
+        this.values = new int[ INITIAL_CAPACITY ];
+        this.size = 0;
+    }
+
+    /**
+     * Put a value on the top of the stack, growing the stack if needed.
+     * @param value the value to push
+     */
+    void push( int value ) {
+        if ( size == values.length ) {
+            values = Arrays.copyOf( values, size << 1 );
+        }
+        values[ size++ ] = value;
+    }
+
+    /**
+     * Remove the value on the top of the stack.
+     * @return the value that was on top
+     * @throws MachineException if there is nothing on the stack; the
+     *         running program fills in the instruction
+     */
+    int pop() {
+        if ( size == 0 ) {
+            throw new MachineException( Errors.Type.STACK_UNDERFLOW, null );
+        }
+        return values[ --size ];
+    }
+
+    /**
+     * @return how many values are currently on the stack
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copy the values into a buffer, bottom first.
+     * @param to where the values go
+     */
+    void copyTo( IntBuffer to ) {
+        to.put( values, 0, size );
+    }
+
+    /**
+     * Replace the contents with values copied from a buffer.
+     * @param from the values, bottom first
+     * @param count how many to take
+     */
+    void copyFrom( IntBuffer from, int count ) {
+        if ( values.length < count ) {
+            values = new int[ Math.max( count, INITIAL_CAPACITY ) ];
+        }
+        from.get( values, 0, count );
+        size = count;
+    }
+
+    /**
+     * Discard all values without giving back the backing storage.
+     */
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,283 @@
+package dendron.machine;
+
+import java.util.List;
+
+/**
+ * How many dispatches a program takes and how many operand reads and
+ * writes it makes, so that stack code and register code can be
+ * compared. Dendron programs have no branches, so every instruction
+ * runs exactly once and the counts can be taken from the code alone.
+ *
+ * Accesses are sorted by where the operand lives: the Machine's
+ * operand stack, its variables, registers, or spill slots. Stack,
+ * variable and spill slot accesses are counted as memory traffic, as
+ * they would be on a machine with {@link RegisterProgram#registers()}
+ * real registers. The register interpreter keeps registers and spill
+ * slots in the same array, so it does not itself run spills any
+ * slower than registers.
+ *
+ * @author Nicholas Pembroke
+ */
+public final class OperandTraffic {
+
+    private long dispatches = 0;
+    private long stackReads = 0;
+    private long stackWrites = 0;
+    private long variableReads = 0;
+    private long variableWrites = 0;
+    private long registerReads = 0;
+    private long registerWrites = 0;
+    private long spillReads = 0;
+    private long spillWrites = 0;
+
+    private OperandTraffic() {
+    }
+
+    /**
+     * Count a stack program. A superinstruction is one dispatch, and
+     * the values that pass between the instructions it stands for are
+     * not counted as stack traffic, since it keeps them in locals.
+     * @param program the stack program
+     * @return its counts
+     */
+    public static OperandTraffic of( List< Machine.Instruction > program ) {
+        OperandTraffic traffic = new OperandTraffic();
+        for ( Machine.Instruction instr: program ) {
+            ++traffic.dispatches;
+            if ( instr instanceof Machine.Superinstruction ) {
+                // Only what it takes from below, and leaves, touches the stack.
+                int depth = 0;
+                int lowest = 0;
+                for ( Machine.Instruction part: ( (Machine.Superinstruction) instr ).expand() ) {
+                    OperandTraffic step = new OperandTraffic();
+                    step.count( part );
+                    traffic.variableReads += step.variableReads;
+                    traffic.variableWrites += step.variableWrites;
+                    depth -= step.stackReads;
+                    lowest = Math.min( lowest, depth );
+                    depth += step.stackWrites;
+                }
+                traffic.stackReads -= lowest;
+                traffic.stackWrites += depth - lowest;
+            }
+            else {
+                traffic.count( instr );
+            }
+        }
+        return traffic;
+    }
+
+    private void count( Machine.Instruction instr ) {
+        if ( instr instanceof Machine.PushConst ) {
+            stackWrites += 1;
+        }
+        else if ( instr instanceof Machine.Load ) {
+            variableReads += 1;
+            stackWrites += 1;
+        }
+        else if ( instr instanceof Machine.Store ) {
+            stackReads += 1;
+            variableWrites += 1;
+        }
+        else if ( instr instanceof Machine.Add || instr instanceof Machine.Subtract ||
+                  instr instanceof Machine.Multiply || instr instanceof Machine.Divide ) {
+            stackReads += 2;
+            stackWrites += 1;
+        }
+        else if ( instr instanceof Machine.Negate || instr instanceof Machine.SquareRoot ) {
+            stackReads += 1;
+            stackWrites += 1;
+        }
+        else if ( instr instanceof Machine.Print ) {
+            stackReads += 1;
+        }
+        else if ( instr instanceof Machine.Dup ) {
+            stackReads += 1;
+            stackWrites += 2;
+        }
+        else {
+            throw new IllegalArgumentException( "Cannot count " + instr );
+        }
+    }
+
+    /**
+     * Count a register program.
+     * @param program the register program
+     * @return its counts
+     */
+    public static OperandTraffic of( RegisterProgram program ) {
+        OperandTraffic traffic = new OperandTraffic();
+        int[] code = program.code();
+        int registers = program.registers();
+        for ( int pc = 0; pc < code.length; pc += RegisterProgram.WIDTH ) {
+            ++traffic.dispatches;
+            int x = code[ pc + 1 ];
+            int y = code[ pc + 2 ];
+            int z = code[ pc + 3 ];
+            switch ( code[ pc ] ) {
+                case RegisterProgram.LI:
+                    traffic.write( x, registers );
+                    break;
+                case RegisterProgram.LD:
+                    ++traffic.variableReads;
+                    traffic.write( x, registers );
+                    break;
+                case RegisterProgram.ST:
+                    traffic.read( y, registers );
+                    ++traffic.variableWrites;
+                    break;
+                case RegisterProgram.STI:
+                    ++traffic.variableWrites;
+                    break;
+                case RegisterProgram.ADD:
+                case RegisterProgram.SUB:
+                case RegisterProgram.MUL:
+                case RegisterProgram.DIV:
+                    traffic.read( y, registers );
+                    traffic.read( z, registers );
+                    traffic.write( x, registers );
+                    break;
+                case RegisterProgram.ADDI:
+                case RegisterProgram.SUBI:
+                case RegisterProgram.MULI:
+                case RegisterProgram.DIVI:
+                case RegisterProgram.RSUBI:
+                case RegisterProgram.RDIVI:
+                case RegisterProgram.NEG:
+                case RegisterProgram.SQRT:
+                    traffic.read( y, registers );
+                    traffic.write( x, registers );
+                    break;
+                case RegisterProgram.PRINT:
+                    traffic.read( x, registers );
+                    break;
+                case RegisterProgram.PUSH:
+                    traffic.read( x, registers );
+                    ++traffic.stackWrites;
+                    break;
+                case RegisterProgram.PUSHI:
+                    ++traffic.stackWrites;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return traffic;
+    }
+
+    private void read( int location, int registers ) {
+        if ( location < registers ) {
+            ++registerReads;
+        }
+        else {
+            ++spillReads;
+        }
+    }
+
+    private void write( int location, int registers ) {
+        if ( location < registers ) {
+            ++registerWrites;
+        }
+        else {
+            ++spillWrites;
+        }
+    }
+
+    /**
+     * @param other counts for another program
+     * @return the counts for running this program and then the other
+     */
+    public OperandTraffic plus( OperandTraffic other ) {
+        OperandTraffic sum = new OperandTraffic();
+        sum.dispatches = dispatches + other.dispatches;
+        sum.stackReads = stackReads + other.stackReads;
+        sum.stackWrites = stackWrites + other.stackWrites;
+        sum.variableReads = variableReads + other.variableReads;
+        sum.variableWrites = variableWrites + other.variableWrites;
+        sum.registerReads = registerReads + other.registerReads;
+        sum.registerWrites = registerWrites + other.registerWrites;
+        sum.spillReads = spillReads + other.spillReads;
+        sum.spillWrites = spillWrites + other.spillWrites;
+        return sum;
+    }
+
+    /**
+     * @return how many instructions are dispatched
+     */
+    public long dispatches() {
+        return dispatches;
+    }
+
+    /**
+     * @return how many values are popped or read from the operand stack
+     */
+    public long stackReads() {
+        return stackReads;
+    }
+
+    /**
+     * @return how many values are pushed onto the operand stack
+     */
+    public long stackWrites() {
+        return stackWrites;
+    }
+
+    /**
+     * @return how many variable values are fetched
+     */
+    public long variableReads() {
+        return variableReads;
+    }
+
+    /**
+     * @return how many variables are assigned
+     */
+    public long variableWrites() {
+        return variableWrites;
+    }
+
+    /**
+     * @return how many operands are read from registers
+     */
+    public long registerReads() {
+        return registerReads;
+    }
+
+    /**
+     * @return how many results are written to registers
+     */
+    public long registerWrites() {
+        return registerWrites;
+    }
+
+    /**
+     * @return how many operands are read from spill slots
+     */
+    public long spillReads() {
+        return spillReads;
+    }
+
+    /**
+     * @return how many results are written to spill slots
+     */
+    public long spillWrites() {
+        return spillWrites;
+    }
+
+    /**
+     * @return the stack, variable and spill slot accesses together
+     */
+    public long memoryAccesses() {
+        return stackReads + stackWrites + variableReads + variableWrites +
+               spillReads + spillWrites;
+    }
+
+    @Override
+    public String toString() {
+        return dispatches + " dispatches, " +
+               ( stackReads + stackWrites ) + " stack, " +
+               ( variableReads + variableWrites ) + " variable, " +
+               ( registerReads + registerWrites ) + " register and " +
+               ( spillReads + spillWrites ) + " spill slot accesses";
+    }
+}
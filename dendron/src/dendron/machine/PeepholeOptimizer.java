@@ -0,0 +1,182 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A peephole optimizer for Machine programs. Instructions are copied
+ * to an output list one at a time, and after each one the tail of the
+ * output is matched against these rewrite rules until none applies:
+ * <ul>
+ *     <li>PUSH a PUSH b op becomes PUSH (a op b), except division by zero</li>
+ *     <li>PUSH a NEG and PUSH a SQRT become a single PUSH</li>
+ *     <li>NEG NEG is removed</li>
+ *     <li>PUSH 0 ADD, PUSH 0 SUB, PUSH 1 MUL and PUSH 1 DIV are removed</li>
+ *     <li>STORE x LOAD x becomes DUP STORE x</li>
+ * </ul>
+ * Because a rewrite re-examines the new tail, patterns exposed by an
+ * earlier rewrite are caught in the same pass. Passes are repeated
+ * until nothing more changes.
+ *
+ * @author Nicholas Pembroke
+ */
+public class PeepholeOptimizer {
+
+    private final Map< String, Integer > rewrites = new LinkedHashMap<>();
+    private int originalSize = 0;
+    private int optimizedSize = 0;
+    private int passes = 0;
+
+    /**
+     * Optimize a program. The input list is not modified, and the
+     * report of this optimizer is replaced. Superinstructions are
+     * expanded first, so rewrite after optimizing, not before.
+     * @param program the instructions to optimize
+     * @return a new, equivalent instruction list
+     */
+    public List< Machine.Instruction > optimize( List< Machine.Instruction > program ) {
+        rewrites.clear();
+        passes = 0;
+        List< Machine.Instruction > current = SuperinstructionRewriter.expand( program );
+        originalSize = current.size();
+        int before;
+        do {
+            before = total();
+            current = pass( current );
+            ++passes;
+        } while ( total() != before );
+        optimizedSize = current.size();
+        return current;
+    }
+
+    /**
+     * @return how many rewrites of each kind the last optimize made
+     */
+    public Map< String, Integer > rewrites() {
+        return rewrites;
+    }
+
+    /**
+     * Describe what the last optimize did.
+     * @return a multi-line report of instruction counts and rewrites
+     */
+    public String report() {
+        StringBuilder text = new StringBuilder();
+        text.append( "Peephole: " ).append( originalSize ).append( " -> " )
+            .append( optimizedSize ).append( " instructions in " )
+            .append( passes ).append( passes == 1 ? " pass\n" : " passes\n" );
+        for ( Map.Entry< String, Integer > entry: rewrites.entrySet() ) {
+            text.append( String.format( "%24s : %d\n", entry.getKey(), entry.getValue() ) );
+        }
+        return text.toString();
+    }
+
+    private int total() {
+        int sum = 0;
+        for ( int count: rewrites.values() ) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private void count( String rule ) {
+        rewrites.merge( rule, 1, Integer::sum );
+    }
+
+    private List< Machine.Instruction > pass( List< Machine.Instruction > program ) {
+        List< Machine.Instruction > out = new ArrayList<>( program.size() );
+        for ( Machine.Instruction instr: program ) {
+            out.add( instr );
+            while ( rewriteTail( out ) ) {
+                // keep rewriting the new tail
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Try each rule on the end of the list.
+     * @return true if a rule applied and the list changed
+     */
+    private boolean rewriteTail( List< Machine.Instruction > out ) {
+        int n = out.size();
+        if ( n < 2 ) {
+            return false;
+        }
+        Machine.Instruction last = out.get( n - 1 );
+        Machine.Instruction prev = out.get( n - 2 );
+
+        if ( prev instanceof Machine.PushConst ) {
+            int b = ( (Machine.PushConst) prev ).constant;
+            if ( n >= 3 && out.get( n - 3 ) instanceof Machine.PushConst ) {
+                int a = ( (Machine.PushConst) out.get( n - 3 ) ).constant;
+                Integer folded = fold( a, b, last );
+                if ( folded != null ) {
+                    truncate( out, n - 3 );
+                    out.add( CodeBuffer.pushConstant( folded ) );
+                    count( "constant fold" );
+                    return true;
+                }
+            }
+            if ( last instanceof Machine.Negate ) {
+                truncate( out, n - 2 );
+                out.add( CodeBuffer.pushConstant( -b ) );
+                count( "constant fold" );
+                return true;
+            }
+            if ( last instanceof Machine.SquareRoot ) {
+                truncate( out, n - 2 );
+                out.add( CodeBuffer.pushConstant( (int) Math.round( Math.sqrt( b ) ) ) );
+                count( "constant fold" );
+                return true;
+            }
+            if ( b == 0 && ( last instanceof Machine.Add || last instanceof Machine.Subtract ) ||
+                 b == 1 && ( last instanceof Machine.Multiply || last instanceof Machine.Divide ) ) {
+                truncate( out, n - 2 );
+                count( "identity" );
+                return true;
+            }
+        }
+        if ( prev instanceof Machine.Negate && last instanceof Machine.Negate ) {
+            truncate( out, n - 2 );
+            count( "double negation" );
+            return true;
+        }
+        if ( prev instanceof Machine.Store && last instanceof Machine.Load &&
+             ( (Machine.Store) prev ).name.equals( ( (Machine.Load) last ).varname ) ) {
+            truncate( out, n - 2 );
+            out.add( CodeBuffer.DUP );
+            out.add( prev );
+            count( "store/load" );
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Evaluate a binary instruction on two constants.
+     * @return the result, or null if the instruction is not a binary
+     *         operation or must be left to fail at run time
+     */
+    private static Integer fold( int a, int b, Machine.Instruction op ) {
+        if ( op instanceof Machine.Add ) {
+            return a + b;
+        }
+        if ( op instanceof Machine.Subtract ) {
+            return a - b;
+        }
+        if ( op instanceof Machine.Multiply ) {
+            return a * b;
+        }
+        if ( op instanceof Machine.Divide && b != 0 ) {
+            return a / b;
+        }
+        return null;
+    }
+
+    private static void truncate( List< Machine.Instruction > out, int size ) {
+        out.subList( size, out.size() ).clear();
+    }
+}
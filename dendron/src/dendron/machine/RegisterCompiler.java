@@ -0,0 +1,399 @@
+package dendron.machine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Translate a stack Machine program into three-address register code.
+ *
+ * The translation simulates the stack at compile time. Each value
+ * that would be pushed becomes a virtual register, or just a constant
+ * when it is known. Constants are folded into immediate operands or
+ * evaluated outright, and DUP only copies a name on the simulated
+ * stack. Virtual registers are then mapped onto a fixed number of
+ * registers by linear scan. When all registers are taken, the value
+ * that lives longest is spilled to a slot of its own.
+ *
+ * The allocation models a machine with that many real registers. The
+ * interpreter keeps the spill slots in the same array as the
+ * registers, so a spilled value costs it nothing extra; the limit
+ * shows up only in {@link OperandTraffic}, which counts spill slot
+ * accesses as memory traffic.
+ *
+ * @author Nicholas Pembroke
+ */
+public class RegisterCompiler {
+
+    /** The default number of registers to allocate */
+    public static final int DEFAULT_REGISTERS = 16;
+
+    /** A value on the simulated stack: a virtual register or a constant */
+    private static final class Value {
+        final boolean constant;
+        final int number;
+
+        Value( boolean constant, int number ) {
+            this.constant = constant;
+            this.number = number;
+        }
+    }
+
+    private final int registers;
+    private int[] code = new int[ 64 ];
+    private int length = 0;
+
+    /** Per virtual register: the instruction that defines it, and the last that uses it */
+    private int[] start = new int[ 16 ];
+    private int[] end = new int[ 16 ];
+    private int virtuals = 0;
+
+    private final Map< String, Integer > pool = new HashMap<>();
+    private final List< String > names = new ArrayList<>();
+
+    private RegisterCompiler( int registers ) {
+        this.registers = registers;
+    }
+
+    /**
+     * Compile with the default number of registers.
+     * @param program the stack program
+     * @return the register program
+     * @throws IllegalArgumentException if the program would pop an
+     *         empty stack or contains an unknown instruction
+     */
+    public static RegisterProgram compile( List< Machine.Instruction > program ) {
+        return compile( program, DEFAULT_REGISTERS );
+    }
+
+    /**
+     * Compile with a given number of registers.
+     * @param program the stack program
+     * @param registers how many registers the allocator may use
+     * @return the register program
+     * @throws IllegalArgumentException if the program would pop an
+     *         empty stack or contains an unknown instruction
+     */
+    public static RegisterProgram compile( List< Machine.Instruction > program, int registers ) {
+        if ( registers < 1 ) {
+            throw new IllegalArgumentException( "Need at least one register" );
+        }
+        RegisterCompiler compiler = new RegisterCompiler( registers );
+        compiler.translate( SuperinstructionRewriter.expand( program ) );
+        int spills = compiler.allocate();
+        return new RegisterProgram( Arrays.copyOf( compiler.code, compiler.length ),
+                                    compiler.names.toArray( new String[ 0 ] ),
+                                    registers, spills );
+    }
+
+    ////////////////////////////////////////
+    /////////     Translation         //////
+    ////////////////////////////////////////
+
+    private void translate( List< Machine.Instruction > program ) {
+        Deque< Value > stack = new ArrayDeque<>();
+        int pc = 0;
+        for ( Machine.Instruction instr: program ) {
+            if ( instr instanceof Machine.PushConst ) {
+                stack.push( new Value( true, ( (Machine.PushConst) instr ).constant ) );
+            }
+            else if ( instr instanceof Machine.Load ) {
+                int d = newVirtual();
+                emit( RegisterProgram.LD, d, name( ( (Machine.Load) instr ).varname ), 0 );
+                stack.push( new Value( false, d ) );
+            }
+            else if ( instr instanceof Machine.Store ) {
+                Value v = pop( stack, pc, instr );
+                int n = name( ( (Machine.Store) instr ).name );
+                if ( v.constant ) {
+                    emit( RegisterProgram.STI, n, v.number, 0 );
+                }
+                else {
+                    emit( RegisterProgram.ST, n, use( v.number ), 0 );
+                }
+            }
+            else if ( instr instanceof Machine.Add ) {
+                binary( stack, pc, instr, RegisterProgram.ADD, RegisterProgram.ADDI,
+                        RegisterProgram.ADDI );
+            }
+            else if ( instr instanceof Machine.Subtract ) {
+                binary( stack, pc, instr, RegisterProgram.SUB, RegisterProgram.SUBI,
+                        RegisterProgram.RSUBI );
+            }
+            else if ( instr instanceof Machine.Multiply ) {
+                binary( stack, pc, instr, RegisterProgram.MUL, RegisterProgram.MULI,
+                        RegisterProgram.MULI );
+            }
+            else if ( instr instanceof Machine.Divide ) {
+                binary( stack, pc, instr, RegisterProgram.DIV, RegisterProgram.DIVI,
+                        RegisterProgram.RDIVI );
+            }
+            else if ( instr instanceof Machine.Negate ) {
+                Value v = pop( stack, pc, instr );
+                if ( v.constant ) {
+                    stack.push( new Value( true, -v.number ) );
+                }
+                else {
+                    int a = use( v.number );
+                    int d = newVirtual();
+                    emit( RegisterProgram.NEG, d, a, 0 );
+                    stack.push( new Value( false, d ) );
+                }
+            }
+            else if ( instr instanceof Machine.SquareRoot ) {
+                Value v = pop( stack, pc, instr );
+                if ( v.constant ) {
+                    stack.push( new Value( true, (int) Math.round( Math.sqrt( v.number ) ) ) );
+                }
+                else {
+                    int a = use( v.number );
+                    int d = newVirtual();
+                    emit( RegisterProgram.SQRT, d, a, 0 );
+                    stack.push( new Value( false, d ) );
+                }
+            }
+            else if ( instr instanceof Machine.Print ) {
+                Value v = pop( stack, pc, instr );
+                if ( v.constant ) {
+                    emit( RegisterProgram.PRINTI, v.number, 0, 0 );
+                }
+                else {
+                    emit( RegisterProgram.PRINT, use( v.number ), 0, 0 );
+                }
+            }
+            else if ( instr instanceof Machine.Dup ) {
+                Value v = pop( stack, pc, instr );
+                stack.push( v );
+                stack.push( v );
+            }
+            else {
+                throw new IllegalArgumentException( "Cannot compile " + instr );
+            }
+            ++pc;
+        }
+        // Whatever is left goes onto the Machine's stack, bottom first.
+        while ( !stack.isEmpty() ) {
+            Value v = stack.removeLast();
+            if ( v.constant ) {
+                emit( RegisterProgram.PUSHI, v.number, 0, 0 );
+            }
+            else {
+                emit( RegisterProgram.PUSH, use( v.number ), 0, 0 );
+            }
+        }
+    }
+
+    private void binary( Deque< Value > stack, int pc, Machine.Instruction instr,
+                         int regOp, int immOp, int reverseImmOp ) {
+        Value b = pop( stack, pc, instr );
+        Value a = pop( stack, pc, instr );
+        boolean divide = regOp == RegisterProgram.DIV;
+        if ( a.constant && b.constant && !( divide && b.number == 0 ) ) {
+            int value;
+            switch ( regOp ) {
+                case RegisterProgram.ADD: value = a.number + b.number; break;
+                case RegisterProgram.SUB: value = a.number - b.number; break;
+                case RegisterProgram.MUL: value = a.number * b.number; break;
+                default: value = a.number / b.number; break;
+            }
+            stack.push( new Value( true, value ) );
+            return;
+        }
+        if ( a.constant && b.constant ) {
+            // k / 0 must still fail when it runs
+            int t = newVirtual();
+            emit( RegisterProgram.LI, t, a.number, 0 );
+            a = new Value( false, t );
+        }
+        int d;
+        if ( b.constant ) {
+            int ra = use( a.number );
+            d = newVirtual();
+            emit( immOp, d, ra, b.number );
+        }
+        else if ( a.constant ) {
+            int rb = use( b.number );
+            d = newVirtual();
+            emit( reverseImmOp, d, rb, a.number );
+        }
+        else {
+            int ra = use( a.number );
+            int rb = use( b.number );
+            d = newVirtual();
+            emit( regOp, d, ra, rb );
+        }
+        stack.push( new Value( false, d ) );
+    }
+
+    private static Value pop( Deque< Value > stack, int pc, Machine.Instruction instr ) {
+        if ( stack.isEmpty() ) {
+            throw new IllegalArgumentException(
+                    instr + " at " + pc + " would pop an empty stack" );
+        }
+        return stack.pop();
+    }
+
+    private int name( String name ) {
+        Integer index = pool.get( name );
+        if ( index == null ) {
+            index = names.size();
+            pool.put( name, index );
+            names.add( name );
+        }
+        return index;
+    }
+
+    /**
+     * Create a virtual register defined by the next instruction emitted.
+     */
+    private int newVirtual() {
+        if ( virtuals == start.length ) {
+            start = Arrays.copyOf( start, virtuals << 1 );
+            end = Arrays.copyOf( end, virtuals << 1 );
+        }
+        start[ virtuals ] = length / RegisterProgram.WIDTH;
+        end[ virtuals ] = start[ virtuals ];
+        return virtuals++;
+    }
+
+    /**
+     * Note that the next instruction emitted reads a virtual register.
+     */
+    private int use( int virtual ) {
+        end[ virtual ] = length / RegisterProgram.WIDTH;
+        return virtual;
+    }
+
+    private void emit( int op, int x, int y, int z ) {
+        if ( length + RegisterProgram.WIDTH > code.length ) {
+            code = Arrays.copyOf( code, code.length << 1 );
+        }
+        code[ length++ ] = op;
+        code[ length++ ] = x;
+        code[ length++ ] = y;
+        code[ length++ ] = z;
+    }
+
+    ////////////////////////////////////////
+    /////////     Allocation          //////
+    ////////////////////////////////////////
+
+    /**
+     * Assign every virtual register a register or spill slot by linear
+     * scan, then rewrite the code to use the assignments.
+     * @return how many spill slots were needed
+     */
+    private int allocate() {
+        int[] location = new int[ virtuals ];
+        // Active intervals, the one that ends last first
+        PriorityQueue< Integer > active =
+                new PriorityQueue<>( ( x, y ) -> Integer.compare( end[ y ], end[ x ] ) );
+        // Intervals in order of expiry, to free their registers
+        PriorityQueue< Integer > expiring =
+                new PriorityQueue<>( ( x, y ) -> Integer.compare( end[ x ], end[ y ] ) );
+        Deque< Integer > freeRegisters = new ArrayDeque<>();
+        for ( int r = 0; r < registers; ++r ) {
+            freeRegisters.add( r );
+        }
+        // Spill slots that have been given back, and when each became free
+        List< Integer > freeSpills = new ArrayList<>();
+        Map< Integer, Integer > freeFrom = new HashMap<>();
+        int[] spills = { 0 };
+
+        // Virtual registers are numbered in order of their start.
+        for ( int v = 0; v < virtuals; ++v ) {
+            // A value whose last use is here may give its location to
+            // the value defined here: sources are read before the
+            // destination is written.
+            while ( !expiring.isEmpty() && end[ expiring.peek() ] <= start[ v ] ) {
+                int done = expiring.poll();
+                if ( location[ done ] < registers ) {
+                    active.remove( done );
+                    freeRegisters.add( location[ done ] );
+                }
+                else {
+                    freeSpills.add( location[ done ] );
+                    freeFrom.put( location[ done ], end[ done ] );
+                }
+            }
+            if ( !freeRegisters.isEmpty() ) {
+                location[ v ] = freeRegisters.poll();
+                active.add( v );
+            }
+            else if ( end[ active.peek() ] > end[ v ] ) {
+                // Give the register of the value that lives longest to
+                // v, and spill that value instead.
+                int victim = active.poll();
+                location[ v ] = location[ victim ];
+                location[ victim ] = spillSlot( start[ victim ], freeSpills, freeFrom, spills );
+                active.add( v );
+            }
+            else {
+                location[ v ] = spillSlot( start[ v ], freeSpills, freeFrom, spills );
+            }
+            expiring.add( v );
+        }
+
+        // A spilled value lives in its spill slot for its whole
+        // lifetime, so every reference is rewritten to one location.
+        for ( int pc = 0; pc < length; pc += RegisterProgram.WIDTH ) {
+            switch ( code[ pc ] ) {
+                case RegisterProgram.LI:
+                case RegisterProgram.LD:
+                    code[ pc + 1 ] = location[ code[ pc + 1 ] ];
+                    break;
+                case RegisterProgram.ST:
+                    code[ pc + 2 ] = location[ code[ pc + 2 ] ];
+                    break;
+                case RegisterProgram.ADD:
+                case RegisterProgram.SUB:
+                case RegisterProgram.MUL:
+                case RegisterProgram.DIV:
+                    code[ pc + 1 ] = location[ code[ pc + 1 ] ];
+                    code[ pc + 2 ] = location[ code[ pc + 2 ] ];
+                    code[ pc + 3 ] = location[ code[ pc + 3 ] ];
+                    break;
+                case RegisterProgram.ADDI:
+                case RegisterProgram.SUBI:
+                case RegisterProgram.MULI:
+                case RegisterProgram.DIVI:
+                case RegisterProgram.RSUBI:
+                case RegisterProgram.RDIVI:
+                case RegisterProgram.NEG:
+                case RegisterProgram.SQRT:
+                    code[ pc + 1 ] = location[ code[ pc + 1 ] ];
+                    code[ pc + 2 ] = location[ code[ pc + 2 ] ];
+                    break;
+                case RegisterProgram.PRINT:
+                case RegisterProgram.PUSH:
+                    code[ pc + 1 ] = location[ code[ pc + 1 ] ];
+                    break;
+                default:
+                    break;
+            }
+        }
+        return spills[ 0 ];
+    }
+
+    /**
+     * Find a spill slot that is free for a value's whole lifetime,
+     * making a new one if none is.
+     * @param from the instruction that defines the value
+     */
+    private int spillSlot( int from, List< Integer > freeSpills,
+                           Map< Integer, Integer > freeFrom, int[] spills ) {
+        for ( int i = 0; i < freeSpills.size(); ++i ) {
+            int slot = freeSpills.get( i );
+            if ( freeFrom.get( slot ) <= from ) {
+                freeSpills.remove( i );
+                return slot;
+            }
+        }
+        return registers + spills[ 0 ]++;
+    }
+}
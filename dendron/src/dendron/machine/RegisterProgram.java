@@ -0,0 +1,116 @@
+package dendron.machine;
+
+/**
+ * A Machine program translated to three-address register code by
+ * {@link RegisterCompiler}. Every instruction is four ints wide:
+ * an opcode and up to three operands.
+ * <pre>
+ *     LI     d k        d := k
+ *     LD     d n        d := variable n
+ *     ST     n s        variable n := s
+ *     STI    n k        variable n := k
+ *     ADD    d a b      d := a + b       (likewise SUB, MUL, DIV)
+ *     ADDI   d a k      d := a + k       (likewise SUBI, MULI, DIVI)
+ *     RSUBI  d a k      d := k - a
+ *     RDIVI  d a k      d := k / a
+ *     NEG    d a        d := -a
+ *     SQRT   d a        d := round( sqrt( a ) )
+ *     PRINT  a          print a
+ *     PRINTI k          print k
+ *     PUSH   a          push a onto the Machine's stack
+ *     PUSHI  k          push k onto the Machine's stack
+ * </pre>
+ * d, a, b and s index the register file, whose first
+ * {@link #registers()} entries are the allocated registers and whose
+ * remaining entries are spill slots. n indexes the name pool. The
+ * interpreter treats the two alike; only {@link OperandTraffic} tells
+ * them apart.
+ *
+ * @author Nicholas Pembroke
+ */
+public class RegisterProgram {
+
+    public static final int LI = 0;
+    public static final int LD = 1;
+    public static final int ST = 2;
+    public static final int STI = 3;
+    public static final int ADD = 4;
+    public static final int SUB = 5;
+    public static final int MUL = 6;
+    public static final int DIV = 7;
+    public static final int ADDI = 8;
+    public static final int SUBI = 9;
+    public static final int MULI = 10;
+    public static final int DIVI = 11;
+    public static final int RSUBI = 12;
+    public static final int RDIVI = 13;
+    public static final int NEG = 14;
+    public static final int SQRT = 15;
+    public static final int PRINT = 16;
+    public static final int PRINTI = 17;
+    public static final int PUSH = 18;
+    public static final int PUSHI = 19;
+
+    /** The number of ints in each instruction */
+    public static final int WIDTH = 4;
+
+    private final int[] code;
+    private final String[] names;
+    private final int registers;
+    private final int spillSlots;
+
+    /**
+     * @param code the instructions, WIDTH ints each
+     * @param names the name pool
+     * @param registers how many registers the allocator had
+     * @param spillSlots how many spill slots follow the registers
+     */
+    RegisterProgram( int[] code, String[] names, int registers, int spillSlots ) {
+        this.code = code;
+        this.names = names;
+        this.registers = registers;
+        this.spillSlots = spillSlots;
+    }
+
+    /**
+     * @return the instructions (not a copy)
+     */
+    public int[] code() {
+        return code;
+    }
+
+    /**
+     * @return the name pool (not a copy)
+     */
+    public String[] names() {
+        return names;
+    }
+
+    /**
+     * @return how many instructions there are
+     */
+    public int instructionCount() {
+        return code.length / WIDTH;
+    }
+
+    /**
+     * @return how many registers the allocator could use
+     */
+    public int registers() {
+        return registers;
+    }
+
+    /**
+     * @return how many spill slots follow the registers
+     */
+    public int spillSlots() {
+        return spillSlots;
+    }
+
+    /**
+     * @return the size of the register file: registers plus spill slots
+     */
+    public int fileSize() {
+        return registers + spillSlots;
+    }
+}
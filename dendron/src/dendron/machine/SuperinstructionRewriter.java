@@ -0,0 +1,205 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replace common instruction sequences in a Machine program with
+ * superinstructions, so that each sequence costs one dispatch instead
+ * of several:
+ * <ul>
+ *     <li>LOAD x LOAD y ADD, SUBTRACT or MULTIPLY</li>
+ *     <li>LOAD x ADD and LOAD x MULTIPLY</li>
+ *     <li>PUSHCONST k ADD, SUBTRACT or MULTIPLY</li>
+ *     <li>LOAD x STORE y and PUSHCONST k STORE y</li>
+ * </ul>
+ * The program is scanned once from the front, and at each position
+ * the longest sequence that matches is replaced.
+ *
+ * Given an {@link InstructionProfile} from a run of typical programs,
+ * only the sequences that made up a large enough share of the
+ * executed instructions are replaced.
+ *
+ * Anything that translates an instruction list into another form
+ * should first call {@link #expand(List)}, which turns the
+ * superinstructions back into ordinary ones.
+ *
+ * @author Nicholas Pembroke
+ */
+public class SuperinstructionRewriter {
+
+    /** The sequences that have superinstructions, longest first */
+    private static final String[] SEQUENCES = {
+            "Load Load Add", "Load Load Subtract", "Load Load Multiply",
+            "Load Add", "Load Multiply",
+            "PushConst Add", "PushConst Subtract", "PushConst Multiply",
+            "Load Store", "PushConst Store"
+    };
+
+    /**
+     * The share of executed instructions a sequence must make up for a
+     * profile-guided rewriter to replace it, unless told otherwise
+     */
+    public static final double DEFAULT_MIN_SHARE = 0.02;
+
+    private final List< String[] > enabled = new ArrayList<>();
+    private final Map< String, Integer > rewrites = new LinkedHashMap<>();
+    private int originalSize = 0;
+    private int rewrittenSize = 0;
+
+    /**
+     * Create a rewriter that replaces every sequence it knows.
+     */
+    public SuperinstructionRewriter() {
+        for ( String sequence: SEQUENCES ) {
+            enabled.add( sequence.split( " " ) );
+        }
+    }
+
+    /**
+     * Create a rewriter guided by a profile.
+     * @param profile instruction counts from typical runs
+     * @param minShare the smallest fraction of all executed
+     *                 instructions a sequence must account for to
+     *                 be replaced
+     */
+    public SuperinstructionRewriter( InstructionProfile profile, double minShare ) {
+        long total = profile.total();
+        for ( String sequence: SEQUENCES ) {
+            String[] words = sequence.split( " " );
+            if ( total > 0 && words.length * profile.count( sequence ) >= minShare * total ) {
+                enabled.add( words );
+            }
+        }
+    }
+
+    /**
+     * Replace sequences with superinstructions. The input list is not
+     * modified, and the report of this rewriter is replaced.
+     * @param program the instructions to rewrite
+     * @return a new, equivalent instruction list
+     */
+    public List< Machine.Instruction > rewrite( List< Machine.Instruction > program ) {
+        rewrites.clear();
+        originalSize = program.size();
+        List< Machine.Instruction > out = new ArrayList<>( program.size() );
+        int i = 0;
+        while ( i < program.size() ) {
+            int used = 1;
+            Machine.Instruction replacement = program.get( i );
+            for ( String[] words: enabled ) {
+                if ( matches( program, i, words ) ) {
+                    replacement = fuse( program, i, words );
+                    used = words.length;
+                    rewrites.merge( replacement.getClass().getSimpleName(), 1, Integer::sum );
+                    break;
+                }
+            }
+            out.add( replacement );
+            i += used;
+        }
+        rewrittenSize = out.size();
+        return out;
+    }
+
+    /**
+     * @return how many superinstructions of each kind the last rewrite made
+     */
+    public Map< String, Integer > rewrites() {
+        return rewrites;
+    }
+
+    /**
+     * Describe what the last rewrite did.
+     * @return a multi-line report of instruction counts and rewrites
+     */
+    public String report() {
+        StringBuilder text = new StringBuilder();
+        text.append( "Superinstructions: " ).append( originalSize ).append( " -> " )
+            .append( rewrittenSize ).append( " instructions\n" );
+        for ( Map.Entry< String, Integer > entry: rewrites.entrySet() ) {
+            text.append( String.format( "%24s : %d\n", entry.getKey(), entry.getValue() ) );
+        }
+        return text.toString();
+    }
+
+    /**
+     * Replace every superinstruction with the instructions it stands for.
+     * @param program a program that may contain superinstructions
+     * @return the program itself if it has none, or else a new list
+     */
+    public static List< Machine.Instruction > expand( List< Machine.Instruction > program ) {
+        boolean any = false;
+        for ( Machine.Instruction instr: program ) {
+            any |= instr instanceof Machine.Superinstruction;
+        }
+        if ( !any ) {
+            return program;
+        }
+        List< Machine.Instruction > plain = new ArrayList<>( program.size() * 2 );
+        for ( Machine.Instruction instr: program ) {
+            if ( instr instanceof Machine.Superinstruction ) {
+                plain.addAll( ( (Machine.Superinstruction) instr ).expand() );
+            }
+            else {
+                plain.add( instr );
+            }
+        }
+        return plain;
+    }
+
+    private static boolean matches( List< Machine.Instruction > program, int at, String[] words ) {
+        if ( at + words.length > program.size() ) {
+            return false;
+        }
+        for ( int k = 0; k < words.length; ++k ) {
+            if ( !program.get( at + k ).getClass().getSimpleName().equals( words[ k ] ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the superinstruction for a matched sequence.
+     */
+    private static Machine.Instruction fuse( List< Machine.Instruction > program, int at, String[] words ) {
+        Machine.Instruction first = program.get( at );
+        Machine.Instruction second = program.get( at + 1 );
+        Machine.Instruction last = program.get( at + words.length - 1 );
+        if ( words.length == 3 ) {
+            String x = ( (Machine.Load) first ).varname;
+            String y = ( (Machine.Load) second ).varname;
+            if ( last instanceof Machine.Add ) {
+                return new Machine.LoadLoadAdd( x, y );
+            }
+            if ( last instanceof Machine.Subtract ) {
+                return new Machine.LoadLoadSub( x, y );
+            }
+            return new Machine.LoadLoadMul( x, y );
+        }
+        if ( first instanceof Machine.Load ) {
+            String x = ( (Machine.Load) first ).varname;
+            if ( last instanceof Machine.Add ) {
+                return new Machine.LoadAdd( x );
+            }
+            if ( last instanceof Machine.Multiply ) {
+                return new Machine.LoadMul( x );
+            }
+            return new Machine.LoadStore( x, ( (Machine.Store) last ).name );
+        }
+        int k = ( (Machine.PushConst) first ).constant;
+        if ( last instanceof Machine.Add ) {
+            return new Machine.PushConstAdd( k );
+        }
+        if ( last instanceof Machine.Subtract ) {
+            return new Machine.PushConstSub( k );
+        }
+        if ( last instanceof Machine.Multiply ) {
+            return new Machine.PushConstMul( k );
+        }
+        return new Machine.PushConstStore( k, ( (Machine.Store) last ).name );
+    }
+}
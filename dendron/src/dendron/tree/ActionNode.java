@@ -1,5 +1,7 @@
 package dendron.tree;
 
+import dendron.io.OutputSink;
+
 import java.util.Map;
 
 /**
@@ -15,6 +17,15 @@ public interface ActionNode extends DendronNode {
      * Perform the action represented by this node. Actions are
      * things like changing variable values.
      * @param symTab the table where variable values are stored
+     * @param out where printed values go
+     */
+    void execute( Map< String, Integer > symTab, OutputSink out );
+
+    /**
+     * Convert this action, once, into a closure whose variables are
+     * resolved to slots in the given frame.
+     * @param frame the frame that will hold the variables
+     * @return a closure equivalent to {@link #execute(Map, OutputSink)}
      */
-    void execute( Map< String, Integer > symTab );
+    BoundAction bind( BoundFrame frame );
 }
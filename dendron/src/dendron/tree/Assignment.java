@@ -0,0 +1,67 @@
+package dendron.tree;
+
+import dendron.io.OutputSink;
+import dendron.machine.CodeBuffer;
+
+import java.util.Map;
+
+/**
+ * The action of giving a variable the value of an expression (:=).
+ *
+ * @author Nicholas Pembroke
+ */
+public class Assignment implements ActionNode {
+
+    private final String ident;
+    private final ExpressionNode rhs;
+
+    /**
+     * @param ident the variable being assigned
+     * @param rhs the expression whose value it gets
+     */
+    public Assignment( String ident, ExpressionNode rhs ) {
+        this.ident = ident;
+        this.rhs = rhs;
+    }
+
+    /**
+     * @return the variable being assigned
+     */
+    public String getIdent() {
+        return ident;
+    }
+
+    /**
+     * @return the expression whose value is assigned
+     */
+    public ExpressionNode getRhs() {
+        return rhs;
+    }
+
+    @Override
+    public void infixDisplay() {
+        System.out.print( ident + " := " );
+        rhs.infixDisplay();
+    }
+
+    @Override
+    public void emit( CodeBuffer code ) {
+        rhs.emit( code );
+        code.store( ident );
+    }
+
+    @Override
+    public void execute( Map< String, Integer > symTab, OutputSink out ) {
+        symTab.put( ident, rhs.evaluate( symTab ) );
+    }
+
+    @Override
+    public BoundAction bind( BoundFrame frame ) {
+        BoundExpression e = rhs.bind( frame );
+        int slot = frame.slotFor( ident );
+        return f -> {
+            f.values[ slot ] = e.evaluate( f );
+            f.defined[ slot ] = true;
+        };
+    }
+}
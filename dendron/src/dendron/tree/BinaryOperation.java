@@ -0,0 +1,147 @@
+package dendron.tree;
+
+import dendron.Errors;
+import dendron.InterpretException;
+import dendron.machine.CodeBuffer;
+
+import java.util.Map;
+
+/**
+ * An expression that combines the values of two sub-expressions
+ * with one of the operators +, -, * or /.
+ *
+ * @author Nicholas Pembroke
+ */
+public class BinaryOperation implements ExpressionNode {
+
+    /** The operator tokens this node accepts */
+    public static final String ADD = "+";
+    public static final String SUB = "-";
+    public static final String MUL = "*";
+    public static final String DIV = "/";
+
+    private final String operator;
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+
+    /**
+     * @param operator one of ADD, SUB, MUL or DIV
+     * @param left the first operand
+     * @param right the second operand
+     */
+    public BinaryOperation( String operator, ExpressionNode left, ExpressionNode right ) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * @param token a source token
+     * @return true if the token is a binary operator
+     */
+    public static boolean isOperator( String token ) {
+        return token.equals( ADD ) || token.equals( SUB ) ||
+               token.equals( MUL ) || token.equals( DIV );
+    }
+
+    /**
+     * @return the operator token
+     */
+    public String getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return the first operand
+     */
+    public ExpressionNode getLeft() {
+        return left;
+    }
+
+    /**
+     * @return the second operand
+     */
+    public ExpressionNode getRight() {
+        return right;
+    }
+
+    /**
+     * Apply the operator to two values.
+     * Division by zero is reported as an error.
+     * @param operator one of ADD, SUB, MUL and DIV
+     * @param op1 the first operand
+     * @param op2 the second operand
+     * @return the result
+     * @throws InterpretException if dividing by zero
+     */
+    public static int apply( String operator, int op1, int op2 ) {
+        switch ( operator ) {
+            case ADD: return op1 + op2;
+            case SUB: return op1 - op2;
+            case MUL: return op1 * op2;
+            default:
+                if ( op2 == 0 ) {
+                    throw new InterpretException( Errors.Type.DIVIDE_BY_ZERO, null );
+                }
+                return op1 / op2;
+        }
+    }
+
+    @Override
+    public void infixDisplay() {
+        ExpressionWalk.display( this );
+    }
+
+    @Override
+    public void emit( CodeBuffer code ) {
+        ExpressionWalk.emit( this, code );
+    }
+
+    /**
+     * Append the instruction for the operator alone, once the
+     * operands' instructions are in place.
+     * @param code where the instruction goes
+     */
+    void emitOperator( CodeBuffer code ) {
+        switch ( operator ) {
+            case ADD: code.emit( CodeBuffer.ADD ); break;
+            case SUB: code.emit( CodeBuffer.SUBTRACT ); break;
+            case MUL: code.emit( CodeBuffer.MULTIPLY ); break;
+            default: code.emit( CodeBuffer.DIVIDE ); break;
+        }
+    }
+
+    @Override
+    public int evaluate( Map< String, Integer > symTab ) {
+        return ExpressionWalk.evaluate( this, symTab );
+    }
+
+    @Override
+    public BoundExpression bind( BoundFrame frame ) {
+        return ExpressionWalk.bind( this, frame );
+    }
+
+    /**
+     * Bind to a closure specialized for this operator, so the
+     * operator is never examined again.
+     * @param l the bound first operand
+     * @param r the bound second operand
+     * @return the closure
+     */
+    BoundExpression bindOperator( BoundExpression l, BoundExpression r ) {
+        switch ( operator ) {
+            case ADD: return f -> l.evaluate( f ) + r.evaluate( f );
+            case SUB: return f -> l.evaluate( f ) - r.evaluate( f );
+            case MUL: return f -> l.evaluate( f ) * r.evaluate( f );
+            default:
+                return f -> {
+                    int op1 = l.evaluate( f );
+                    int op2 = r.evaluate( f );
+                    if ( op2 == 0 ) {
+                        throw new InterpretException( Errors.Type.DIVIDE_BY_ZERO, null );
+                    }
+                    return op1 / op2;
+                };
+        }
+    }
+}
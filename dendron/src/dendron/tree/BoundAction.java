@@ -0,0 +1,16 @@
+package dendron.tree;
+
+/**
+ * An ActionNode that has been converted to a closure, with its
+ * variables resolved to slots in a BoundFrame.
+ *
+ * @author Nicholas Pembroke
+ */
+@FunctionalInterface
+public interface BoundAction {
+    /**
+     * Perform the action.
+     * @param frame the frame the action was bound to
+     */
+    void execute( BoundFrame frame );
+}
@@ -0,0 +1,17 @@
+package dendron.tree;
+
+/**
+ * An ExpressionNode that has been converted to a closure, with its
+ * variables resolved to slots in a BoundFrame.
+ *
+ * @author Nicholas Pembroke
+ */
+@FunctionalInterface
+public interface BoundExpression {
+    /**
+     * Evaluate the expression.
+     * @param frame the frame the expression was bound to
+     * @return the result of the evaluation
+     */
+    int evaluate( BoundFrame frame );
+}
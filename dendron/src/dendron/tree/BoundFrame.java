@@ -0,0 +1,74 @@
+package dendron.tree;
+
+import dendron.io.OutputSink;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The variable storage for a parse tree that has been bound into
+ * closures. Each variable name is given a slot when the tree is
+ * bound, so running the closures indexes an array and never looks
+ * a name up.
+ *
+ * @author Nicholas Pembroke
+ */
+public final class BoundFrame {
+
+    private final Map< String, Integer > slots = new HashMap<>();
+    private String[] names = new String[ 8 ];
+    int[] values = new int[ 8 ];
+    boolean[] defined = new boolean[ 8 ];
+    OutputSink out = OutputSink.standardOutput();
+
+    /**
+     * Give a variable a slot, reusing its slot if it already has one.
+     * @param name the variable name
+     * @return the variable's slot
+     */
+    int slotFor( String name ) {
+        Integer slot = slots.get( name );
+        if ( slot == null ) {
+            slot = slots.size();
+            slots.put( name, slot );
+            if ( slot == values.length ) {
+                names = Arrays.copyOf( names, slot << 1 );
+                values = Arrays.copyOf( values, slot << 1 );
+                defined = Arrays.copyOf( defined, slot << 1 );
+            }
+            names[ slot ] = name;
+        }
+        return slot;
+    }
+
+    /**
+     * @param slot a slot handed out by this frame
+     * @return the name of the variable in that slot
+     */
+    String nameOf( int slot ) {
+        return names[ slot ];
+    }
+
+    /**
+     * Forget all variable values, keeping the slot assignments.
+     */
+    public void clear() {
+        Arrays.fill( defined, false );
+    }
+
+    /**
+     * Copy out the variables that currently have values, in the same
+     * form as the tree interpreter's symbol table.
+     * @return a map from variable name to value
+     */
+    public Map< String, Integer > toMap() {
+        Map< String, Integer > table = new HashMap<>();
+        for ( Map.Entry< String, Integer > entry: slots.entrySet() ) {
+            if ( defined[ entry.getValue() ] ) {
+                table.put( entry.getKey(), values[ entry.getValue() ] );
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,70 @@
+package dendron.tree;
+
+import dendron.io.OutputSink;
+import dendron.jfr.InterpretEvent;
+
+import java.util.Map;
+
+/**
+ * A parse tree converted, once, into a tree of closures with every
+ * variable resolved to a slot and every operator chosen in advance.
+ * It may be run any number of times; each run starts with no
+ * variables defined.
+ *
+ * @author Nicholas Pembroke
+ */
+public class BoundProgram {
+
+    private final BoundFrame frame = new BoundFrame();
+    private final BoundAction action;
+    private final int statements;
+
+    /**
+     * Bind a program.
+     * @param program the root of the parse tree
+     */
+    public BoundProgram( ActionNode program ) {
+        this.action = program.bind( frame );
+        this.statements = program instanceof Program
+                ? ( (Program) program ).getActions().size() : 1;
+    }
+
+    /**
+     * Run the program from a state with no variables defined,
+     * printing to this thread's standard output sink.
+     */
+    public void run() {
+        run( OutputSink.standardOutput() );
+    }
+
+    /**
+     * Run the program from a state with no variables defined.
+     * @param out where printed values go; it is flushed at the end
+     */
+    public void run( OutputSink out ) {
+        InterpretEvent event = new InterpretEvent();
+        event.begin();
+        frame.clear();
+        frame.out = out;
+        try {
+            action.execute( frame );
+        }
+        catch ( RuntimeException e ) {
+            event.failed = true;
+            throw e;
+        }
+        finally {
+            out.flush();
+            event.statements = statements;
+            event.form = "closures";
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the variables defined by the last run and their values
+     */
+    public Map< String, Integer > symbolTable() {
+        return frame.toMap();
+    }
+}
@@ -0,0 +1,50 @@
+package dendron.tree;
+
+import dendron.machine.CodeBuffer;
+
+import java.util.Map;
+
+/**
+ * An expression that is a literal integer value.
+ *
+ * @author Nicholas Pembroke
+ */
+public class Constant implements ExpressionNode {
+
+    private final int value;
+
+    /**
+     * @param value the literal value
+     */
+    public Constant( int value ) {
+        this.value = value;
+    }
+
+    /**
+     * @return the literal value
+     */
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public void infixDisplay() {
+        System.out.print( value );
+    }
+
+    @Override
+    public void emit( CodeBuffer code ) {
+        code.pushConst( value );
+    }
+
+    @Override
+    public int evaluate( Map< String, Integer > symTab ) {
+        return value;
+    }
+
+    @Override
+    public BoundExpression bind( BoundFrame frame ) {
+        int value = this.value;
+        return f -> value;
+    }
+}
@@ -1,6 +1,7 @@
 package dendron.tree;
 
 import java.util.List;
+import dendron.machine.CodeBuffer;
 import dendron.machine.Machine;
 
 /**
@@ -18,12 +19,23 @@ public interface DendronNode {
      */
     void infixDisplay();
 
+    /**
+     * Append the instructions that, when executed, represent the
+     * intent of this DendronNode and its descendants.
+     * @param code where the instructions go
+     */
+    void emit( CodeBuffer code );
+
     /**
      * Generate a list of instructions that, when executed, represents
      * the intent of this DendronNode and its descendants.
      * @return the Machine Instructions for this node
      */
-    List<  Machine.Instruction> emit();
+    default List<  Machine.Instruction> emit() {
+        CodeBuffer code = new CodeBuffer();
+        emit( code );
+        return code.toList();
+    }
 }
 
 
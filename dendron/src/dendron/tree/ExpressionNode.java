@@ -17,4 +17,12 @@ public interface ExpressionNode extends DendronNode {
      * @return the result of the evaluation
      */
     int evaluate( Map< String, Integer > symTab );
+
+    /**
+     * Convert this expression, once, into a closure whose variables
+     * are resolved to slots in the given frame.
+     * @param frame the frame that will hold the variables
+     * @return a closure equivalent to {@link #evaluate(Map)}
+     */
+    BoundExpression bind( BoundFrame frame );
 }
@@ -0,0 +1,365 @@
+package dendron.tree;
+
+import dendron.machine.CodeBuffer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Walks over expression trees that keep the nodes still to be visited
+ * on an explicit stack rather than the Java call stack, so that an
+ * expression nested to any depth the parser accepts can also be
+ * displayed, compiled, evaluated, bound and optimized. Constants,
+ * variables and expression types this package does not know are
+ * treated as leaves and asked to do the work themselves.
+ *
+ * Compiling and evaluating are done for every statement, and most
+ * expressions are shallow, so those two recurse while they are less
+ * than {@link #MAX_RECURSION} deep, which needs no stack to be
+ * allocated, and walk whatever lies deeper with an explicit stack.
+ *
+ * @author Nicholas Pembroke
+ */
+final class ExpressionWalk {
+
+    /**
+     * How deep a bound expression may nest closures. A deeper one is
+     * bound to a postfix sequence evaluated on a stack instead.
+     */
+    static final int MAX_CLOSURE_DEPTH = 256;
+
+    /** How deep compiling and evaluating recurse before walking instead */
+    static final int MAX_RECURSION = 256;
+
+    private ExpressionWalk() {
+    }
+
+    /**
+     * What to do at each node of a walk.
+     */
+    @FunctionalInterface
+    interface Visitor {
+        /**
+         * Called when the walk reaches a node, before its operands.
+         * @param node the node
+         * @return true to walk the operands and then leave the node,
+         *         false to skip both
+         */
+        default boolean enter( ExpressionNode node ) {
+            return true;
+        }
+
+        /**
+         * Called once the node's operands have been walked, left first.
+         * @param node the node
+         */
+        void leave( ExpressionNode node );
+    }
+
+    /**
+     * A growable stack of ints, for the values a walk computes.
+     */
+    static final class Values {
+        private int[] values = new int[ 16 ];
+        private int size = 0;
+
+        void push( int value ) {
+            if ( size == values.length ) {
+                values = Arrays.copyOf( values, size << 1 );
+            }
+            values[ size++ ] = value;
+        }
+
+        int pop() {
+            return values[ --size ];
+        }
+    }
+
+    /**
+     * Visit every node of an expression, each after its operands.
+     * @param root the expression
+     * @param visitor what to do at each node
+     */
+    static void walk( ExpressionNode root, Visitor visitor ) {
+        ExpressionNode[] nodes = new ExpressionNode[ 16 ];
+        boolean[] entered = new boolean[ 16 ];
+        nodes[ 0 ] = root;
+        int top = 1;
+        while ( top > 0 ) {
+            ExpressionNode node = nodes[ --top ];
+            if ( entered[ top ] ) {
+                visitor.leave( node );
+                continue;
+            }
+            if ( !visitor.enter( node ) ) {
+                continue;
+            }
+            if ( top + 3 > nodes.length ) {
+                nodes = Arrays.copyOf( nodes, nodes.length << 1 );
+                entered = Arrays.copyOf( entered, entered.length << 1 );
+            }
+            nodes[ top ] = node;
+            entered[ top++ ] = true;
+            // The right operand goes on first so the left is walked first.
+            if ( node instanceof BinaryOperation ) {
+                nodes[ top ] = ( (BinaryOperation) node ).getRight();
+                entered[ top++ ] = false;
+                nodes[ top ] = ( (BinaryOperation) node ).getLeft();
+                entered[ top++ ] = false;
+            }
+            else if ( node instanceof UnaryOperation ) {
+                nodes[ top ] = ( (UnaryOperation) node ).getExpr();
+                entered[ top++ ] = false;
+            }
+        }
+    }
+
+    /**
+     * @param node an expression node
+     * @return true if it has operands for a walk to visit
+     */
+    static boolean isOperation( ExpressionNode node ) {
+        return node instanceof BinaryOperation || node instanceof UnaryOperation;
+    }
+
+    /**
+     * Do the work of {@link DendronNode#infixDisplay()}.
+     * @param root the expression
+     */
+    static void display( ExpressionNode root ) {
+        Deque< Object > pending = new ArrayDeque<>();
+        pending.push( root );
+        while ( !pending.isEmpty() ) {
+            Object item = pending.pop();
+            if ( item instanceof String ) {
+                System.out.print( item );
+            }
+            else if ( item instanceof BinaryOperation ) {
+                BinaryOperation op = (BinaryOperation) item;
+                System.out.print( "( " );
+                pending.push( " )" );
+                pending.push( op.getRight() );
+                pending.push( " " + op.getOperator() + " " );
+                pending.push( op.getLeft() );
+            }
+            else if ( item instanceof UnaryOperation ) {
+                UnaryOperation op = (UnaryOperation) item;
+                System.out.print( op.getOperator().equals( UnaryOperation.NEG ) ? "-" : "#" );
+                pending.push( op.getExpr() );
+            }
+            else {
+                ( (ExpressionNode) item ).infixDisplay();
+            }
+        }
+    }
+
+    /**
+     * Do the work of {@link DendronNode#emit(CodeBuffer)}.
+     * @param root the expression
+     * @param code where the instructions go
+     */
+    static void emit( ExpressionNode root, CodeBuffer code ) {
+        emit( root, code, MAX_RECURSION );
+    }
+
+    private static void emit( ExpressionNode node, CodeBuffer code, int depth ) {
+        if ( depth == 0 ) {
+            emitWalk( node, code );
+        }
+        else if ( node instanceof BinaryOperation ) {
+            BinaryOperation op = (BinaryOperation) node;
+            emit( op.getLeft(), code, depth - 1 );
+            emit( op.getRight(), code, depth - 1 );
+            op.emitOperator( code );
+        }
+        else if ( node instanceof UnaryOperation ) {
+            UnaryOperation op = (UnaryOperation) node;
+            emit( op.getExpr(), code, depth - 1 );
+            op.emitOperator( code );
+        }
+        else {
+            node.emit( code );
+        }
+    }
+
+    private static void emitWalk( ExpressionNode root, CodeBuffer code ) {
+        walk( root, node -> {
+            if ( node instanceof BinaryOperation ) {
+                ( (BinaryOperation) node ).emitOperator( code );
+            }
+            else if ( node instanceof UnaryOperation ) {
+                ( (UnaryOperation) node ).emitOperator( code );
+            }
+            else {
+                node.emit( code );
+            }
+        } );
+    }
+
+    /**
+     * Do the work of {@link ExpressionNode#evaluate(Map)}.
+     * @param root the expression
+     * @param symTab the variables' values
+     * @return the expression's value
+     */
+    static int evaluate( ExpressionNode root, Map< String, Integer > symTab ) {
+        return evaluate( root, symTab, MAX_RECURSION );
+    }
+
+    private static int evaluate( ExpressionNode node, Map< String, Integer > symTab,
+                                 int depth ) {
+        if ( depth == 0 ) {
+            return evaluateWalk( node, symTab );
+        }
+        if ( node instanceof BinaryOperation ) {
+            BinaryOperation op = (BinaryOperation) node;
+            int op1 = evaluate( op.getLeft(), symTab, depth - 1 );
+            int op2 = evaluate( op.getRight(), symTab, depth - 1 );
+            return BinaryOperation.apply( op.getOperator(), op1, op2 );
+        }
+        if ( node instanceof UnaryOperation ) {
+            UnaryOperation op = (UnaryOperation) node;
+            return UnaryOperation.apply( op.getOperator(),
+                                         evaluate( op.getExpr(), symTab, depth - 1 ) );
+        }
+        return node.evaluate( symTab );
+    }
+
+    private static int evaluateWalk( ExpressionNode root, Map< String, Integer > symTab ) {
+        Values values = new Values();
+        walk( root, node -> {
+            if ( node instanceof BinaryOperation ) {
+                int op2 = values.pop();
+                int op1 = values.pop();
+                values.push( BinaryOperation.apply(
+                        ( (BinaryOperation) node ).getOperator(), op1, op2 ) );
+            }
+            else if ( node instanceof UnaryOperation ) {
+                values.push( UnaryOperation.apply(
+                        ( (UnaryOperation) node ).getOperator(), values.pop() ) );
+            }
+            else {
+                values.push( node.evaluate( symTab ) );
+            }
+        } );
+        return values.pop();
+    }
+
+    /**
+     * Do the work of {@link ExpressionNode#bind(BoundFrame)}. An
+     * expression no deeper than {@link #MAX_CLOSURE_DEPTH} is bound
+     * to nested closures, one per operator; a deeper one is bound to
+     * its leaves' closures and operators in postfix order, evaluated
+     * on a stack, so that running it cannot overflow the Java stack.
+     * Either way variables get their slots in the order they appear.
+     * @param root the expression
+     * @param frame the frame that will hold the variables
+     * @return the closure
+     */
+    static BoundExpression bind( ExpressionNode root, BoundFrame frame ) {
+        if ( depth( root ) <= MAX_CLOSURE_DEPTH ) {
+            Deque< BoundExpression > bound = new ArrayDeque<>();
+            walk( root, node -> {
+                if ( node instanceof BinaryOperation ) {
+                    BoundExpression r = bound.pop();
+                    BoundExpression l = bound.pop();
+                    bound.push( ( (BinaryOperation) node ).bindOperator( l, r ) );
+                }
+                else if ( node instanceof UnaryOperation ) {
+                    bound.push( ( (UnaryOperation) node ).bindOperator( bound.pop() ) );
+                }
+                else {
+                    bound.push( node.bind( frame ) );
+                }
+            } );
+            return bound.pop();
+        }
+        return new Postfix( root, frame );
+    }
+
+    /**
+     * @param root an expression
+     * @return how many nodes are on its longest path from the root
+     */
+    static int depth( ExpressionNode root ) {
+        Values depths = new Values();
+        walk( root, node -> {
+            if ( node instanceof BinaryOperation ) {
+                depths.push( Math.max( depths.pop(), depths.pop() ) + 1 );
+            }
+            else if ( node instanceof UnaryOperation ) {
+                depths.push( depths.pop() + 1 );
+            }
+            else {
+                depths.push( 1 );
+            }
+        } );
+        return depths.pop();
+    }
+
+    /**
+     * A deep expression bound to the closures of its leaves and its
+     * operators in postfix order.
+     */
+    private static final class Postfix implements BoundExpression {
+
+        /** A leaf's closure, or null where an operator is applied */
+        private final BoundExpression[] leaves;
+
+        /** The operator applied at each step that is not a leaf */
+        private final String[] operators;
+        private final boolean[] binary;
+
+        /** The most values on the stack at once */
+        private final int maxHeight;
+
+        Postfix( ExpressionNode root, BoundFrame frame ) {
+            Deque< Object > steps = new ArrayDeque<>();
+            walk( root, node -> steps.add( isOperation( node ) ? node : node.bind( frame ) ) );
+            leaves = new BoundExpression[ steps.size() ];
+            operators = new String[ steps.size() ];
+            binary = new boolean[ steps.size() ];
+            int height = 0;
+            int max = 0;
+            int i = 0;
+            for ( Object step: steps ) {
+                if ( step instanceof BinaryOperation ) {
+                    operators[ i ] = ( (BinaryOperation) step ).getOperator();
+                    binary[ i ] = true;
+                    --height;
+                }
+                else if ( step instanceof UnaryOperation ) {
+                    operators[ i ] = ( (UnaryOperation) step ).getOperator();
+                }
+                else {
+                    leaves[ i ] = (BoundExpression) step;
+                    max = Math.max( max, ++height );
+                }
+                ++i;
+            }
+            maxHeight = max;
+        }
+
+        @Override
+        public int evaluate( BoundFrame f ) {
+            int[] stack = new int[ maxHeight ];
+            int top = 0;
+            for ( int i = 0; i < leaves.length; ++i ) {
+                if ( leaves[ i ] != null ) {
+                    stack[ top++ ] = leaves[ i ].evaluate( f );
+                }
+                else if ( binary[ i ] ) {
+                    --top;
+                    stack[ top - 1 ] = BinaryOperation.apply( operators[ i ],
+                                                              stack[ top - 1 ], stack[ top ] );
+                }
+                else {
+                    stack[ top - 1 ] = UnaryOperation.apply( operators[ i ], stack[ top - 1 ] );
+                }
+            }
+            return stack[ 0 ];
+        }
+    }
+}
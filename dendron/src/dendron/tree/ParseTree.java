@@ -1,49 +1,218 @@
 package dendron.tree;
 
+import dendron.Errors;
+import dendron.SyntaxException;
+import dendron.io.OutputSink;
+import dendron.jfr.CompileEvent;
+import dendron.jfr.InterpretEvent;
+import dendron.jfr.ParseEvent;
+import dendron.machine.CodeBuffer;
 import dendron.machine.Machine;
-import dendron.tree.ActionNode;
-import dendron.tree.ExpressionNode;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Operations that are done on a Dendron code parse tree.
  *
- * THIS CLASS IS UNIMPLEMENTED. All methods are stubbed out.
- *
- * @author YOUR NAME HERE
+ * @author James Heliotis
+ * @author Nicholas Pembroke
  */
 public class ParseTree {
 
+    /** The statement token for assignment */
+    public static final String ASSIGN = ":=";
+
+    /** The statement token for printing */
+    public static final String PRINT = "@";
+
+    private Program program;
+
+    /** The closure form of the tree, built on first use */
+    private BoundProgram bound = null;
+
     /**
      * Parse the entire list of program tokens. The program is a
      * sequence of actions (statements), each of which modifies something
      * in the program's set of variables. The resulting parse tree is
      * stored internally.
+     *
+     * The tokens are copied once into an array and consumed by moving
+     * a cursor, so parsing takes linear time whatever kind of List is
+     * passed in, and the list itself is left unchanged.
      * @param program the token list (Strings)
      */
     public ParseTree( List< String > program ) {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        this.program = new Program();
+        this.tokens = program.toArray( new String[ 0 ] );
+        this.cursor = 0;
+        try {
+            while ( cursor < tokens.length ) {
+                this.program.addAction( parseAction() );
+            }
+        }
+        catch ( RuntimeException e ) {
+            event.failed = true;
+            throw e;
+        }
+        finally {
+            event.tokens = tokens.length;
+            event.statements = this.program.getActions().size();
+            event.commit();
+            this.tokens = null;
+        }
+    }
+
+    /** The tokens being parsed; only set during construction */
+    private String[] tokens;
+
+    /** The index of the next token to be parsed */
+    private int cursor;
+
+    /**
+     * Take the next token, reporting a premature end if there is none.
+     * @return the token
+     * @throws SyntaxException if there are no tokens left
+     */
+    private String nextToken() {
+        if ( cursor == tokens.length ) {
+            throw new SyntaxException( Errors.Type.PREMATURE_END, null, cursor );
+        }
+        return tokens[ cursor++ ];
     }
 
     /**
-     * Parse the next action (statement) in the list.
-     * (This method is not required, just suggested.)
-     * @param program the list of tokens
+     * Parse the next action (statement) in the token array.
      * @return a parse tree for the action
      */
-    private ActionNode parseAction( List< String > program ) {
-        return null;
+    private ActionNode parseAction() {
+        String token = nextToken();
+        if ( token.equals( ASSIGN ) ) {
+            String ident = nextToken();
+            if ( !isIdentifier( ident ) ) {
+                throw new SyntaxException( Errors.Type.ILLEGAL_VALUE, ident, cursor - 1 );
+            }
+            return new Assignment( ident, parseExpr() );
+        }
+        else if ( token.equals( PRINT ) ) {
+            return new Print( parseExpr() );
+        }
+        throw new SyntaxException( Errors.Type.ILLEGAL_VALUE, token, cursor - 1 );
     }
 
     /**
-     * Parse the next expression in the list.
-     * (This method is not required, just suggested.)
-     * @param program the list of tokens
+     * An operator whose operands are still being parsed.
+     */
+    private static final class PendingOperation {
+        final String operator;
+        final boolean binary;
+        ExpressionNode left = null;
+
+        PendingOperation( String operator, boolean binary ) {
+            this.operator = operator;
+            this.binary = binary;
+        }
+    }
+
+    /**
+     * Parse the next expression in the token array. Operators waiting
+     * for operands are kept on an explicit stack rather than the Java
+     * call stack, so any depth of nesting can be parsed.
      * @return a parse tree for this expression
      */
-    private ExpressionNode parseExpr( List< String > program ) {
-        return null;
+    private ExpressionNode parseExpr() {
+        Deque< PendingOperation > pending = new ArrayDeque<>();
+        while ( true ) {
+            String token = nextToken();
+            if ( BinaryOperation.isOperator( token ) ) {
+                pending.push( new PendingOperation( token, true ) );
+                continue;
+            }
+            if ( UnaryOperation.isOperator( token ) ) {
+                pending.push( new PendingOperation( token, false ) );
+                continue;
+            }
+            ExpressionNode node;
+            if ( isConstant( token ) ) {
+                node = new Constant( Integer.parseInt( token ) );
+            }
+            else if ( isIdentifier( token ) ) {
+                node = new Variable( token );
+            }
+            else {
+                throw new SyntaxException( Errors.Type.ILLEGAL_VALUE, token, cursor - 1 );
+            }
+            // Give the finished operand to the operators waiting for it.
+            while ( true ) {
+                PendingOperation op = pending.peek();
+                if ( op == null ) {
+                    return node;
+                }
+                if ( op.binary && op.left == null ) {
+                    op.left = node;
+                    break;
+                }
+                pending.pop();
+                node = op.binary ? new BinaryOperation( op.operator, op.left, node )
+                                 : new UnaryOperation( op.operator, node );
+            }
+        }
+    }
+
+    /**
+     * @param token a source token
+     * @return true if the token is an unsigned integer that fits in an int
+     */
+    static boolean isConstant( String token ) {
+        if ( token.isEmpty() ) {
+            return false;
+        }
+        for ( int i = 0; i < token.length(); ++i ) {
+            if ( !Character.isDigit( token.charAt( i ) ) ) {
+                return false;
+            }
+        }
+        try {
+            Integer.parseInt( token );
+            return true;
+        }
+        catch ( NumberFormatException nfe ) {
+            return false;
+        }
+    }
+
+    /**
+     * @param token a source token
+     * @return true if the token is a letter followed by letters and digits
+     */
+    static boolean isIdentifier( String token ) {
+        if ( token.isEmpty() || !Character.isLetter( token.charAt( 0 ) ) ) {
+            return false;
+        }
+        for ( int i = 1; i < token.length(); ++i ) {
+            if ( !Character.isLetterOrDigit( token.charAt( i ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replace the tree with an optimized but equivalent one, before
+     * it is interpreted or compiled.
+     * @return the optimizer, for its report
+     * @see TreeOptimizer
+     */
+    public TreeOptimizer optimize() {
+        TreeOptimizer optimizer = new TreeOptimizer();
+        program = optimizer.optimize( program );
+        bound = null;
+        return optimizer;
     }
 
     /**
@@ -52,23 +221,95 @@ public class ParseTree {
      * @see dendron.tree.ActionNode#infixDisplay()
      */
     public void displayProgram() {
+        System.out.println( "The program, with expressions in infix notation:\n" );
+        program.infixDisplay();
     }
 
     /**
      * Run the program represented by the tree directly
-     * @see dendron.tree.ActionNode#execute(Map)
+     * @see dendron.tree.ActionNode#execute(Map, OutputSink)
      */
     public void interpret() {
+        System.out.println( "\nInterpreting the parse tree..." );
+        Map< String, Integer > symTab = new HashMap<>();
+        run( symTab );
+        System.out.println( "Interpretation complete.\n" );
+        Errors.dump( symTab );
+    }
+
+    /**
+     * Run the program by walking the tree, with no banners or dump,
+     * printing to this thread's standard output sink.
+     * @param symTab the symbol table the program reads and updates
+     */
+    public void run( Map< String, Integer > symTab ) {
+        run( symTab, OutputSink.standardOutput() );
+    }
+
+    /**
+     * Run the program by walking the tree, with no banners or dump.
+     * @param symTab the symbol table the program reads and updates
+     * @param out where printed values go; it is flushed at the end
+     */
+    public void run( Map< String, Integer > symTab, OutputSink out ) {
+        InterpretEvent event = new InterpretEvent();
+        event.begin();
+        try {
+            program.execute( symTab, out );
+        }
+        catch ( RuntimeException e ) {
+            event.failed = true;
+            throw e;
+        }
+        finally {
+            out.flush();
+            event.statements = program.getActions().size();
+            event.form = "tree";
+            event.commit();
+        }
+    }
+
+    /**
+     * Convert the tree into closures, once, so it can be run
+     * repeatedly without symbol table lookups or tree walking.
+     * @return the closure form of this tree
+     */
+    public BoundProgram bind() {
+        if ( bound == null ) {
+            bound = new BoundProgram( program );
+        }
+        return bound;
+    }
+
+    /**
+     * Run the program through its closure form, with the same output
+     * as {@link #interpret()}.
+     * @see #bind()
+     */
+    public void interpretBound() {
+        System.out.println( "\nInterpreting the parse tree..." );
+        BoundProgram closures = bind();
+        closures.run();
+        System.out.println( "Interpretation complete.\n" );
+        Errors.dump( closures.symbolTable() );
     }
 
     /**
      * Build the list of machine instructions for
      * the program represented by the tree.
      * @return the Machine.Instruction list
-     * @see Machine.Instruction#execute()
+     * @see Machine.Instruction#execute(Machine)
      */
     public List< Machine.Instruction > compile() {
-        return null;
+        CompileEvent event = new CompileEvent();
+        event.begin();
+        CodeBuffer buffer = new CodeBuffer( program.getActions().size() * 4 );
+        program.emit( buffer );
+        List< Machine.Instruction > code = buffer.toList();
+        event.statements = program.getActions().size();
+        event.instructions = code.size();
+        event.commit();
+        return code;
     }
 
 }
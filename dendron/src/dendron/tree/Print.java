@@ -0,0 +1,58 @@
+package dendron.tree;
+
+import dendron.io.OutputSink;
+import dendron.machine.CodeBuffer;
+
+import java.util.Map;
+
+/**
+ * The action of printing the value of an expression (@).
+ *
+ * @author Nicholas Pembroke
+ */
+public class Print implements ActionNode {
+
+    private final ExpressionNode expr;
+
+    /**
+     * @param expr the expression whose value is printed
+     */
+    public Print( ExpressionNode expr ) {
+        this.expr = expr;
+    }
+
+    /**
+     * @return the expression whose value is printed
+     */
+    public ExpressionNode getExpr() {
+        return expr;
+    }
+
+    @Override
+    public void infixDisplay() {
+        System.out.print( "Print " );
+        expr.infixDisplay();
+    }
+
+    @Override
+    public void emit( CodeBuffer code ) {
+        expr.emit( code );
+        code.emit( CodeBuffer.PRINT );
+    }
+
+    @Override
+    public void execute( Map< String, Integer > symTab, OutputSink out ) {
+        print( out, expr.evaluate( symTab ) );
+    }
+
+    @Override
+    public BoundAction bind( BoundFrame frame ) {
+        BoundExpression e = expr.bind( frame );
+        return f -> print( f.out, e.evaluate( f ) );
+    }
+
+    private static void print( OutputSink out, int value ) {
+        out.print( "=== " );
+        out.println( value );
+    }
+}
@@ -0,0 +1,85 @@
+package dendron.tree;
+
+import dendron.InterpretException;
+import dendron.io.OutputSink;
+import dendron.machine.CodeBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A whole Dendron program: a sequence of actions done in order.
+ *
+ * @author Nicholas Pembroke
+ */
+public class Program implements ActionNode {
+
+    private final List< ActionNode > actions = new ArrayList<>();
+
+    /**
+     * Add an action to the end of the program.
+     * @param action the next statement
+     */
+    public void addAction( ActionNode action ) {
+        actions.add( action );
+    }
+
+    /**
+     * @return the statements, in order
+     */
+    public List< ActionNode > getActions() {
+        return actions;
+    }
+
+    /**
+     * Show each action on a line of its own.
+     */
+    @Override
+    public void infixDisplay() {
+        for ( ActionNode action: actions ) {
+            action.infixDisplay();
+            System.out.println();
+        }
+    }
+
+    @Override
+    public void emit( CodeBuffer code ) {
+        for ( ActionNode action: actions ) {
+            action.emit( code );
+        }
+    }
+
+    @Override
+    public void execute( Map< String, Integer > symTab, OutputSink out ) {
+        int statement = 0;
+        try {
+            for ( ActionNode action: actions ) {
+                action.execute( symTab, out );
+                ++statement;
+            }
+        }
+        catch ( InterpretException e ) {
+            throw e.at( statement );
+        }
+    }
+
+    @Override
+    public BoundAction bind( BoundFrame frame ) {
+        BoundAction[] bound = new BoundAction[ actions.size() ];
+        for ( int i = 0; i < bound.length; ++i ) {
+            bound[ i ] = actions.get( i ).bind( frame );
+        }
+        return f -> {
+            int statement = 0;
+            try {
+                for ( ; statement < bound.length; ++statement ) {
+                    bound[ statement ].execute( f );
+                }
+            }
+            catch ( InterpretException e ) {
+                throw e.at( statement );
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package dendron.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collect tokens arriving one at a time and say when they make up a
+ * complete statement, so that a statement can be parsed and run as
+ * soon as its last token arrives.
+ *
+ * Because Dendron is in prefix form, a statement is complete when
+ * nothing more is owed: := owes an identifier and an expression, @
+ * owes an expression, a binary operator turns one owed expression
+ * into two, a unary operator leaves the count alone, and any other
+ * token pays off one. A statement that starts with anything else is
+ * handed over at once so the parser can report it.
+ *
+ * @author Nicholas Pembroke
+ */
+public class StatementBuffer {
+
+    private final List< String > tokens = new ArrayList<>();
+    private int owed = 0;
+
+    /**
+     * Add the next token.
+     * @param token a source token
+     * @return true if the buffer now holds a complete statement
+     */
+    public boolean add( String token ) {
+        if ( tokens.isEmpty() ) {
+            tokens.add( token );
+            if ( token.equals( ParseTree.ASSIGN ) ) {
+                owed = 2;
+            }
+            else if ( token.equals( ParseTree.PRINT ) ) {
+                owed = 1;
+            }
+            else {
+                owed = 0;
+            }
+            return owed == 0;
+        }
+        boolean isIdent = tokens.size() == 1 && tokens.get( 0 ).equals( ParseTree.ASSIGN );
+        tokens.add( token );
+        if ( !isIdent && BinaryOperation.isOperator( token ) ) {
+            owed += 1;
+        }
+        else if ( isIdent || !UnaryOperation.isOperator( token ) ) {
+            owed -= 1;
+        }
+        return owed == 0;
+    }
+
+    /**
+     * @return true if no tokens are waiting
+     */
+    public boolean isEmpty() {
+        return tokens.isEmpty();
+    }
+
+    /**
+     * @return the tokens of the current statement; the list is reused
+     *         after {@link #clear()}, so parse it before then
+     */
+    public List< String > tokens() {
+        return tokens;
+    }
+
+    /**
+     * Discard the current statement.
+     */
+    public void clear() {
+        tokens.clear();
+        owed = 0;
+    }
+}
@@ -0,0 +1,296 @@
+package dendron.tree;
+
+import dendron.Errors;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An optimizing pass over a Dendron parse tree, run before it is
+ * interpreted or compiled.
+ * <ol>
+ *     <li>Subtrees whose operands are all constants are folded into a
+ *     single Constant. Division by a constant zero is left alone so
+ *     that it is still reported when the program runs.</li>
+ *     <li>Expressions are hash-consed: two subtrees get the same
+ *     number if they apply the same operator to operands with the same
+ *     numbers. A variable's number changes every time it is assigned,
+ *     so equal numbers always mean equal values. Any operation used
+ *     more than once is computed once, into a compiler temporary that
+ *     is assigned just before the first statement that needs it.</li>
+ * </ol>
+ * Temporaries are named with {@link Errors#TEMP_PREFIX}, which no
+ * Dendron identifier can start with, and are left out of symbol
+ * table dumps.
+ *
+ * @author Nicholas Pembroke
+ */
+public class TreeOptimizer {
+
+    /** Hash-cons number of every expression node in the program */
+    private final Map< ExpressionNode, Integer > numbers = new IdentityHashMap<>();
+
+    /** Hash-cons number of each distinct expression structure */
+    private final Map< String, Integer > structures = new HashMap<>();
+
+    /** Whether a number belongs to an operation (true) or a leaf */
+    private final List< Boolean > isOperation = new ArrayList<>();
+
+    private int[] uses;
+    private final Map< Integer, String > temporaries = new HashMap<>();
+
+    private int folded = 0;
+    private int reused = 0;
+
+    /**
+     * Optimize a program. The original tree is not modified.
+     * @param program the program to optimize
+     * @return an equivalent, optimized program
+     */
+    public Program optimize( Program program ) {
+        numbers.clear();
+        structures.clear();
+        isOperation.clear();
+        temporaries.clear();
+        folded = 0;
+        reused = 0;
+
+        List< ActionNode > actions = new ArrayList<>();
+        for ( ActionNode action: program.getActions() ) {
+            actions.add( fold( action ) );
+        }
+
+        Map< String, Integer > versions = new HashMap<>();
+        for ( ActionNode action: actions ) {
+            number( expressionOf( action ), versions );
+            if ( action instanceof Assignment ) {
+                versions.merge( ( (Assignment) action ).getIdent(), 1, Integer::sum );
+            }
+        }
+
+        uses = new int[ isOperation.size() ];
+        boolean[] seen = new boolean[ uses.length ];
+        for ( ActionNode action: actions ) {
+            countUses( expressionOf( action ), seen );
+        }
+
+        Program result = new Program();
+        for ( ActionNode action: actions ) {
+            List< ActionNode > prelude = new ArrayList<>();
+            ExpressionNode expr = share( expressionOf( action ), prelude );
+            for ( ActionNode temp: prelude ) {
+                result.addAction( temp );
+            }
+            if ( action instanceof Assignment ) {
+                result.addAction( new Assignment( ( (Assignment) action ).getIdent(), expr ) );
+            }
+            else {
+                result.addAction( new Print( expr ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Describe what the last optimize did.
+     * @return a multi-line report
+     */
+    public String report() {
+        return "Tree optimizer: " + folded + " subtrees folded, " +
+               temporaries.size() + " common subexpressions computed once, " +
+               reused + " recomputations avoided\n";
+    }
+
+    private static ExpressionNode expressionOf( ActionNode action ) {
+        if ( action instanceof Assignment ) {
+            return ( (Assignment) action ).getRhs();
+        }
+        return ( (Print) action ).getExpr();
+    }
+
+    ////////////////////////////////////////
+    /////////     Constant folding    //////
+    ////////////////////////////////////////
+
+    private ActionNode fold( ActionNode action ) {
+        if ( action instanceof Assignment ) {
+            Assignment asgn = (Assignment) action;
+            return new Assignment( asgn.getIdent(), fold( asgn.getRhs() ) );
+        }
+        return new Print( fold( ( (Print) action ).getExpr() ) );
+    }
+
+    private ExpressionNode fold( ExpressionNode expr ) {
+        Deque< ExpressionNode > folds = new ArrayDeque<>();
+        ExpressionWalk.walk( expr, node -> folds.push( fold( node, folds ) ) );
+        return folds.pop();
+    }
+
+    /**
+     * Fold one node whose operands have already been folded.
+     * @param expr the node
+     * @param folds the folded operands, the last on top
+     * @return the folded node
+     */
+    private ExpressionNode fold( ExpressionNode expr, Deque< ExpressionNode > folds ) {
+        if ( expr instanceof BinaryOperation ) {
+            BinaryOperation op = (BinaryOperation) expr;
+            ExpressionNode right = folds.pop();
+            ExpressionNode left = folds.pop();
+            if ( left instanceof Constant && right instanceof Constant &&
+                 !( op.getOperator().equals( BinaryOperation.DIV ) &&
+                    ( (Constant) right ).getValue() == 0 ) ) {
+                ++folded;
+                return new Constant( BinaryOperation.apply( op.getOperator(),
+                        ( (Constant) left ).getValue(), ( (Constant) right ).getValue() ) );
+            }
+            return new BinaryOperation( op.getOperator(), left, right );
+        }
+        if ( expr instanceof UnaryOperation ) {
+            UnaryOperation op = (UnaryOperation) expr;
+            ExpressionNode operand = folds.pop();
+            if ( operand instanceof Constant ) {
+                ++folded;
+                return new Constant( UnaryOperation.apply( op.getOperator(),
+                        ( (Constant) operand ).getValue() ) );
+            }
+            return new UnaryOperation( op.getOperator(), operand );
+        }
+        return expr;
+    }
+
+    ////////////////////////////////////////
+    /////////     Hash-consing        //////
+    ////////////////////////////////////////
+
+    /**
+     * Give an expression and all its subexpressions their numbers.
+     */
+    private void number( ExpressionNode expr, Map< String, Integer > versions ) {
+        ExpressionWalk.Values operands = new ExpressionWalk.Values();
+        ExpressionWalk.walk( expr, node -> operands.push( number( node, versions, operands ) ) );
+    }
+
+    /**
+     * Number one node whose operands have already been numbered.
+     * @param operands the operands' numbers, the last on top
+     * @return the node's number
+     */
+    private int number( ExpressionNode expr, Map< String, Integer > versions,
+                        ExpressionWalk.Values operands ) {
+        String key;
+        boolean operation = true;
+        if ( expr instanceof BinaryOperation ) {
+            int right = operands.pop();
+            key = ( (BinaryOperation) expr ).getOperator() + operands.pop() + "," + right;
+        }
+        else if ( expr instanceof UnaryOperation ) {
+            key = ( (UnaryOperation) expr ).getOperator() + operands.pop();
+        }
+        else if ( expr instanceof Variable ) {
+            String name = ( (Variable) expr ).getName();
+            key = "v" + name + "#" + versions.getOrDefault( name, 0 );
+            operation = false;
+        }
+        else {
+            key = "c" + ( (Constant) expr ).getValue();
+            operation = false;
+        }
+        Integer n = structures.get( key );
+        if ( n == null ) {
+            n = isOperation.size();
+            structures.put( key, n );
+            isOperation.add( operation );
+        }
+        numbers.put( expr, n );
+        return n;
+    }
+
+    /**
+     * Count how often each operation is needed. The operands of an
+     * operation seen before are not counted again, since they will be
+     * read from its temporary rather than recomputed.
+     */
+    private void countUses( ExpressionNode expr, boolean[] seen ) {
+        ExpressionWalk.walk( expr, new ExpressionWalk.Visitor() {
+            @Override
+            public boolean enter( ExpressionNode node ) {
+                int n = numbers.get( node );
+                ++uses[ n ];
+                if ( seen[ n ] ) {
+                    return false;
+                }
+                seen[ n ] = true;
+                return true;
+            }
+
+            @Override
+            public void leave( ExpressionNode node ) {
+            }
+        } );
+    }
+
+    /**
+     * Rebuild an expression so that every operation needed more than
+     * once reads a temporary, adding the temporaries' assignments, in
+     * dependency order, to the prelude.
+     */
+    private ExpressionNode share( ExpressionNode expr, List< ActionNode > prelude ) {
+        Deque< ExpressionNode > shared = new ArrayDeque<>();
+        ExpressionWalk.walk( expr, new ExpressionWalk.Visitor() {
+            @Override
+            public boolean enter( ExpressionNode node ) {
+                int n = numbers.get( node );
+                if ( !isOperation.get( n ) ) {
+                    shared.push( node );
+                    return false;
+                }
+                String temp = temporaries.get( n );
+                if ( temp != null ) {
+                    ++reused;
+                    shared.push( new Variable( temp ) );
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public void leave( ExpressionNode node ) {
+                shared.push( rebuild( node, shared, prelude ) );
+            }
+        } );
+        return shared.pop();
+    }
+
+    /**
+     * Rebuild one operation from its shared operands, and give it a
+     * temporary if it is needed more than once.
+     * @param shared the rebuilt operands, the last on top
+     * @return the rebuilt operation, or the temporary that holds it
+     */
+    private ExpressionNode rebuild( ExpressionNode expr, Deque< ExpressionNode > shared,
+                                    List< ActionNode > prelude ) {
+        int n = numbers.get( expr );
+        ExpressionNode rebuilt;
+        if ( expr instanceof BinaryOperation ) {
+            ExpressionNode right = shared.pop();
+            rebuilt = new BinaryOperation( ( (BinaryOperation) expr ).getOperator(),
+                                           shared.pop(), right );
+        }
+        else {
+            rebuilt = new UnaryOperation( ( (UnaryOperation) expr ).getOperator(), shared.pop() );
+        }
+        if ( uses[ n ] < 2 ) {
+            return rebuilt;
+        }
+        String temp = Errors.TEMP_PREFIX + "t" + temporaries.size();
+        temporaries.put( n, temp );
+        prelude.add( new Assignment( temp, rebuilt ) );
+        return new Variable( temp );
+    }
+}
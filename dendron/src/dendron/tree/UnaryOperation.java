@@ -0,0 +1,106 @@
+package dendron.tree;
+
+import dendron.machine.CodeBuffer;
+
+import java.util.Map;
+
+/**
+ * An expression that applies negation (_) or square root (#)
+ * to the value of a sub-expression.
+ *
+ * @author Nicholas Pembroke
+ */
+public class UnaryOperation implements ExpressionNode {
+
+    /** The operator tokens this node accepts */
+    public static final String NEG = "_";
+    public static final String SQRT = "#";
+
+    private final String operator;
+    private final ExpressionNode expr;
+
+    /**
+     * @param operator NEG or SQRT
+     * @param expr the operand
+     */
+    public UnaryOperation( String operator, ExpressionNode expr ) {
+        this.operator = operator;
+        this.expr = expr;
+    }
+
+    /**
+     * @param token a source token
+     * @return true if the token is a unary operator
+     */
+    public static boolean isOperator( String token ) {
+        return token.equals( NEG ) || token.equals( SQRT );
+    }
+
+    /**
+     * @return the operator token
+     */
+    public String getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return the operand
+     */
+    public ExpressionNode getExpr() {
+        return expr;
+    }
+
+    /**
+     * Apply the operator to a value.
+     * @param operator NEG or SQRT
+     * @param op1 the operand
+     * @return the result
+     */
+    public static int apply( String operator, int op1 ) {
+        if ( operator.equals( NEG ) ) {
+            return -op1;
+        }
+        return (int) Math.round( Math.sqrt( op1 ) );
+    }
+
+    @Override
+    public void infixDisplay() {
+        ExpressionWalk.display( this );
+    }
+
+    @Override
+    public void emit( CodeBuffer code ) {
+        ExpressionWalk.emit( this, code );
+    }
+
+    /**
+     * Append the instruction for the operator alone, once the
+     * operand's instructions are in place.
+     * @param code where the instruction goes
+     */
+    void emitOperator( CodeBuffer code ) {
+        code.emit( operator.equals( NEG ) ? CodeBuffer.NEGATE : CodeBuffer.SQUARE_ROOT );
+    }
+
+    @Override
+    public int evaluate( Map< String, Integer > symTab ) {
+        return ExpressionWalk.evaluate( this, symTab );
+    }
+
+    @Override
+    public BoundExpression bind( BoundFrame frame ) {
+        return ExpressionWalk.bind( this, frame );
+    }
+
+    /**
+     * Bind to a closure specialized for this operator.
+     * @param e the bound operand
+     * @return the closure
+     */
+    BoundExpression bindOperator( BoundExpression e ) {
+        if ( operator.equals( NEG ) ) {
+            return f -> -e.evaluate( f );
+        }
+        return f -> (int) Math.round( Math.sqrt( e.evaluate( f ) ) );
+    }
+}
@@ -0,0 +1,66 @@
+package dendron.tree;
+
+import dendron.Errors;
+import dendron.InterpretException;
+import dendron.machine.CodeBuffer;
+
+import java.util.Map;
+
+/**
+ * An expression that is the current value of a variable.
+ *
+ * @author Nicholas Pembroke
+ */
+public class Variable implements ExpressionNode {
+
+    private final String name;
+
+    /**
+     * @param name the variable's name
+     */
+    public Variable( String name ) {
+        this.name = name;
+    }
+
+    /**
+     * @return the variable's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void infixDisplay() {
+        System.out.print( name );
+    }
+
+    @Override
+    public void emit( CodeBuffer code ) {
+        code.load( name );
+    }
+
+    /**
+     * Fetch the variable's value.
+     * An uninitialized variable is reported as an error.
+     * @throws InterpretException if the variable has no value
+     */
+    @Override
+    public int evaluate( Map< String, Integer > symTab ) {
+        Integer value = symTab.get( name );
+        if ( value == null ) {
+            throw new InterpretException( Errors.Type.UNINITIALIZED, name );
+        }
+        return value;
+    }
+
+    @Override
+    public BoundExpression bind( BoundFrame frame ) {
+        int slot = frame.slotFor( name );
+        return f -> {
+            if ( !f.defined[ slot ] ) {
+                throw new InterpretException( Errors.Type.UNINITIALIZED, f.nameOf( slot ) );
+            }
+            return f.values[ slot ];
+        };
+    }
+}
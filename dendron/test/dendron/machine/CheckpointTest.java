@@ -0,0 +1,187 @@
+package dendron.machine;
+
+import dendron.Errors;
+import dendron.MachineException;
+import dendron.io.MemorySink;
+import dendron.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Saving a session and restoring it must give back the same
+ * variables, stack, tree symbol table and resume index, a checkpoint
+ * must know which program it was saved from, and a damaged file must
+ * be refused rather than restored.
+ *
+ * @author Nicholas Pembroke
+ */
+public class CheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * A Machine with more slots than one word of defined bits holds,
+     * only some of them with values, and three values on its stack.
+     */
+    private static Machine session() {
+        Machine machine = new Machine( new MemorySink() );
+        List< Machine.Instruction > program = new ArrayList<>();
+        for ( int i = 0; i < 40; ++i ) {
+            program.add( new Machine.Store( "unset" + i ) );
+        }
+        machine.link( program );
+        for ( int i = 0; i < 40; i += 3 ) {
+            machine.assign( "v" + i, i * 1000 - 7 );
+        }
+        machine.run( List.of( new Machine.PushConst( 11 ), new Machine.PushConst( -22 ),
+                              new Machine.PushConst( Integer.MIN_VALUE ) ) );
+        return machine;
+    }
+
+    private Path saved( Machine machine, int resumeAt, Map< String, Integer > tree )
+            throws IOException {
+        Path file = dir.resolve( "session" + Checkpoint.EXTENSION );
+        Checkpoint.write( file, machine, resumeAt, tree );
+        return file;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Machine machine = session();
+        Map< String, Integer > tree = new HashMap<>();
+        tree.put( "x", 3 );
+        tree.put( "négatif", -1 );
+        Path file = saved( machine, 17, tree );
+
+        Checkpoint checkpoint = Checkpoint.load( file );
+        assertEquals( 17, checkpoint.resumeAt() );
+        assertEquals( 3, checkpoint.stackDepth() );
+        assertEquals( tree, checkpoint.treeSymbolTable() );
+
+        MemorySink out = new MemorySink();
+        Machine restored = new Machine( out );
+        restored.assign( "stale", 1 );
+        checkpoint.restore( restored );
+        assertEquals( machine.symbolTable(), restored.symbolTable() );
+        assertEquals( 3, restored.stackSize() );
+
+        restored.run( List.of( new Machine.Print(), new Machine.Print(), new Machine.Print() ) );
+        assertEquals( "*** " + Integer.MIN_VALUE + "\n*** -22\n*** 11\n", out.toString() );
+
+        MachineException unset = assertThrows( MachineException.class,
+                () -> restored.run( List.of( new Machine.Load( "unset33" ) ) ) );
+        assertEquals( Errors.Type.UNINITIALIZED, unset.getType() );
+    }
+
+    @Test
+    public void resumedRunMatchesOneRun() throws IOException {
+        CodeSegment segment = CodeSegment.fromInstructions( new ParseTree( List.of(
+                ":=", "a", "6", ":=", "b", "_", "4",
+                "@", "*", "a", "b",
+                ":=", "a", "+", "a", "b",
+                "@", "/", "a", "b" ) ).compile() );
+        MemorySink whole = new MemorySink();
+        Machine once = new Machine( whole );
+        once.run( segment );
+
+        for ( int split = 0; split <= segment.instructionCount(); ++split ) {
+            MemorySink out = new MemorySink();
+            Machine first = new Machine( out );
+            first.run( segment, 0, split );
+            Path file = saved( first, split, null );
+
+            Checkpoint checkpoint = Checkpoint.load( file );
+            Machine second = new Machine( out );
+            checkpoint.restore( second );
+            second.run( segment, checkpoint.resumeAt() );
+            assertEquals( whole.toString(), out.toString(), "split at " + split );
+            assertEquals( once.symbolTable(), second.symbolTable(), "split at " + split );
+            assertEquals( once.stackSize(), second.stackSize(), "split at " + split );
+        }
+    }
+
+    @Test
+    public void emptySession() throws IOException {
+        Path file = saved( new Machine( new MemorySink() ), 0, null );
+        Checkpoint checkpoint = Checkpoint.load( file );
+        Machine restored = new Machine( new MemorySink() );
+        checkpoint.restore( restored );
+        assertEquals( Map.of(), restored.symbolTable() );
+        assertEquals( 0, restored.stackSize() );
+        assertEquals( Map.of(), checkpoint.treeSymbolTable() );
+    }
+
+    @Test
+    public void truncatedFileIsRefused() throws IOException {
+        Path file = saved( session(), 0, Map.of( "x", 1 ) );
+        byte[] bytes = Files.readAllBytes( file );
+        for ( int length: new int[] { 0, 3, 20, 30, bytes.length / 2, bytes.length - 1 } ) {
+            Files.write( file, Arrays.copyOf( bytes, length ) );
+            assertThrows( IOException.class, () -> Checkpoint.load( file ), "length " + length );
+        }
+    }
+
+    @Test
+    public void corruptHeaderIsRefused() throws IOException {
+        Path file = saved( session(), 0, null );
+        byte[] bytes = Files.readAllBytes( file );
+        // magic, version, then the slot count and stack depth made negative
+        for ( int at: new int[] { 0, 1, 3, 4 } ) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap( corrupt ).order( ByteOrder.LITTLE_ENDIAN )
+                      .putInt( at * Integer.BYTES, at < 2 ? 0x7eadbeef : -5 );
+            Files.write( file, corrupt );
+            assertThrows( IOException.class, () -> Checkpoint.load( file ), "header int " + at );
+        }
+    }
+
+    @Test
+    public void corruptNameIsRefused() throws IOException {
+        Machine machine = new Machine( new MemorySink() );
+        machine.assign( "x", 1 );
+        Path file = saved( machine, 0, null );
+        byte[] bytes = Files.readAllBytes( file );
+        // Six header ints and the program digest, one value and one word
+        // of defined bits, then the name's length
+        ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN ).putInt( 16 * Integer.BYTES, 1 << 20 );
+        Files.write( file, bytes );
+        assertThrows( IOException.class, () -> Checkpoint.load( file ) );
+    }
+
+    @Test
+    public void checkpointKnowsItsProgram() throws IOException {
+        CodeSegment program = CodeSegment.fromInstructions( List.of(
+                new Machine.PushConst( 1 ), new Machine.Store( "x" ) ) );
+        CodeSegment constant = CodeSegment.fromInstructions( List.of(
+                new Machine.PushConst( 2 ), new Machine.Store( "x" ) ) );
+        CodeSegment name = CodeSegment.fromInstructions( List.of(
+                new Machine.PushConst( 1 ), new Machine.Store( "y" ) ) );
+        Path file = dir.resolve( "program" + Checkpoint.EXTENSION );
+        Checkpoint.write( file, new Machine( new MemorySink() ), program, 1, null );
+
+        Checkpoint checkpoint = Checkpoint.load( file );
+        assertTrue( checkpoint.belongsTo( program ) );
+        assertTrue( checkpoint.belongsTo( CodeSegment.fromInstructions( program.toInstructions() ) ) );
+        assertFalse( checkpoint.belongsTo( constant ) );
+        assertFalse( checkpoint.belongsTo( name ) );
+        assertFalse( checkpoint.belongsTo( null ) );
+        assertTrue( Checkpoint.load( saved( session(), 0, null ) ).belongsTo( null ) );
+    }
+}
@@ -0,0 +1,156 @@
+package dendron.machine;
+
+import dendron.Errors;
+import dendron.MachineException;
+import dendron.io.MemorySink;
+import dendron.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every row a ColumnarExecutor runs must end exactly as the same
+ * program does on its own Machine given that row's inputs.
+ *
+ * @author Nicholas Pembroke
+ */
+public class ColumnarExecutorTest {
+
+    /** The quadratic formula from DendronTest, which divides by 2a */
+    private static final List< String > QUADRATIC = List.of(
+            ":=", "root", "/", "+", "_", "b", "#", "-", "*",
+                  "b", "b", "*", "*", "4", "a", "c", "*", "2", "a",
+            "@", "root",
+            ":=", "root2", "/", "-", "_", "b", "#", "-", "*",
+                  "b", "b", "*", "*", "4", "a", "c", "*", "2", "a",
+            "@", "root2" );
+
+    /** Block sizes that put the rows in one block, several, and one each */
+    private static final int[] BLOCK_SIZES = { ColumnarExecutor.DEFAULT_BLOCK_SIZE, 7, 1 };
+
+    private static CodeSegment compile( List< String > tokens ) {
+        return CodeSegment.fromInstructions( new ParseTree( tokens ).compile() );
+    }
+
+    /**
+     * Run the segment over the columns, then each row on a fresh
+     * Machine, and compare everything a row leaves behind.
+     */
+    private static void assertRowsMatch( CodeSegment segment, Map< String, int[] > inputs,
+                                         int rows ) {
+        for ( int blockSize: BLOCK_SIZES ) {
+            ColumnarExecutor.Result result =
+                    new ColumnarExecutor( segment, blockSize ).execute( inputs, rows );
+            assertEquals( rows, result.rows() );
+            for ( int row = 0; row < rows; ++row ) {
+                MemorySink out = new MemorySink();
+                Machine machine = new Machine( out );
+                for ( Map.Entry< String, int[] > input: inputs.entrySet() ) {
+                    machine.assign( input.getKey(), input.getValue()[ row ] );
+                }
+                MachineException thrown = null;
+                try {
+                    machine.run( segment );
+                }
+                catch ( MachineException e ) {
+                    thrown = e;
+                }
+                String where = "row " + row + ", block size " + blockSize;
+                assertEquals( out.toString(), result.output( row ), where );
+                assertEquals( machine.stackSize(), result.stackSize( row ), where );
+                assertEquals( machine.symbolTable(), result.symbolTable( row ), where );
+                assertEquals( thrown == null, result.completed( row ), where );
+                MachineException failure = result.failure( row );
+                if ( thrown == null ) {
+                    assertNull( failure, where );
+                }
+                else {
+                    assertEquals( thrown.getType(), failure.getType(), where );
+                    assertEquals( thrown.getInfo(), failure.getInfo(), where );
+                    assertEquals( thrown.getPosition(), failure.getPosition(), where );
+                }
+            }
+        }
+    }
+
+    private static int[] column( Random random, int rows, int low, int high ) {
+        int[] values = new int[ rows ];
+        for ( int row = 0; row < rows; ++row ) {
+            values[ row ] = low + random.nextInt( high - low + 1 );
+        }
+        return values;
+    }
+
+    @Test
+    public void divisionByZeroStopsOnlyItsRows() {
+        Random random = new Random( 2912 );
+        int rows = 200;
+        Map< String, int[] > inputs = new LinkedHashMap<>();
+        inputs.put( "a", column( random, rows, -2, 2 ) );
+        inputs.put( "b", column( random, rows, -20, 20 ) );
+        inputs.put( "c", column( random, rows, -20, 20 ) );
+        CodeSegment segment = compile( QUADRATIC );
+        assertRowsMatch( segment, inputs, rows );
+
+        ColumnarExecutor.Result result = new ColumnarExecutor( segment ).execute( inputs, rows );
+        boolean stopped = false;
+        boolean finished = false;
+        for ( int row = 0; row < rows; ++row ) {
+            if ( inputs.get( "a" )[ row ] == 0 ) {
+                assertEquals( Errors.Type.DIVIDE_BY_ZERO, result.failure( row ).getType() );
+                stopped = true;
+            }
+            else {
+                assertTrue( result.completed( row ) );
+                finished = true;
+            }
+        }
+        assertTrue( stopped && finished );
+    }
+
+    @Test
+    public void undefinedLoadStopsEveryRow() {
+        CodeSegment segment = compile( List.of(
+                ":=", "y", "+", "x", "1",
+                "@", "y",
+                "@", "z" ) );
+        Map< String, int[] > inputs = Map.of( "x", new int[] { 4, -1, 0, 9, 12 } );
+        assertRowsMatch( segment, inputs, 5 );
+
+        ColumnarExecutor.Result result = new ColumnarExecutor( segment ).execute( inputs, 5 );
+        for ( int row = 0; row < 5; ++row ) {
+            assertFalse( result.completed( row ) );
+            assertEquals( Errors.Type.UNINITIALIZED, result.failure( row ).getType() );
+            assertEquals( "z", result.failure( row ).getInfo() );
+            assertEquals( 1, result.printCount( row ) );
+        }
+    }
+
+    @Test
+    public void underflowStopsEveryRow() {
+        CodeSegment segment = CodeSegment.fromInstructions( List.of(
+                new Machine.Load( "x" ), new Machine.Add() ) );
+        Map< String, int[] > inputs = Map.of( "x", new int[] { 1, 2, 3 } );
+        assertRowsMatch( segment, inputs, 3 );
+        assertEquals( Errors.Type.STACK_UNDERFLOW,
+                      new ColumnarExecutor( segment ).execute( inputs, 3 ).failure( 0 ).getType() );
+    }
+
+    @Test
+    public void zeroRows() {
+        CodeSegment segment = compile( QUADRATIC );
+        Map< String, int[] > inputs = Map.of( "a", new int[ 0 ], "b", new int[ 0 ], "c", new int[ 0 ] );
+        ColumnarExecutor.Result result = new ColumnarExecutor( segment ).execute( inputs, 0 );
+        assertEquals( 0, result.rows() );
+        assertEquals( 0, result.values( "root" ).length );
+        assertRowsMatch( segment, inputs, 0 );
+    }
+}
@@ -0,0 +1,60 @@
+package dendron.machine;
+
+import dendron.io.MemorySink;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A Machine keeps the linked copies of the programs it runs; running
+ * a list again after changing it must run what it holds now, and a
+ * segment run a stretch at a time must run as if run whole.
+ *
+ * @author Nicholas Pembroke
+ */
+public class MachineTest {
+
+    @Test
+    public void changedListIsLinkedAgain() {
+        MemorySink out = new MemorySink();
+        Machine machine = new Machine( out );
+        List< Machine.Instruction > program =
+                new ArrayList<>( List.of( new Machine.PushConst( 1 ), new Machine.Print() ) );
+        machine.run( program );
+        program.set( 0, new Machine.PushConst( 2 ) );
+        machine.run( program );
+        machine.assign( "x", 3 );
+        program.set( 0, new Machine.Load( "x" ) );
+        machine.run( program );
+        program.add( new Machine.PushConst( 4 ) );
+        program.add( new Machine.Print() );
+        machine.run( program );
+        assertEquals( "*** 1\n*** 2\n*** 3\n*** 3\n*** 4\n", out.toString() );
+    }
+
+    @Test
+    public void profiledSegmentRunsInStretches() {
+        List< Machine.Instruction > program = new ArrayList<>();
+        for ( int i = 0; i < 10; ++i ) {
+            program.add( new Machine.PushConst( i ) );
+            program.add( new Machine.Store( "x" ) );
+            program.add( new Machine.Load( "x" ) );
+            program.add( new Machine.Print() );
+        }
+        CodeSegment segment = CodeSegment.fromInstructions( program );
+        MemorySink whole = new MemorySink();
+        new Machine( whole ).run( segment );
+        MemorySink stretched = new MemorySink();
+        Machine machine = new Machine( stretched );
+        InstructionProfile profile = new InstructionProfile( 1 );
+        machine.setProfile( profile );
+        for ( int from = 0; from < segment.instructionCount(); from += 3 ) {
+            machine.run( segment, from, Math.min( from + 3, segment.instructionCount() ) );
+        }
+        assertEquals( whole.toString(), stretched.toString() );
+        assertEquals( program.size(), profile.total() );
+    }
+}
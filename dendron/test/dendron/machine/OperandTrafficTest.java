@@ -0,0 +1,71 @@
+package dendron.machine;
+
+import dendron.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The counts for a * b + c, as stack code, with superinstructions and
+ * as register code with and without enough registers.
+ *
+ * @author Nicholas Pembroke
+ */
+public class OperandTrafficTest {
+
+    private static final List< Machine.Instruction > PROGRAM = new ParseTree( List.of(
+            ":=", "a", "2", ":=", "b", "3", ":=", "c", "4",
+            ":=", "d", "+", "*", "a", "b", "c" ) ).compile();
+
+    @Test
+    public void stackCode() {
+        OperandTraffic traffic = OperandTraffic.of( PROGRAM );
+        // PUSH STORE three times, then LOAD LOAD MUL LOAD ADD STORE
+        assertEquals( 12, traffic.dispatches() );
+        assertEquals( 3 + 2 + 2 + 1, traffic.stackReads() );
+        assertEquals( 3 + 3 + 2, traffic.stackWrites() );
+        assertEquals( 3, traffic.variableReads() );
+        assertEquals( 4, traffic.variableWrites() );
+        assertEquals( 0, traffic.registerReads() + traffic.registerWrites() );
+        assertEquals( 8 + 8 + 7, traffic.memoryAccesses() );
+    }
+
+    @Test
+    public void superinstructions() {
+        List< Machine.Instruction > fused = new SuperinstructionRewriter().rewrite( PROGRAM );
+        OperandTraffic traffic = OperandTraffic.of( fused );
+        OperandTraffic plain = OperandTraffic.of( PROGRAM );
+        assertTrue( traffic.dispatches() < plain.dispatches() );
+        assertEquals( plain.variableReads(), traffic.variableReads() );
+        assertEquals( plain.variableWrites(), traffic.variableWrites() );
+        // Every value fused away was pushed once and popped once.
+        assertEquals( plain.stackReads() - traffic.stackReads(),
+                      plain.stackWrites() - traffic.stackWrites() );
+        assertTrue( traffic.memoryAccesses() < plain.memoryAccesses() );
+    }
+
+    @Test
+    public void registerCode() {
+        OperandTraffic traffic = OperandTraffic.of( RegisterCompiler.compile( PROGRAM ) );
+        // STI three times, then LD LD MUL LD ADD ST
+        assertEquals( 9, traffic.dispatches() );
+        assertEquals( 0, traffic.stackReads() + traffic.stackWrites() );
+        assertEquals( 3, traffic.variableReads() );
+        assertEquals( 4, traffic.variableWrites() );
+        assertEquals( 5, traffic.registerReads() );
+        assertEquals( 5, traffic.registerWrites() );
+        assertEquals( 0, traffic.spillReads() + traffic.spillWrites() );
+        assertEquals( 7, traffic.memoryAccesses() );
+
+        OperandTraffic spilled = OperandTraffic.of( RegisterCompiler.compile( PROGRAM, 1 ) );
+        assertEquals( traffic.dispatches(), spilled.dispatches() );
+        assertTrue( spilled.spillReads() > 0 && spilled.spillWrites() > 0 );
+        assertEquals( traffic.registerReads() + traffic.registerWrites(),
+                      spilled.registerReads() + spilled.registerWrites() +
+                      spilled.spillReads() + spilled.spillWrites() );
+        assertTrue( spilled.memoryAccesses() > traffic.memoryAccesses() );
+    }
+}
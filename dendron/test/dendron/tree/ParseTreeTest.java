@@ -0,0 +1,146 @@
+package dendron.tree;
+
+import dendron.Errors;
+import dendron.InterpretException;
+import dendron.io.MemorySink;
+import dendron.machine.Machine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every way of running a parse tree must work however deeply its
+ * expressions nest, and must agree with the others.
+ *
+ * @author Nicholas Pembroke
+ */
+public class ParseTreeTest {
+
+    /** Deep enough to overflow the Java stack if any walk recursed */
+    private static final int DEEP = 200_000;
+
+    /**
+     * @return the tree's printed output from the tree walker, the
+     *         closures and the Machine, which must all be the same
+     */
+    private static String runEveryWay( ParseTree tree ) {
+        MemorySink walked = new MemorySink();
+        tree.run( new HashMap<>(), walked );
+        MemorySink bound = new MemorySink();
+        tree.bind().run( bound );
+        MemorySink compiled = new MemorySink();
+        new Machine( compiled ).run( tree.compile() );
+        String printed = walked.toString();
+        assertEquals( printed, bound.toString() );
+        assertEquals( printed.replace( "===", "***" ), compiled.toString() );
+        return printed;
+    }
+
+    private static String display( ParseTree tree ) {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut( new PrintStream( bytes, true, StandardCharsets.UTF_8 ) );
+        try {
+            tree.displayProgram();
+        }
+        finally {
+            System.setOut( stdout );
+        }
+        return bytes.toString( StandardCharsets.UTF_8 );
+    }
+
+    @Test
+    public void deepNegation() {
+        List< String > tokens = new ArrayList<>( List.of( "@" ) );
+        for ( int i = 0; i < DEEP; ++i ) {
+            tokens.add( "_" );
+        }
+        tokens.add( "4" );
+        ParseTree tree = new ParseTree( tokens );
+        assertTrue( display( tree ).endsWith( "Print " + "-".repeat( DEEP ) + "4\n" ) );
+        assertEquals( "=== 4\n", runEveryWay( tree ) );
+        tree.optimize();
+        assertEquals( "=== 4\n", runEveryWay( tree ) );
+    }
+
+    @Test
+    public void deepSum() {
+        // x + ( x + ( ... + x ) ), which cannot be folded or shared
+        List< String > tokens = new ArrayList<>( List.of( ":=", "x", "3", "@" ) );
+        for ( int i = 0; i < DEEP; ++i ) {
+            tokens.add( "+" );
+            tokens.add( "x" );
+        }
+        tokens.add( "x" );
+        ParseTree tree = new ParseTree( tokens );
+        String shown = display( tree );
+        assertTrue( shown.endsWith( "( x + x" + " )".repeat( DEEP ) + "\n" ) );
+        String sum = "=== " + 3 * ( DEEP + 1 ) + "\n";
+        assertEquals( sum, runEveryWay( tree ) );
+        tree.optimize();
+        assertEquals( sum, runEveryWay( tree ) );
+    }
+
+    @Test
+    public void deepDivisionByZero() {
+        List< String > tokens = new ArrayList<>( List.of( "@" ) );
+        for ( int i = 0; i < DEEP; ++i ) {
+            tokens.add( "/" );
+            tokens.add( "1" );
+        }
+        tokens.add( "0" );
+        ParseTree tree = new ParseTree( tokens );
+        InterpretException walked = assertThrows( InterpretException.class,
+                () -> tree.run( new HashMap<>(), new MemorySink() ) );
+        assertEquals( Errors.Type.DIVIDE_BY_ZERO, walked.getType() );
+        InterpretException bound = assertThrows( InterpretException.class,
+                () -> tree.bind().run( new MemorySink() ) );
+        assertEquals( Errors.Type.DIVIDE_BY_ZERO, bound.getType() );
+    }
+
+    /**
+     * Random expressions either side of the depth at which closures
+     * give way to postfix evaluation, run before and after optimizing.
+     */
+    @Test
+    public void randomExpressionsAgree() {
+        Random random = new Random( 4172 );
+        String[] operators = { "+", "-", "*", "/", "_", "#" };
+        String[] leaves = { "a", "b", "c", "1", "3" };
+        for ( int program = 0; program < 40; ++program ) {
+            List< String > tokens = new ArrayList<>( List.of(
+                    ":=", "a", "7", ":=", "b", "2", ":=", "c", "-", "0", "5", ":=", "d" ) );
+            // Every operator's first operand is the rest of the chain and
+            // every second operand a leaf, so nothing divides by zero and
+            // the expression is exactly one deeper than its operator count.
+            int depth = 1 + random.nextInt( 2 * ExpressionWalk.MAX_CLOSURE_DEPTH );
+            List< String > chain = new ArrayList<>();
+            for ( int i = 1; i < depth; ++i ) {
+                chain.add( operators[ random.nextInt( operators.length ) ] );
+            }
+            tokens.addAll( chain );
+            tokens.add( leaves[ random.nextInt( leaves.length ) ] );
+            for ( int i = chain.size() - 1; i >= 0; --i ) {
+                if ( BinaryOperation.isOperator( chain.get( i ) ) ) {
+                    tokens.add( leaves[ random.nextInt( leaves.length ) ] );
+                }
+            }
+            tokens.addAll( List.of( "@", "d", "@", "+", "d", "d" ) );
+            ParseTree tree = new ParseTree( tokens );
+            String printed = runEveryWay( tree );
+            tree.optimize();
+            assertEquals( printed, runEveryWay( tree ), "program " + program );
+        }
+    }
+}